@@ -0,0 +1,88 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.ExecutionMode;
+import com.dak.crypto.Side;
+import com.dak.crypto.SubmitResult;
+import com.dak.crypto.TradeListener;
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of new orders across every coin followed by a burst cancelling
+ * them, submitted one at a time or as two batches.  Time is per burst.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchSubmitBenchmark {
+
+    @Param({"16", "256"})
+    public int burstSize;
+
+    @Param({"CALLER_THREAD", "BOARD_THREAD"})
+    public ExecutionMode executionMode;
+
+    private CryptoMarket market;
+    private CryptoOrder[] orders;
+    private CryptoOrder[] cancels;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        Cryptocurrency[] coins = Cryptocurrency.values();
+        market = new CryptoMarket(TradeListener.NONE, executionMode);
+        orders = new CryptoOrder[burstSize];
+        cancels = new CryptoOrder[burstSize];
+        for (int i = 0; i < burstSize; i++) {
+            Cryptocurrency coin = coins[i % coins.length];
+            // Buys only, so nothing trades
+            orders[i] = OrderCreator.createCryptoMarketOrder(coin, "user", Side.BUY, 100L, 1_000 + random.nextInt(50));
+            cancels[i] = OrderCreator.createCryptoMarketCancelOrder(orders[i].getOrderId(), coin);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        market.close();
+    }
+
+    @Benchmark
+    public SubmitResult oneAtATime() {
+        SubmitResult result = null;
+        for (CryptoOrder order : orders) {
+            result = market.submitOrder(order);
+        }
+        for (CryptoOrder cancel : cancels) {
+            result = market.submitOrder(cancel);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public SubmitResult[] batched() {
+        market.submitOrders(orders);
+        return market.submitOrders(cancels);
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.Side;
+import com.dak.crypto.codec.GatewayCodec;
+import com.dak.crypto.codec.OrderCodec;
+import com.dak.crypto.gateway.OrderGateway;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.util.OrderCreator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives an OrderGateway over TCP as fast as it will take orders, keeping at
+ * most a window of orders unacknowledged.  Buys and sells alternate at the
+ * same price, so every other order trades and the book stays shallow.
+ * <pre>
+ * java -cp target/benchmarks.jar com.dak.crypto.benchmark.GatewayLoadGenerator [orders] [window] [host port]
+ * </pre>
+ * Without a host and port it starts a market and gateway on loopback in the
+ * same JVM.
+ */
+public class GatewayLoadGenerator {
+
+    private static final Cryptocurrency COIN = Cryptocurrency.BITCOIN;
+    private static final int BATCH_BYTES = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int window = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        OrderGateway gateway = null;
+        CryptoMarket market = null;
+        InetSocketAddress address;
+        if (args.length > 3) {
+            address = new InetSocketAddress(args[2], Integer.parseInt(args[3]));
+        } else {
+            gateway = new OrderGateway(new InetSocketAddress("127.0.0.1", 0));
+            market = new CryptoMarket(gateway);
+            gateway.start(market);
+            address = gateway.getLocalAddress();
+        }
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.socket().setTcpNoDelay(true);
+            // Two rounds, the first to warm up
+            run(channel, orders / 4, window);
+            run(channel, orders, window);
+        } finally {
+            if (gateway != null) {
+                gateway.close();
+                market.close();
+            }
+        }
+    }
+
+    private static void run(SocketChannel channel, int orders, int window) throws Exception {
+        AtomicLong acks = new AtomicLong();
+        AtomicLong fills = new AtomicLong();
+        Thread reader = new Thread(() -> readReports(channel, orders, acks, fills), "GatewayLoadGenerator-reader");
+        reader.start();
+
+        ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+        long start = System.nanoTime();
+        for (int sent = 0; sent < orders; sent++) {
+            while (sent - acks.get() >= window) {
+                if (batch.position() > 0) {
+                    // Keep the gateway fed while waiting
+                    write(channel, batch);
+                }
+                Thread.yield();
+            }
+            Side side = (sent & 1) == 0 ? Side.SELL : Side.BUY;
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(COIN, "load", side, 100L, 10_000L);
+            if (batch.remaining() < OrderCodec.newOrderLength(order)) {
+                write(channel, batch);
+            }
+            OrderCodec.encodeNewOrder(batch, order, order.getPriceTicks(), order.getQuantityLots());
+        }
+        write(channel, batch);
+        reader.join();
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%,d orders in %,d ms: %,.0f orders/s, %,d fills%n",
+                orders, TimeUnit.NANOSECONDS.toMillis(nanos), orders * 1e9 / nanos, fills.get());
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer batch) throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+
+    private static void readReports(SocketChannel channel, int orders, AtomicLong acks, AtomicLong fills) {
+        ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (acks.get() < orders) {
+                if (channel.read(in) < 0) {
+                    throw new RuntimeException("Gateway closed the connection");
+                }
+                in.flip();
+                int length;
+                while ((length = GatewayCodec.encodedLength(in)) >= 0 && in.remaining() >= length) {
+                    byte type = in.get(in.position());
+                    if (type == GatewayCodec.ACK) {
+                        acks.incrementAndGet();
+                    } else if (type == GatewayCodec.FILL) {
+                        fills.incrementAndGet();
+                    }
+                    in.position(in.position() + length);
+                }
+                in.compact();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read from the gateway", e);
+        }
+    }
+}
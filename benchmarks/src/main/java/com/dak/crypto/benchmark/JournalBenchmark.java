@@ -0,0 +1,84 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.ExecutionMode;
+import com.dak.crypto.OrderJournal;
+import com.dak.crypto.Side;
+import com.dak.crypto.TradeListener;
+import com.dak.crypto.journal.MappedOrderJournal;
+import com.dak.crypto.journal.SyncPolicy;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submit and cancel through CryptoMarket, with the journal off or under
+ * each sync policy.  Each operation writes two records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    private static final Cryptocurrency C_CCY = Cryptocurrency.BITCOIN;
+
+    @Param({"OFF", "NONE", "BATCH", "EVERY_RECORD"})
+    public String journalMode;
+
+    private Path file;
+    private MappedOrderJournal journal;
+    private CryptoMarket market;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        OrderJournal orderJournal = OrderJournal.NONE;
+        if (!"OFF".equals(journalMode)) {
+            file = Files.createTempFile("journal", ".bin");
+            journal = new MappedOrderJournal(file, SyncPolicy.valueOf(journalMode));
+            orderJournal = journal;
+        }
+        market = new CryptoMarket(TradeListener.NONE, ExecutionMode.CALLER_THREAD, orderJournal);
+        for (int level = 0; level < 100; level++) {
+            market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, 100_000L, 10_000 - level));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        market.close();
+        if (journal != null) {
+            journal.close();
+            Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    public boolean submitAndCancel() {
+        CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(C_CCY, "user", Side.BUY, 100_000L, 10_000 - random.nextInt(100));
+        market.submitOrder(order);
+        return market.cancelOrder(C_CCY, order.getOrderId());
+    }
+}
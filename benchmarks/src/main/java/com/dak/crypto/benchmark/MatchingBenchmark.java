@@ -0,0 +1,91 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.OrderBoard;
+import com.dak.crypto.Side;
+import com.dak.crypto.TradeListener;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggressive-order-heavy flow: every passive order placed on the book is
+ * swept by {@code aggressorsPerPassive} crossing orders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingBenchmark {
+
+    private static final Cryptocurrency C_CCY = Cryptocurrency.BITCOIN;
+    private static final int ORDER_POOL = 4096;
+    private static final long PASSIVE_LOTS = 1_000_000L;
+
+    @Param({"10", "1000"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int aggressorsPerPassive;
+
+    private OrderBoard orderBoard;
+    private CryptoMarketOrder[] passiveOrders;
+    private CryptoMarketOrder[] aggressiveOrders;
+    private long fills;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        TradeListener countingListener = (coinType, aggressor, resting, priceTicks, quantityLots) -> fills++;
+        orderBoard = new OrderBoard(C_CCY, countingListener);
+
+        // Background depth behind the level being traded
+        for (int i = 1; i <= depth; i++) {
+            orderBoard.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, PASSIVE_LOTS, 10_000 + i));
+        }
+
+        passiveOrders = new CryptoMarketOrder[ORDER_POOL];
+        aggressiveOrders = new CryptoMarketOrder[ORDER_POOL * aggressorsPerPassive];
+        for (int i = 0; i < ORDER_POOL; i++) {
+            passiveOrders[i] = OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, PASSIVE_LOTS, 10_000);
+            for (int j = 0; j < aggressorsPerPassive; j++) {
+                // Crosses the whole book but only ever fills against the top level
+                long priceTicks = 10_000 + random.nextInt(depth);
+                aggressiveOrders[i * aggressorsPerPassive + j] =
+                        OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.BUY, PASSIVE_LOTS / aggressorsPerPassive, priceTicks);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(5)
+    public long passiveThenAggressive() {
+        for (int op = 0; op < 5; op++) {
+            int i = next++ & (ORDER_POOL - 1);
+            orderBoard.submitOrder(passiveOrders[i]);
+            for (int j = 0; j < aggressorsPerPassive; j++) {
+                orderBoard.submitOrder(aggressiveOrders[i * aggressorsPerPassive + j]);
+            }
+        }
+        return fills;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.ConcurrencyMode;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.OrderBook;
+import com.dak.crypto.Side;
+import com.dak.crypto.offheap.OffHeapOrderBook;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.RestingOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submit / cancel by id throughput of a book already resting {@code orders}
+ * orders, on the heap with an id index as OrderBoard keeps, or in direct
+ * memory.  Run with -prof gc to compare the heap each uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:MaxDirectMemorySize=2g"})
+public class OffHeapBookBenchmark {
+
+    private static final Cryptocurrency C_CCY = Cryptocurrency.BITCOIN;
+    private static final int ORDER_POOL = 4096;
+    private static final int LEVELS = 1000;
+
+    @Param({"1000000"})
+    public int orders;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private OrderBook heapBook;
+    private OffHeapOrderBook offHeapBook;
+    private CryptoMarketOrder[] newOrders;
+    private Map<UUID, RestingOrder> heapIndex;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        heapBook = new OrderBook(Side.SELL, C_CCY.getTickConfig(), ConcurrencyMode.LOCKING, 10);
+        heapIndex = new HashMap<>();
+        offHeapBook = new OffHeapOrderBook(Side.SELL, C_CCY.getTickConfig(), orders);
+        for (int i = 0; i < orders; i++) {
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(C_CCY, "user" + i % 100, Side.SELL, 100_000L, 1_000_000L + i % LEVELS);
+            if (offHeap) {
+                offHeapBook.submitOrder(order);
+            } else {
+                heapIndex.put(order.getOrderId(), heapBook.submitOrder(order));
+            }
+        }
+        newOrders = new CryptoMarketOrder[ORDER_POOL];
+        for (int i = 0; i < ORDER_POOL; i++) {
+            newOrders[i] = OrderCreator.createCryptoMarketOrder(C_CCY, "user" + i % 100, Side.SELL, 100_000L, 1_000_000L + i % LEVELS);
+        }
+    }
+
+    @Benchmark
+    public boolean submitAndCancel() {
+        int i = next++ & (ORDER_POOL - 1);
+        CryptoMarketOrder order = newOrders[i];
+        if (offHeap) {
+            offHeapBook.submitOrder(order.getOrderId(), order.getUserId(), order.getPriceTicks(), order.getQuantityLots(), 0);
+            return offHeapBook.removeOrder(order.getOrderId());
+        }
+        heapIndex.put(order.getOrderId(), heapBook.submitOrder(order));
+        return heapBook.removeOrder(heapIndex.remove(order.getOrderId()));
+    }
+}
@@ -0,0 +1,123 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.BookType;
+import com.dak.crypto.ConcurrencyMode;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.OrderBook;
+import com.dak.crypto.Side;
+import com.dak.crypto.order.CryptoMarketCancelOrder;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submit / cancel / summary throughput of a single OrderBook resting
+ * {@code depth} price levels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+
+    private static final Cryptocurrency C_CCY = Cryptocurrency.BITCOIN;
+    private static final int ORDER_POOL = 4096;
+    private static final long LOWEST_PRICE_TICKS = 1_000_000;
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    @Param({"TREE_MAP", "ARRAY_LADDER"})
+    public BookType bookType;
+
+    // Run with -prof gc to see the allocation rate drop to zero when pooled,
+    // on ARRAY_LADDER only: TREE_MAP still boxes each price and makes a map entry
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private OrderBook orderBook;
+    private CryptoMarketOrder[] orders;
+    private CryptoMarketCancelOrder[] cancels;
+    // Priced between the existing levels, so each one adds and removes a level
+    private CryptoMarketOrder[] newLevelOrders;
+    private int next;
+    // Reused by the buffer variants
+    private final StringBuilder summaryBuffer = new StringBuilder(1024);
+    private final long[] priceTicks = new long[10];
+    private final long[] quantityLots = new long[10];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        orderBook = new OrderBook(Side.SELL, C_CCY.getTickConfig(), ConcurrencyMode.LOCKING, 10, bookType, pooled);
+        for (int i = 0; i < depth; i++) {
+            orderBook.submitOrder(createOrder(i, random));
+        }
+
+        orders = new CryptoMarketOrder[ORDER_POOL];
+        cancels = new CryptoMarketCancelOrder[ORDER_POOL];
+        for (int i = 0; i < ORDER_POOL; i++) {
+            orders[i] = createOrder(random.nextInt(depth), random);
+            cancels[i] = OrderCreator.createCryptoMarketCancelOrder(orders[i].getOrderId(), C_CCY, Side.SELL, orders[i].getPrice());
+        }
+        newLevelOrders = new CryptoMarketOrder[ORDER_POOL];
+        for (int i = 0; i < ORDER_POOL; i++) {
+            long priceTicks = LOWEST_PRICE_TICKS + 2L * random.nextInt(depth) + 1;
+            newLevelOrders[i] = OrderCreator.createCryptoMarketOrder(C_CCY, "user", Side.SELL, 100_000L, priceTicks);
+        }
+    }
+
+    private static CryptoMarketOrder createOrder(int level, Random random) {
+        long priceTicks = LOWEST_PRICE_TICKS + 2L * level;
+        long quantityLots = (1 + random.nextInt(1000)) * 100_000L;
+        return OrderCreator.createCryptoMarketOrder(C_CCY, "user", Side.SELL, quantityLots, priceTicks);
+    }
+
+    @Benchmark
+    public int submitAndCancel() {
+        int i = next++ & (ORDER_POOL - 1);
+        orderBook.submitOrder(orders[i]);
+        orderBook.removeOrder(cancels[i]);
+        return orderBook.getSize();
+    }
+
+    @Benchmark
+    public boolean newLevelSubmitAndCancel() {
+        int i = next++ & (ORDER_POOL - 1);
+        return orderBook.removeOrder(orderBook.submitOrder(newLevelOrders[i]));
+    }
+
+    @Benchmark
+    public String[] orderSummary() {
+        return orderBook.getOrderSummary();
+    }
+
+    @Benchmark
+    public int orderSummaryIntoBuffer() {
+        summaryBuffer.setLength(0);
+        orderBook.getOrderSummary(10, summaryBuffer);
+        return summaryBuffer.length();
+    }
+
+    @Benchmark
+    public int depthIntoArrays() {
+        return orderBook.getDepth(priceTicks, quantityLots);
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.util.OrderIdGenerator;
+import com.dak.crypto.util.SequenceOrderIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating an order id.  Run with {@code -t N} to see the
+ * generators under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderIdBenchmark {
+
+    @Param({"RANDOM", "SEQUENCE"})
+    public String generatorType;
+
+    private OrderIdGenerator generator;
+    private SequenceOrderIdGenerator sequenceGenerator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sequenceGenerator = new SequenceOrderIdGenerator();
+        generator = "RANDOM".equals(generatorType) ? OrderIdGenerator.RANDOM : sequenceGenerator;
+    }
+
+    @Benchmark
+    public UUID nextOrderId() {
+        return generator.nextOrderId();
+    }
+
+    @Benchmark
+    public long nextCompactId() {
+        return sequenceGenerator.nextSequence();
+    }
+}
@@ -0,0 +1,85 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.ConcurrencyMode;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.OrderBook;
+import com.dak.crypto.Side;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.RestingOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One writer submitting and cancelling while market-data readers poll the
+ * summary.  Change the number of readers with {@code -tg 1,N}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderContentionBenchmark {
+
+    private static final Cryptocurrency C_CCY = Cryptocurrency.BITCOIN;
+    private static final int ORDER_POOL = 4096;
+    private static final int DEPTH = 100;
+
+    @Param({"LOCKING", "SINGLE_WRITER"})
+    public ConcurrencyMode mode;
+
+    private OrderBook orderBook;
+    private CryptoMarketOrder[] orders;
+    private boolean filled;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        orderBook = new OrderBook(Side.SELL, C_CCY.getTickConfig(), mode, 10);
+        orders = new CryptoMarketOrder[ORDER_POOL];
+        for (int i = 0; i < ORDER_POOL; i++) {
+            orders[i] = OrderCreator.createCryptoMarketOrder(C_CCY, "user", Side.SELL, 1_000_000L, 10_000 + random.nextInt(DEPTH));
+        }
+    }
+
+    @Benchmark
+    @Group("book")
+    @GroupThreads(1)
+    public boolean writer() {
+        if (!filled) {
+            // Filled from the writer thread, which claims the book in SINGLE_WRITER mode
+            for (int level = 0; level < DEPTH; level++) {
+                orderBook.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, 1_000_000L, 10_000 + level));
+            }
+            filled = true;
+        }
+        int i = next++ & (ORDER_POOL - 1);
+        RestingOrder restingOrder = orderBook.submitOrder(orders[i]);
+        return orderBook.removeOrder(restingOrder);
+    }
+
+    @Benchmark
+    @Group("book")
+    @GroupThreads(3)
+    public String[] reader() {
+        return orderBook.getOrderSummary();
+    }
+
+}
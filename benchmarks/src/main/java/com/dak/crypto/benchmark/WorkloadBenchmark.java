@@ -0,0 +1,144 @@
+package com.dak.crypto.benchmark;
+
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.ExecutionMode;
+import com.dak.crypto.Side;
+import com.dak.crypto.SubmitResult;
+import com.dak.crypto.TopOfBook;
+import com.dak.crypto.TradeListener;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end workloads through CryptoMarket, on a book pre-filled with
+ * {@code depth} levels a side of {@code ordersPerLevel} orders each.
+ * Reports throughput and sampled latency percentiles, add {@code -prof gc}
+ * for the allocation rate.  Vary the threads with {@code -t N} for the
+ * submit and cancel workloads and {@code -tg 1,N} for the polling groups, e.g.
+ * <pre>
+ * java -jar target/benchmarks.jar WorkloadBenchmark -prof gc -t 4
+ * </pre>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkloadBenchmark {
+
+    private static final Cryptocurrency C_CCY = Cryptocurrency.BITCOIN;
+    // Bids are at or below it, asks above
+    private static final long MID_TICKS = 1_000_000;
+    private static final long QUANTITY_LOTS = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class Market {
+
+        @Param({"10", "1000"})
+        public int depth;
+
+        @Param({"1", "10"})
+        public int ordersPerLevel;
+
+        @Param({"CALLER_THREAD", "BOARD_THREAD"})
+        public ExecutionMode executionMode;
+
+        CryptoMarket market;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            market = new CryptoMarket(TradeListener.NONE, executionMode);
+            for (int level = 0; level < depth; level++) {
+                for (int i = 0; i < ordersPerLevel; i++) {
+                    market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, QUANTITY_LOTS, MID_TICKS - level));
+                    market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, QUANTITY_LOTS, MID_TICKS + 1 + level));
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            market.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        final SplittableRandom random = new SplittableRandom(42);
+        final StringBuilder summary = new StringBuilder(1024);
+    }
+
+    /**
+     * A sell taking liquidity from the best bid, then a buy putting it back
+     */
+    @Benchmark
+    public SubmitResult submitHeavy(Market market) {
+        market.market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.SELL, QUANTITY_LOTS, MID_TICKS));
+        return market.market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, QUANTITY_LOTS, MID_TICKS));
+    }
+
+    /**
+     * A bid joining a random level inside the book, cancelled straight away
+     */
+    @Benchmark
+    public boolean cancelHeavy(Market market, Client client) {
+        return submitAndCancel(market, client);
+    }
+
+    @Benchmark
+    @Group("summaryPolling")
+    @GroupThreads(1)
+    public boolean pollingWriter(Market market, Client client) {
+        return submitAndCancel(market, client);
+    }
+
+    @Benchmark
+    @Group("summaryPolling")
+    @GroupThreads(3)
+    public int pollingReader(Market market, Client client) {
+        client.summary.setLength(0);
+        return market.market.getOrderSummary(C_CCY, Side.BUY, 10, client.summary);
+    }
+
+    @Benchmark
+    @Group("topOfBookPolling")
+    @GroupThreads(1)
+    public boolean topOfBookWriter(Market market, Client client) {
+        return submitAndCancel(market, client);
+    }
+
+    @Benchmark
+    @Group("topOfBookPolling")
+    @GroupThreads(3)
+    public long topOfBookReader(Market market) {
+        TopOfBook top = market.market.getTopOfBook(C_CCY);
+        return top.getAskPriceTicks() - top.getBidPriceTicks();
+    }
+
+    private static boolean submitAndCancel(Market market, Client client) {
+        long priceTicks = MID_TICKS - client.random.nextInt(market.depth);
+        CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, QUANTITY_LOTS, priceTicks);
+        market.market.submitOrder(order);
+        return market.market.cancelOrder(C_CCY, order.getOrderId());
+    }
+}
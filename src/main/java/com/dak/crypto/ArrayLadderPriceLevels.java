@@ -0,0 +1,188 @@
+package com.dak.crypto;
+
+import com.dak.crypto.order.GroupedOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Levels held in an array with one slot per tick, over a window of prices
+ * around the best.  A bitmap of occupied slots lets the nearest better
+ * level be found a word of 64 ticks at a time.  Levels outside the window
+ * go in an overflow tree, the window recentres on a new best price that
+ * falls outside it.  Only prices inside the window are free of allocation,
+ * the overflow tree boxes its prices like TreeMapPriceLevels.
+ */
+class ArrayLadderPriceLevels implements PriceLevels {
+
+    static final int DEFAULT_SIZE = 4096;
+
+    private final boolean buySide;
+    private final int size;
+    private final GroupedOrder[] ladder;
+    private final long[] occupied;
+    private final TreeMap<Long, GroupedOrder> overflow;
+    // Price of ladder[0]
+    private long baseTicks;
+    private int ladderCount;
+    private boolean centred;
+
+    /**
+     * @param side
+     * @param size ticks in the window, a multiple of 64
+     * @param bestFirst orders prices best first
+     */
+    ArrayLadderPriceLevels(Side side, int size, Comparator<Long> bestFirst) {
+        if (size < 64 || size % 64 != 0) {
+            throw new RuntimeException("Ladder size must be a positive multiple of 64: " + size);
+        }
+        this.buySide = side == Side.BUY;
+        this.size = size;
+        this.ladder = new GroupedOrder[size];
+        this.occupied = new long[size / 64];
+        this.overflow = new TreeMap<>(bestFirst);
+    }
+
+    private int index(long priceTicks) {
+        long index = priceTicks - baseTicks;
+        return index >= 0 && index < size ? (int) index : -1;
+    }
+
+    @Override
+    public GroupedOrder get(long priceTicks) {
+        int index = index(priceTicks);
+        return index >= 0 ? ladder[index] : overflow.get(priceTicks);
+    }
+
+    @Override
+    public void put(GroupedOrder level) {
+        long priceTicks = level.getPriceTicks();
+        int index = index(priceTicks);
+        if (index < 0 && (!centred || ladderCount == 0 || better(priceTicks) == null)) {
+            // A new best price outside the window
+            recentre(priceTicks);
+            index = index(priceTicks);
+        }
+        if (index < 0) {
+            overflow.put(priceTicks, level);
+        } else {
+            ladder[index] = level;
+            occupied[index >>> 6] |= 1L << index;
+            ladderCount++;
+        }
+    }
+
+    @Override
+    public void remove(long priceTicks) {
+        int index = index(priceTicks);
+        if (index < 0) {
+            overflow.remove(priceTicks);
+        } else if (ladder[index] != null) {
+            ladder[index] = null;
+            occupied[index >>> 6] &= ~(1L << index);
+            ladderCount--;
+        }
+    }
+
+    @Override
+    public GroupedOrder better(long priceTicks) {
+        GroupedOrder inLadder = ladderCount == 0 ? null : betterInLadder(priceTicks);
+        Map.Entry<Long, GroupedOrder> inOverflow = overflow.isEmpty() ? null : overflow.lowerEntry(priceTicks);
+        if (inOverflow == null) {
+            return inLadder;
+        }
+        if (inLadder == null) {
+            return inOverflow.getValue();
+        }
+        // The nearer of the two
+        long ladderTicks = inLadder.getPriceTicks();
+        long overflowTicks = inOverflow.getKey();
+        return buySide == (ladderTicks < overflowTicks) ? inLadder : inOverflow.getValue();
+    }
+
+    private GroupedOrder betterInLadder(long priceTicks) {
+        long offset = priceTicks - baseTicks;
+        int index;
+        if (buySide) {
+            // Higher prices are better
+            if (offset >= size - 1) {
+                return null;
+            }
+            index = nextOccupied(offset < 0 ? 0 : (int) offset + 1);
+        } else {
+            if (offset <= 0) {
+                return null;
+            }
+            index = previousOccupied(offset >= size ? size - 1 : (int) offset - 1);
+        }
+        return index < 0 ? null : ladder[index];
+    }
+
+    private int nextOccupied(int from) {
+        int word = from >>> 6;
+        long bits = occupied[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == occupied.length) {
+                return -1;
+            }
+            bits = occupied[word];
+        }
+    }
+
+    private int previousOccupied(int from) {
+        int word = from >>> 6;
+        long bits = occupied[word] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+            if (--word < 0) {
+                return -1;
+            }
+            bits = occupied[word];
+        }
+    }
+
+    /**
+     * Moves the window to centre on the price, moving levels between the
+     * ladder and the overflow as needed
+     */
+    private void recentre(long priceTicks) {
+        List<GroupedOrder> levels = new ArrayList<>(ladderCount + overflow.size());
+        for (int i = 0; i < size; i++) {
+            if (ladder[i] != null) {
+                levels.add(ladder[i]);
+                ladder[i] = null;
+            }
+        }
+        levels.addAll(overflow.values());
+        overflow.clear();
+        Arrays.fill(occupied, 0);
+        ladderCount = 0;
+
+        baseTicks = priceTicks - size / 2;
+        centred = true;
+        for (GroupedOrder level : levels) {
+            int index = index(level.getPriceTicks());
+            if (index < 0) {
+                overflow.put(level.getPriceTicks(), level);
+            } else {
+                ladder[index] = level;
+                occupied[index >>> 6] |= 1L << index;
+                ladderCount++;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return ladderCount + overflow.size();
+    }
+}
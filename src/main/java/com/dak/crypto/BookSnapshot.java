@@ -0,0 +1,75 @@
+package com.dak.crypto;
+
+/**
+ * Immutable view of the top levels of an OrderBook, best price first
+ */
+public final class BookSnapshot {
+
+    private static final long[] NO_LEVELS = new long[0];
+
+    private final Side side;
+    private final long sequence;
+    private final int size;
+    private final long[] priceTicks;
+    private final long[] quantityLots;
+
+    BookSnapshot(Side side, long sequence, int size, long[] priceTicks, long[] quantityLots) {
+        this.side = side;
+        this.sequence = sequence;
+        this.size = size;
+        this.priceTicks = priceTicks;
+        this.quantityLots = quantityLots;
+    }
+
+    static BookSnapshot empty(Side side) {
+        return new BookSnapshot(side, 0, 0, NO_LEVELS, NO_LEVELS);
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * @return the number of changes made to the book when this snapshot was taken
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the number of price levels in the whole book, which may exceed the depth
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of levels held in this snapshot
+     */
+    public int getDepth() {
+        return priceTicks.length;
+    }
+
+    public boolean isEmpty() {
+        return priceTicks.length == 0;
+    }
+
+    public long getPriceTicks(int level) {
+        return priceTicks[level];
+    }
+
+    public long getQuantityLots(int level) {
+        return quantityLots[level];
+    }
+
+    /**
+     * @return the best price in ticks, the book must not be empty
+     */
+    public long getBestPriceTicks() {
+        return priceTicks[0];
+    }
+
+    public long getBestQuantityLots() {
+        return quantityLots[0];
+    }
+}
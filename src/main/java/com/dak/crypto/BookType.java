@@ -0,0 +1,22 @@
+package com.dak.crypto;
+
+/**
+ * How an OrderBoard holds its resting orders, and how an OrderBook finds
+ * its price levels
+ */
+public enum BookType {
+    /**
+     * Levels in a red-black tree, suits prices spread over a wide range
+     */
+    TREE_MAP,
+    /**
+     * Levels in an array indexed by tick around the best price, suits
+     * markets whose prices fall in a dense band
+     */
+    ARRAY_LADDER,
+    /**
+     * Orders in direct memory, see OffHeapOrderBook, suits very deep
+     * markets.  OrderBoards only, an OrderBook cannot be built with it.
+     */
+    OFF_HEAP
+}
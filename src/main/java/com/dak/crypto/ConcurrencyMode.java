@@ -0,0 +1,17 @@
+package com.dak.crypto;
+
+/**
+ * How an OrderBook, or OrderBoard, is shared between threads
+ */
+public enum ConcurrencyMode {
+    /**
+     * Any thread may write, writes and summaries are serialised on the book's monitor
+     */
+    LOCKING,
+    /**
+     * Only the first thread to write may ever write.  Writes take no lock and
+     * readers see immutable snapshots published by the writer, so reading
+     * never blocks order entry
+     */
+    SINGLE_WRITER;
+}
@@ -1,23 +1,601 @@
 package com.dak.crypto;
 
+import com.dak.crypto.metrics.MarketMetrics;
+import com.dak.crypto.metrics.Metrics;
 import com.dak.crypto.order.CryptoOrder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
-public class CryptoMarket extends HashMap<Cryptocurrency, OrderBoard> {
+/**
+ * One OrderBoard per listed coin.  A coin's board is created on its first
+ * use, or by list, so coins defined at runtime can be traded without a
+ * restart.  Boards are found by coin id in an array which is replaced when
+ * a coin is listed or delisted, so order entry never waits on either.
+ */
+public class CryptoMarket implements AutoCloseable {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    private static final AtomicInteger MARKET_IDS = new AtomicInteger();
+
+    private final TradeListener tradeListener;
+    private final ExecutionMode executionMode;
+    private final ConcurrencyMode concurrencyMode;
+    private final OrderJournal orderJournal;
+    // Indexed by coin id, null until listed
+    private volatile Listing[] listings = new Listing[0];
+    // Guards changes to listings and delisted
+    private final Object listingLock = new Object();
+    private final Set<Cryptocurrency> delisted = new HashSet<>();
+    // Only updated when Metrics.ENABLED, registered with JMX under metricsName
+    private final MarketMetrics metrics = new MarketMetrics();
+    private final int marketId = MARKET_IDS.incrementAndGet();
+    private final String metricsName = "type=CryptoMarket,id=" + marketId;
 
     public CryptoMarket() {
-        // Initialize markets
-        for (Cryptocurrency crypto : Cryptocurrency.values()) {
-            put(crypto, new OrderBoard(crypto));
+        this(TradeListener.NONE);
+    }
+
+    public CryptoMarket(TradeListener tradeListener) {
+        this(tradeListener, ConcurrencyMode.LOCKING);
+    }
+
+    public CryptoMarket(TradeListener tradeListener, ConcurrencyMode concurrencyMode) {
+        this(tradeListener, ExecutionMode.CALLER_THREAD, concurrencyMode, OrderJournal.NONE);
+    }
+
+    /**
+     * With BOARD_THREAD execution each board runs on its own thread, the
+     * TradeListener is then called from those threads
+     */
+    public CryptoMarket(TradeListener tradeListener, ExecutionMode executionMode) {
+        this(tradeListener, executionMode, OrderJournal.NONE);
+    }
+
+    /**
+     * @param orderJournal records every accepted order, cancel and amend, it is not closed with the market
+     */
+    public CryptoMarket(TradeListener tradeListener, ExecutionMode executionMode, OrderJournal orderJournal) {
+        this(tradeListener, executionMode,
+                executionMode == ExecutionMode.BOARD_THREAD ? ConcurrencyMode.SINGLE_WRITER : ConcurrencyMode.LOCKING, orderJournal);
+    }
+
+    private CryptoMarket(TradeListener tradeListener, ExecutionMode executionMode, ConcurrencyMode concurrencyMode, OrderJournal orderJournal) {
+        this.tradeListener = tradeListener;
+        this.executionMode = executionMode;
+        this.concurrencyMode = concurrencyMode;
+        this.orderJournal = orderJournal;
+        Metrics.register(metricsName, metrics);
+    }
+
+    /**
+     * @return the coin's board, created if this is its first use
+     */
+    public OrderBoard get(Cryptocurrency crypto) {
+        return listing(crypto).board;
+    }
+
+    /**
+     * Looks the coin's board up without listing it
+     *
+     * @return the board, null if the coin is not listed
+     */
+    public OrderBoard find(Cryptocurrency crypto) {
+        Listing[] current = listings;
+        int id = crypto.getId();
+        Listing listing = id < current.length ? current[id] : null;
+        return listing == null ? null : listing.board;
+    }
+
+    private Listing listing(Cryptocurrency crypto) {
+        Listing[] current = listings;
+        int id = crypto.getId();
+        Listing listing = id < current.length ? current[id] : null;
+        return listing != null ? listing : list(crypto, false);
+    }
+
+    /**
+     * Creates the coin's board now rather than on its first use, or lists
+     * it again after delist.  Other coins trade on meanwhile.
+     *
+     * @return the coin's board
+     */
+    public OrderBoard list(Cryptocurrency crypto) {
+        return list(crypto, true).board;
+    }
+
+    private Listing list(Cryptocurrency crypto, boolean relist) {
+        synchronized (listingLock) {
+            Listing[] current = listings;
+            int id = crypto.getId();
+            if (id < current.length && current[id] != null) {
+                return current[id];
+            }
+            if (!relist && delisted.contains(crypto)) {
+                throw new RuntimeException(String.format("%s has been delisted", crypto));
+            }
+            if (delisted.remove(crypto)) {
+                orderJournal.onList(crypto);
+            }
+            OrderBoard board = new OrderBoard(crypto, tradeListener, concurrencyMode, orderJournal);
+            Listing listing = new Listing(board,
+                    executionMode == ExecutionMode.BOARD_THREAD ? new OrderBoardExecutor(board, DEFAULT_QUEUE_CAPACITY) : null);
+            Listing[] next = Arrays.copyOf(current, Math.max(current.length, id + 1));
+            next[id] = listing;
+            listings = next;
+            for (Side side : Side.values()) {
+                Metrics.register(bookMetricsName(crypto, side), board.getMetrics(side));
+            }
+            return listing;
+        }
+    }
+
+    /**
+     * Takes a coin off the market.  Its resting orders are cancelled and
+     * its orders refused until it is listed again, while other coins trade
+     * on.  In BOARD_THREAD mode the board's thread is stopped.
+     *
+     * @return the orders cancelled, so their users can be told
+     */
+    public OrderBoardSnapshot delist(Cryptocurrency crypto) {
+        Listing listing;
+        synchronized (listingLock) {
+            Listing[] current = listings;
+            int id = crypto.getId();
+            listing = id < current.length ? current[id] : null;
+            delisted.add(crypto);
+            if (listing == null) {
+                orderJournal.onDelist(crypto);
+                return new OrderBoardSnapshot(crypto, orderJournal.getPosition(), new CryptoOrder[0], new long[0], new long[0]);
+            }
+            Listing[] next = current.clone();
+            next[id] = null;
+            listings = next;
+            unregisterBookMetrics(crypto);
+        }
+        // Callers still holding the board are refused by it from here on
+        OrderBoardSnapshot cancelled;
+        if (listing.executor == null) {
+            cancelled = listing.board.delist();
+        } else {
+            try {
+                cancelled = join(listing.executor.submit(OrderBoard::delist));
+            } finally {
+                listing.executor.close();
+            }
+        }
+        // After the board's last record, which its cancels were
+        orderJournal.onDelist(crypto);
+        return cancelled;
+    }
+
+    /**
+     * Marks a coin delisted as a market snapshot recorded it, without
+     * journalling it again
+     *
+     * @param crypto a coin without a board
+     */
+    public void restoreDelisted(Cryptocurrency crypto) {
+        synchronized (listingLock) {
+            Listing[] current = listings;
+            int id = crypto.getId();
+            if (id < current.length && current[id] != null) {
+                throw new RuntimeException(String.format("Cannot restore %s as delisted, it has a board", crypto));
+            }
+            delisted.add(crypto);
+        }
+    }
+
+    /**
+     * @return the coins delisted and not listed since, in id order
+     */
+    public List<Cryptocurrency> getDelistedCoins() {
+        synchronized (listingLock) {
+            List<Cryptocurrency> coins = new ArrayList<>(delisted);
+            coins.sort(Comparator.comparingInt(Cryptocurrency::getId));
+            return coins;
+        }
+    }
+
+    /**
+     * @return where the market's journal will write next
+     */
+    public long getJournalPosition() {
+        return orderJournal.getPosition();
+    }
+
+    /**
+     * @return the coins with a board, in id order
+     */
+    public List<Cryptocurrency> getListedCoins() {
+        List<Cryptocurrency> coins = new ArrayList<>();
+        for (Listing listing : listings) {
+            if (listing != null) {
+                coins.add(listing.board.getCoinType());
+            }
+        }
+        return coins;
+    }
+
+    /**
+     * Waits for the order to be processed in BOARD_THREAD mode
+     */
+    public SubmitResult submitOrder(CryptoOrder order) {
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        SubmitResult result = executionMode == ExecutionMode.BOARD_THREAD
+                ? join(submitOrderAsync(order))
+                : get(order.getCoinType()).submitOrder(order);
+        if (Metrics.ENABLED) {
+            metrics.submitted(start);
+        }
+        return result;
+    }
+
+    /**
+     * @param order
+     * @return completes once the order has been processed by its board
+     */
+    public CompletableFuture<SubmitResult> submitOrderAsync(CryptoOrder order) {
+        if (executionMode == ExecutionMode.BOARD_THREAD) {
+            return listing(order.getCoinType()).executor.submit(board -> board.submitOrder(order));
+        }
+        CompletableFuture<SubmitResult> result = new CompletableFuture<>();
+        try {
+            result.complete(get(order.getCoinType()).submitOrder(order));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Processes a burst of orders.  They are split by coin, each board then
+     * handles its share in one pass, in the order given.
+     *
+     * @param orders
+     * @return the result of each order, in the same order
+     */
+    public SubmitResult[] submitOrders(Collection<? extends CryptoOrder> orders) {
+        return submitOrders(orders.toArray(new CryptoOrder[0]));
+    }
+
+    public SubmitResult[] submitOrders(CryptoOrder[] orders) {
+        return join(submitOrdersAsync(orders));
+    }
+
+    /**
+     * @param orders
+     * @return completes once every board has processed its share of the orders
+     */
+    public CompletableFuture<SubmitResult[]> submitOrdersAsync(CryptoOrder[] orders) {
+        SubmitResult[] results = new SubmitResult[orders.length];
+
+        // Positions of each coin's orders, by coin id
+        int coins = 0;
+        for (CryptoOrder order : orders) {
+            coins = Math.max(coins, order.getCoinType().getId() + 1);
+        }
+        int[] counts = new int[coins];
+        for (CryptoOrder order : orders) {
+            counts[order.getCoinType().getId()]++;
+        }
+        int[][] positions = new int[coins][];
+        for (int c = 0; c < coins; c++) {
+            positions[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int i = 0; i < orders.length; i++) {
+            int c = orders[i].getCoinType().getId();
+            positions[c][counts[c]++] = i;
+        }
+
+        List<CompletableFuture<Void>> boardResults = new ArrayList<>();
+        for (int c = 0; c < coins; c++) {
+            if (counts[c] == 0) {
+                continue;
+            }
+            int[] coinPositions = positions[c];
+            int count = counts[c];
+            Listing listing;
+            try {
+                listing = listing(Cryptocurrency.fromId(c));
+            } catch (RuntimeException e) {
+                // Delisted, the other coins' orders go ahead
+                for (int i = 0; i < count; i++) {
+                    results[coinPositions[i]] = SubmitResult.REJECTED;
+                }
+                continue;
+            }
+            if (listing.executor != null) {
+                boardResults.add(listing.executor.submit(board -> {
+                    board.submitOrders(orders, coinPositions, count, results);
+                    return null;
+                }));
+            } else {
+                listing.board.submitOrders(orders, coinPositions, count, results);
+            }
+        }
+        return CompletableFuture.allOf(boardResults.toArray(new CompletableFuture<?>[0])).thenApply(done -> results);
+    }
+
+    public boolean cancelOrder(Cryptocurrency crypto, UUID orderId) {
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        boolean cancelled = executionMode == ExecutionMode.BOARD_THREAD
+                ? join(cancelOrderAsync(crypto, orderId))
+                : get(crypto).cancelOrder(orderId);
+        if (Metrics.ENABLED) {
+            metrics.cancelled(start, cancelled);
+        }
+        return cancelled;
+    }
+
+    public CompletableFuture<Boolean> cancelOrderAsync(Cryptocurrency crypto, UUID orderId) {
+        if (executionMode == ExecutionMode.BOARD_THREAD) {
+            return listing(crypto).executor.submit(board -> board.cancelOrder(orderId));
+        }
+        return CompletableFuture.completedFuture(get(crypto).cancelOrder(orderId));
+    }
+
+    /**
+     * Cancels every resting order of a user on every board, e.g. when they
+     * disconnect.  The boards are handled at the same time in BOARD_THREAD mode.
+     *
+     * @return the number of orders cancelled
+     */
+    public int cancelAllForUser(String userId) {
+        Listing[] current = listings;
+        if (executionMode != ExecutionMode.BOARD_THREAD) {
+            int cancelled = 0;
+            for (Listing listing : current) {
+                if (listing != null) {
+                    cancelled += listing.board.cancelAllForUser(userId);
+                }
+            }
+            return cancelled;
+        }
+        List<CompletableFuture<Integer>> boards = new ArrayList<>();
+        for (Listing listing : current) {
+            if (listing != null) {
+                boards.add(listing.executor.submit(board -> board.cancelAllForUser(userId)));
+            }
+        }
+        int cancelled = 0;
+        for (CompletableFuture<Integer> board : boards) {
+            cancelled += join(board);
+        }
+        return cancelled;
+    }
+
+    /**
+     * @param side the side to cancel, or null for both
+     * @return the number of orders cancelled
+     */
+    public int cancelAllForUser(String userId, Cryptocurrency crypto, Side side) {
+        if (executionMode == ExecutionMode.BOARD_THREAD) {
+            return join(listing(crypto).executor.submit(board -> board.cancelAllForUser(userId, side)));
+        }
+        return get(crypto).cancelAllForUser(userId, side);
+    }
+
+    /**
+     * Amends a resting order in one step on its board, see OrderBoard.amendOrder
+     *
+     * @return true if the order was resting and has been amended
+     */
+    public boolean amendOrder(Cryptocurrency crypto, UUID orderId, long priceTicks, long quantityLots) {
+        if (executionMode == ExecutionMode.BOARD_THREAD) {
+            return join(amendOrderAsync(crypto, orderId, priceTicks, quantityLots));
         }
+        return get(crypto).amendOrder(orderId, priceTicks, quantityLots);
     }
 
-    public void submitOrder(CryptoOrder order) {
-        get(order.getCoinType()).submitOrder(order);
+    public CompletableFuture<Boolean> amendOrderAsync(Cryptocurrency crypto, UUID orderId, long priceTicks, long quantityLots) {
+        if (executionMode == ExecutionMode.BOARD_THREAD) {
+            return listing(crypto).executor.submit(board -> board.amendOrder(orderId, priceTicks, quantityLots));
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            result.complete(get(crypto).amendOrder(orderId, priceTicks, quantityLots));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Submits a waiting stop order now, see OrderBoard.triggerStop
+     *
+     * @return true if the stop was waiting
+     */
+    public boolean triggerStop(Cryptocurrency crypto, UUID orderId) {
+        if (executionMode == ExecutionMode.BOARD_THREAD) {
+            return join(listing(crypto).executor.submit(board -> board.triggerStop(orderId)));
+        }
+        return get(crypto).triggerStop(orderId);
+    }
+
+    /**
+     * @return completes once the board's resting orders have been copied,
+     *         on the board's thread in BOARD_THREAD mode
+     */
+    public CompletableFuture<OrderBoardSnapshot> takeSnapshotAsync(Cryptocurrency crypto) {
+        if (executionMode == ExecutionMode.BOARD_THREAD) {
+            return listing(crypto).executor.submit(OrderBoard::takeSnapshot);
+        }
+        return CompletableFuture.completedFuture(get(crypto).takeSnapshot());
+    }
+
+    public MarketSnapshot getMarketSnapshot(int depth) {
+        return join(getMarketSnapshotAsync(depth));
+    }
+
+    /**
+     * Captures both books of every listed board at once, on the board threads in
+     * BOARD_THREAD mode, otherwise on the common fork-join pool, so takes
+     * about as long as the slowest board rather than all of them in turn
+     *
+     * @param depth maximum number of levels of each book
+     */
+    public CompletableFuture<MarketSnapshot> getMarketSnapshotAsync(int depth) {
+        Function<OrderBoard, BookSnapshot[]> capture = board -> new BookSnapshot[] {
+                board.getCurrentSnapshot(Side.BUY, depth), board.getCurrentSnapshot(Side.SELL, depth)};
+        Map<Cryptocurrency, CompletableFuture<BookSnapshot[]>> boards = new HashMap<>();
+        for (Listing listing : listings) {
+            if (listing == null) {
+                continue;
+            }
+            OrderBoard board = listing.board;
+            if (listing.executor != null) {
+                boards.put(board.getCoinType(), listing.executor.submit(capture));
+            } else {
+                boards.put(board.getCoinType(), CompletableFuture.supplyAsync(() -> capture.apply(board), ForkJoinPool.commonPool()));
+            }
+        }
+        return CompletableFuture.allOf(boards.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<Cryptocurrency, BookSnapshot> bids = new HashMap<>();
+            Map<Cryptocurrency, BookSnapshot> asks = new HashMap<>();
+            for (Map.Entry<Cryptocurrency, CompletableFuture<BookSnapshot[]>> board : boards.entrySet()) {
+                BookSnapshot[] books = board.getValue().join();
+                bids.put(board.getKey(), books[0]);
+                asks.put(board.getKey(), books[1]);
+            }
+            return new MarketSnapshot(bids, asks);
+        });
+    }
+
+    /**
+     * Loads a snapshot into its board, which must be empty
+     */
+    public void restoreSnapshot(OrderBoardSnapshot snapshot) {
+        onBoard(snapshot.getCoinType(), board -> board.restoreSnapshot(snapshot));
+    }
+
+    /**
+     * Subscribes to a book's level changes, which are delivered on the
+     * board's thread in BOARD_THREAD mode
+     *
+     * @param depth levels in the initial snapshot
+     */
+    public void subscribe(Cryptocurrency crypto, Side side, LevelListener listener, int depth) {
+        onBoard(crypto, board -> board.subscribe(side, listener, depth));
+    }
+
+    public void resync(Cryptocurrency crypto, Side side, LevelListener listener, int depth) {
+        onBoard(crypto, board -> board.resync(side, listener, depth));
+    }
+
+    public void unsubscribe(Cryptocurrency crypto, Side side, LevelListener listener) {
+        onBoard(crypto, board -> board.unsubscribe(side, listener));
+    }
+
+    /**
+     * Runs the call on the board's thread in BOARD_THREAD mode and waits for it
+     */
+    private void onBoard(Cryptocurrency crypto, Consumer<OrderBoard> call) {
+        Listing listing = listing(crypto);
+        if (listing.executor != null) {
+            join(listing.executor.submit(board -> {
+                call.accept(board);
+                return null;
+            }));
+        } else {
+            call.accept(listing.board);
+        }
+    }
+
+    /**
+     * Never blocks, in either execution mode
+     */
+    public TopOfBook getTopOfBook(Cryptocurrency crypto) {
+        return get(crypto).getTopOfBook();
     }
 
     public String[] getOrderSummary(Cryptocurrency crypto, Side side) {
         return get(crypto).getOrderSummary(side);
     }
+
+    public int getOrderSummary(Cryptocurrency crypto, Side side, int maxDepth, StringBuilder out) {
+        return get(crypto).getOrderSummary(side, maxDepth, out);
+    }
+
+    /**
+     * @return latencies seen by callers of submitOrder and cancelOrder, only updated when Metrics.ENABLED
+     */
+    public MarketMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // Rethrow what the board threw, as if it had run on this thread
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the board threads once their queued orders are processed, and
+     * removes the market's and its boards' metrics from JMX
+     */
+    @Override
+    public void close() {
+        for (Listing listing : listings) {
+            if (listing != null) {
+                if (listing.executor != null) {
+                    listing.executor.close();
+                }
+                unregisterBookMetrics(listing.board.getCoinType());
+            }
+        }
+        Metrics.unregister(metricsName);
+    }
+
+    /**
+     * Keyed by market as well as coin, so each market's boards are visible
+     */
+    private String bookMetricsName(Cryptocurrency crypto, Side side) {
+        return "type=OrderBook,market=" + marketId + ",coin=" + crypto + ",side=" + side;
+    }
+
+    private void unregisterBookMetrics(Cryptocurrency crypto) {
+        for (Side side : Side.values()) {
+            Metrics.unregister(bookMetricsName(crypto, side));
+        }
+    }
+
+    /**
+     * A coin's board, with its thread in BOARD_THREAD mode
+     */
+    private static final class Listing {
+
+        private final OrderBoard board;
+        private final OrderBoardExecutor executor;
+
+        Listing(OrderBoard board, OrderBoardExecutor executor) {
+            this.board = board;
+            this.executor = executor;
+        }
+    }
 }
@@ -1,13 +1,157 @@
 package com.dak.crypto;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
- * List of cryptocurrencies.  Ideally this should be
- * in a config file and the enum initialised on startup
+ * A tradable coin.  The coins below are always defined, others can be
+ * defined at runtime, e.g. from config, without restarting the market.
+ * Each coin has a dense id in the order defined, which indexes a
+ * CryptoMarket's boards and identifies the coin in the binary formats.
+ * Ids only hold within a process, so what is written to disk or sent to
+ * a client names each coin it uses in an OrderCodec coin record.
  */
-public enum Cryptocurrency {
-    LITECOIN,
-    BITCOIN,
-    ETHERIUM,
-    TETHER,
-    XRP;
+public final class Cryptocurrency {
+
+    /**
+     * Ids are encoded in one byte
+     */
+    public static final int MAX_COINS = 256;
+
+    private static final Object DEFINE_LOCK = new Object();
+    // Both replaced when a coin is defined so lookups never lock
+    private static volatile Cryptocurrency[] byId = new Cryptocurrency[0];
+    private static volatile Map<String, Cryptocurrency> byName = new HashMap<>();
+
+    public static final Cryptocurrency LITECOIN = define("LITECOIN", "0.00001", "0.00000001", BookType.TREE_MAP);
+    public static final Cryptocurrency BITCOIN = define("BITCOIN", "0.01", "0.00000001", BookType.TREE_MAP);
+    public static final Cryptocurrency ETHERIUM = define("ETHERIUM", "0.01", "0.00000001", BookType.TREE_MAP);
+    // Pegged, so trades in a narrow band of ticks
+    public static final Cryptocurrency TETHER = define("TETHER", "0.0001", "0.01", BookType.ARRAY_LADDER);
+    public static final Cryptocurrency XRP = define("XRP", "0.00001", "0.000001", BookType.TREE_MAP);
+
+    private final int id;
+    private final String name;
+    private final TickConfig tickConfig;
+    private final BookType bookType;
+
+    private Cryptocurrency(int id, String name, TickConfig tickConfig, BookType bookType) {
+        this.id = id;
+        this.name = name;
+        this.tickConfig = tickConfig;
+        this.bookType = bookType;
+    }
+
+    /**
+     * Defines a coin with the next free id.  Markets create its board on
+     * first use, see CryptoMarket.list.
+     *
+     * @param name unique
+     * @param tickSize
+     * @param lotSize
+     * @param bookType
+     */
+    public static Cryptocurrency define(String name, String tickSize, String lotSize, BookType bookType) {
+        TickConfig tickConfig = new TickConfig(tickSize, lotSize);
+        synchronized (DEFINE_LOCK) {
+            if (byName.containsKey(name)) {
+                throw new RuntimeException(String.format("Cryptocurrency %s is already defined", name));
+            }
+            Cryptocurrency[] current = byId;
+            if (current.length == MAX_COINS) {
+                throw new RuntimeException(String.format("Cannot define %s, all %d coin ids are taken", name, MAX_COINS));
+            }
+            Cryptocurrency coin = new Cryptocurrency(current.length, name, tickConfig, bookType);
+            Cryptocurrency[] next = Arrays.copyOf(current, current.length + 1);
+            next[coin.id] = coin;
+            Map<String, Cryptocurrency> nextByName = new HashMap<>(byName);
+            nextByName.put(name, coin);
+            byId = next;
+            byName = nextByName;
+            return coin;
+        }
+    }
+
+    /**
+     * Looks up the coin named, defining it if it is not yet, e.g. when
+     * reading it from a journal written by another process.  The id may
+     * differ from the one it had there.
+     *
+     * @throws RuntimeException if the name is defined with other sizes or book type
+     */
+    public static Cryptocurrency getOrDefine(String name, String tickSize, String lotSize, BookType bookType) {
+        synchronized (DEFINE_LOCK) {
+            Cryptocurrency coin = byName.get(name);
+            if (coin == null) {
+                return define(name, tickSize, lotSize, bookType);
+            }
+            TickConfig tickConfig = coin.tickConfig;
+            if (tickConfig.getTickSize().compareTo(new BigDecimal(tickSize)) != 0
+                    || tickConfig.getLotSize().compareTo(new BigDecimal(lotSize)) != 0
+                    || coin.bookType != bookType) {
+                throw new RuntimeException(String.format("Cryptocurrency %s is defined as %s %s, not tick %s lot %s %s",
+                        name, tickConfig, coin.bookType, tickSize, lotSize, bookType));
+            }
+            return coin;
+        }
+    }
+
+    /**
+     * @return every coin defined so far, in id order
+     */
+    public static Cryptocurrency[] values() {
+        return byId.clone();
+    }
+
+    /**
+     * @return the number of coins defined, whose ids run from 0 to one less
+     */
+    public static int count() {
+        return byId.length;
+    }
+
+    public static Cryptocurrency fromId(int id) {
+        Cryptocurrency[] current = byId;
+        if (id < 0 || id >= current.length) {
+            throw new RuntimeException(String.format("No Cryptocurrency with id %d", id));
+        }
+        return current[id];
+    }
+
+    public static Cryptocurrency valueOf(String name) {
+        Cryptocurrency coin = byName.get(name);
+        if (coin == null) {
+            throw new RuntimeException(String.format("No Cryptocurrency named %s", name));
+        }
+        return coin;
+    }
+
+    /**
+     * @return dense, from 0 in the order defined
+     */
+    public int getId() {
+        return id;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public TickConfig getTickConfig() {
+        return tickConfig;
+    }
+
+    /**
+     * @return how the coin's OrderBooks hold their price levels
+     */
+    public BookType getBookType() {
+        return bookType;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
 }
@@ -0,0 +1,122 @@
+package com.dak.crypto;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A subscriber's own copy of one side of a book, kept up to date from its
+ * level changes.  Marks itself stale on a gap in the sequence, when it
+ * should be resynced.  Only read it on the thread the changes are delivered on.
+ * <p>
+ * Subscribed with less than the whole book, it holds the levels down to the
+ * worst one in its snapshot and ignores changes beyond that, since it does
+ * not know what rests there.  Once a level goes and it holds fewer levels
+ * than the snapshot had, it marks itself stale too, so a resync refills it
+ * from a fresh BookSnapshot.
+ */
+public class DepthView implements LevelListener {
+
+    private final Side side;
+    private final TreeMap<Long, Long> levels;
+    private long sequence = -1;
+    private boolean stale = true;
+    // Set when the last snapshot left levels out, which lie beyond worstPriceTicks
+    private boolean partial;
+    private int snapshotDepth;
+    private long worstPriceTicks;
+
+    public DepthView(Side side) {
+        this.side = side;
+        this.levels = new TreeMap<>(side == Side.BUY ? Comparator.<Long>reverseOrder() : Comparator.<Long>naturalOrder());
+    }
+
+    @Override
+    public void onSnapshot(BookSnapshot snapshot) {
+        if (snapshot.getSide() != side) {
+            throw new RuntimeException(String.format("Invalid snapshot for DepthView - Expected: %s, Actual: %s", side, snapshot.getSide()));
+        }
+        levels.clear();
+        for (int i = 0; i < snapshot.getDepth(); i++) {
+            levels.put(snapshot.getPriceTicks(i), snapshot.getQuantityLots(i));
+        }
+        sequence = snapshot.getSequence();
+        snapshotDepth = snapshot.getDepth();
+        partial = snapshotDepth < snapshot.getSize();
+        if (snapshotDepth > 0) {
+            worstPriceTicks = snapshot.getPriceTicks(snapshotDepth - 1);
+        }
+        stale = false;
+    }
+
+    @Override
+    public void onLevelChange(Side side, long priceTicks, long quantityLots, long sequence) {
+        if (stale || sequence <= this.sequence) {
+            // Waiting for a resync, or already in the snapshot
+            return;
+        }
+        if (sequence != this.sequence + 1) {
+            stale = true;
+            return;
+        }
+        this.sequence = sequence;
+        if (partial && !isInWindow(priceTicks)) {
+            return;
+        }
+        if (quantityLots == 0) {
+            levels.remove(priceTicks);
+            if (partial && levels.size() < snapshotDepth) {
+                // The next level down is beyond what the view knows
+                stale = true;
+            }
+        } else {
+            levels.put(priceTicks, quantityLots);
+        }
+    }
+
+    private boolean isInWindow(long priceTicks) {
+        return snapshotDepth > 0 && levels.comparator().compare(priceTicks, worstPriceTicks) <= 0;
+    }
+
+    /**
+     * @return true before the first snapshot, after a missed change, and once
+     * a partial view has lost a level it cannot refill itself
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * @return the level's total quantity, 0 if there is no such level
+     */
+    public long getQuantityLots(long priceTicks) {
+        Long quantityLots = levels.get(priceTicks);
+        return quantityLots == null ? 0 : quantityLots;
+    }
+
+    /**
+     * Copies the top of the view, best price first
+     *
+     * @return the number of levels copied
+     */
+    public int getDepth(long[] priceTicks, long[] quantityLots) {
+        int i = 0;
+        for (Map.Entry<Long, Long> level : levels.entrySet()) {
+            if (i == priceTicks.length || i == quantityLots.length) {
+                break;
+            }
+            priceTicks[i] = level.getKey();
+            quantityLots[i] = level.getValue();
+            i++;
+        }
+        return i;
+    }
+}
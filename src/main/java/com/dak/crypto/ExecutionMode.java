@@ -0,0 +1,16 @@
+package com.dak.crypto;
+
+/**
+ * Which threads a CryptoMarket runs orders on
+ */
+public enum ExecutionMode {
+    /**
+     * Orders are processed on the submitting thread
+     */
+    CALLER_THREAD,
+    /**
+     * Each OrderBoard is owned by its own event-loop thread, so coins are
+     * processed in parallel and never contend with each other
+     */
+    BOARD_THREAD;
+}
@@ -0,0 +1,259 @@
+package com.dak.crypto;
+
+import com.dak.crypto.metrics.BookMetrics;
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.order.GroupedOrder;
+import com.dak.crypto.order.RestingOrder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Resting orders held by a pair of pooled OrderBooks, indexed by id and by
+ * user on the heap
+ */
+final class HeapRestingOrders implements RestingOrders {
+
+    private final OrderBook buySideOrderBook;
+    private final OrderBook sellSideOrderBook;
+    // Every order resting on either side, by order id
+    private final Map<UUID, RestingOrder> orderIndex = new HashMap<>();
+    // Ids of the orders in orderIndex, by user
+    private final Map<String, Set<UUID>> userOrders = new HashMap<>();
+    private RestingOrder loaded;
+
+    HeapRestingOrders(TickConfig tickConfig, ConcurrencyMode concurrencyMode, int publishedDepth, BookType bookType) {
+        this.buySideOrderBook = new OrderBook(Side.BUY, tickConfig, concurrencyMode, publishedDepth, bookType, true);
+        this.sellSideOrderBook = new OrderBook(Side.SELL, tickConfig, concurrencyMode, publishedDepth, bookType, true);
+    }
+
+    private OrderBook getOrderBook(Side side) {
+        return side == Side.BUY ? buySideOrderBook : sellSideOrderBook;
+    }
+
+    @Override
+    public boolean contains(UUID orderId) {
+        return orderIndex.containsKey(orderId);
+    }
+
+    @Override
+    public int size() {
+        return orderIndex.size();
+    }
+
+    @Override
+    public void rest(CryptoOrder order, long priceTicks, long quantityLots) {
+        index(getOrderBook(order.getSide()).submitOrder(order, priceTicks, quantityLots));
+    }
+
+    /**
+     * Indexes the order as the book holds it, which outlives a submitted flyweight
+     */
+    private void index(RestingOrder restingOrder) {
+        CryptoOrder order = (CryptoOrder) restingOrder.getOrder();
+        orderIndex.put(order.getOrderId(), restingOrder);
+        userOrders.computeIfAbsent(order.getUserId(), userId -> new HashSet<>()).add(order.getOrderId());
+    }
+
+    private void unindex(CryptoOrder order) {
+        orderIndex.remove(order.getOrderId());
+        Set<UUID> orderIds = userOrders.get(order.getUserId());
+        orderIds.remove(order.getOrderId());
+        if (orderIds.isEmpty()) {
+            userOrders.remove(order.getUserId());
+        }
+    }
+
+    @Override
+    public boolean loadBest(Side side) {
+        loaded = getOrderBook(side).getBestOrder();
+        return loaded != null;
+    }
+
+    @Override
+    public boolean load(UUID orderId) {
+        loaded = orderIndex.get(orderId);
+        return loaded != null;
+    }
+
+    @Override
+    public CryptoOrder getLoadedOrder() {
+        return (CryptoOrder) loaded.getOrder();
+    }
+
+    @Override
+    public long getLoadedPriceTicks() {
+        return loaded.getPriceTicks();
+    }
+
+    @Override
+    public long getLoadedQuantityLots() {
+        return loaded.getQuantityLots();
+    }
+
+    @Override
+    public boolean fillLoaded(long quantityLots) {
+        // The books are pooled, so read the order before it can be recycled
+        CryptoOrder order = getLoadedOrder();
+        if (getOrderBook(order.getSide()).fillOrder(loaded, quantityLots)) {
+            unindex(order);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void reduceLoaded(long quantityLots) {
+        getOrderBook(loaded.getOrder().getSide()).reduceOrder(loaded, quantityLots);
+    }
+
+    @Override
+    public void moveLoaded(long priceTicks, long quantityLots) {
+        CryptoOrder order = getLoadedOrder();
+        loaded = getOrderBook(order.getSide()).moveOrder(loaded, priceTicks, quantityLots);
+        orderIndex.put(order.getOrderId(), loaded);
+    }
+
+    @Override
+    public void removeLoaded() {
+        CryptoOrder order = getLoadedOrder();
+        unindex(order);
+        getOrderBook(order.getSide()).removeOrder(loaded);
+        loaded = null;
+    }
+
+    @Override
+    public boolean getBestLevel(Side side, long[] level) {
+        GroupedOrder best = getOrderBook(side).getBestLevel();
+        if (best == null) {
+            return false;
+        }
+        level[0] = best.getPriceTicks();
+        level[1] = best.getQuantityLots();
+        return true;
+    }
+
+    @Override
+    public long getSweepPriceTicks(Side side, long quantityLots) {
+        long priceTicks = OrderBoardSnapshot.NO_TRADE;
+        for (GroupedOrder level = getOrderBook(side).getBestLevel(); level != null && quantityLots > 0; level = level.getNextLevel()) {
+            priceTicks = level.getPriceTicks();
+            quantityLots -= level.getQuantityLots();
+        }
+        return priceTicks;
+    }
+
+    @Override
+    public int removeUserOrders(String userId, Side side, Consumer<UUID> beforeRemoval) {
+        Set<UUID> orderIds = userOrders.get(userId);
+        if (orderIds == null) {
+            return 0;
+        }
+        List<RestingOrder> bids = new ArrayList<>();
+        List<RestingOrder> asks = new ArrayList<>();
+        for (Iterator<UUID> ids = orderIds.iterator(); ids.hasNext(); ) {
+            UUID orderId = ids.next();
+            RestingOrder restingOrder = orderIndex.get(orderId);
+            Side orderSide = restingOrder.getOrder().getSide();
+            if (side != null && orderSide != side) {
+                continue;
+            }
+            ids.remove();
+            orderIndex.remove(orderId);
+            beforeRemoval.accept(orderId);
+            (orderSide == Side.BUY ? bids : asks).add(restingOrder);
+        }
+        if (orderIds.isEmpty()) {
+            userOrders.remove(userId);
+        }
+        return buySideOrderBook.removeOrders(bids) + sellSideOrderBook.removeOrders(asks);
+    }
+
+    @Override
+    public void removeAll(Consumer<UUID> beforeRemoval) {
+        List<RestingOrder> bids = new ArrayList<>();
+        List<RestingOrder> asks = new ArrayList<>();
+        for (Map.Entry<UUID, RestingOrder> entry : orderIndex.entrySet()) {
+            beforeRemoval.accept(entry.getKey());
+            RestingOrder restingOrder = entry.getValue();
+            (restingOrder.getOrder().getSide() == Side.BUY ? bids : asks).add(restingOrder);
+        }
+        orderIndex.clear();
+        userOrders.clear();
+        buySideOrderBook.removeOrders(bids);
+        sellSideOrderBook.removeOrders(asks);
+    }
+
+    @Override
+    public int copyOrders(CryptoOrder[] orders, long[] priceTicks, long[] remainingLots) {
+        int i = 0;
+        for (OrderBook orderBook : new OrderBook[] {buySideOrderBook, sellSideOrderBook}) {
+            for (GroupedOrder level = orderBook.getBestLevel(); level != null; level = level.getNextLevel()) {
+                for (RestingOrder resting = level.getFirst(); resting != null; resting = resting.getNext()) {
+                    orders[i] = (CryptoOrder) resting.getOrder();
+                    priceTicks[i] = resting.getPriceTicks();
+                    remainingLots[i] = resting.getQuantityLots();
+                    i++;
+                }
+            }
+        }
+        return i;
+    }
+
+    @Override
+    public void runExclusively(Runnable task) {
+        buySideOrderBook.runExclusively(() -> sellSideOrderBook.runExclusively(task));
+    }
+
+    @Override
+    public String[] getOrderSummary(Side side, int maxDepth) {
+        return getOrderBook(side).getOrderSummary(maxDepth);
+    }
+
+    @Override
+    public int getOrderSummary(Side side, int maxDepth, StringBuilder out) {
+        return getOrderBook(side).getOrderSummary(maxDepth, out);
+    }
+
+    @Override
+    public int getDepth(Side side, long[] priceTicks, long[] quantityLots) {
+        return getOrderBook(side).getDepth(priceTicks, quantityLots);
+    }
+
+    @Override
+    public BookSnapshot getSnapshot(Side side, int maxDepth) {
+        return getOrderBook(side).getSnapshot(maxDepth);
+    }
+
+    @Override
+    public BookSnapshot getCurrentSnapshot(Side side, int maxDepth) {
+        return getOrderBook(side).getCurrentSnapshot(maxDepth);
+    }
+
+    @Override
+    public BookMetrics getMetrics(Side side) {
+        return getOrderBook(side).getMetrics();
+    }
+
+    @Override
+    public void subscribe(Side side, LevelListener listener, int depth) {
+        getOrderBook(side).subscribe(listener, depth);
+    }
+
+    @Override
+    public void resync(Side side, LevelListener listener, int depth) {
+        getOrderBook(side).resync(listener, depth);
+    }
+
+    @Override
+    public boolean unsubscribe(Side side, LevelListener listener) {
+        return getOrderBook(side).unsubscribe(listener);
+    }
+}
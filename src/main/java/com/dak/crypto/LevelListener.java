@@ -0,0 +1,29 @@
+package com.dak.crypto;
+
+/**
+ * Subscriber to the price level changes of one OrderBook.  Called on the
+ * writer thread while the book is locked, so implementations should be quick
+ * and must not call back into the book.
+ */
+public interface LevelListener {
+
+    /**
+     * Called once on subscribing, and again on a resync, with the state later
+     * changes apply to.  Changes with a sequence up to the snapshot's are
+     * already included in it.
+     *
+     * @param snapshot
+     */
+    void onSnapshot(BookSnapshot snapshot);
+
+    /**
+     * Called after every submit, cancel and fill.  Each change to a book
+     * increments its sequence by exactly one, so a gap means a change was missed.
+     *
+     * @param side
+     * @param priceTicks
+     * @param quantityLots the level's new total, 0 once the level has gone
+     * @param sequence
+     */
+    void onLevelChange(Side side, long priceTicks, long quantityLots, long sequence);
+}
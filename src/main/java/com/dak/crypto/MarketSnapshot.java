@@ -0,0 +1,52 @@
+package com.dak.crypto;
+
+import com.dak.crypto.util.OutputFormatter;
+
+import java.util.Map;
+
+/**
+ * The top levels of every book in a CryptoMarket.  Each book's levels are
+ * consistent as of that book's sequence number, the books are captured
+ * independently so are not consistent with each other.
+ */
+public final class MarketSnapshot {
+
+    private final Map<Cryptocurrency, BookSnapshot> bids;
+    private final Map<Cryptocurrency, BookSnapshot> asks;
+
+    MarketSnapshot(Map<Cryptocurrency, BookSnapshot> bids, Map<Cryptocurrency, BookSnapshot> asks) {
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    public BookSnapshot getBook(Cryptocurrency crypto, Side side) {
+        BookSnapshot book = (side == Side.BUY ? bids : asks).get(crypto);
+        if (book == null) {
+            throw new RuntimeException(String.format("No %s book for %s in snapshot", side, crypto));
+        }
+        return book;
+    }
+
+    /**
+     * @return the number of changes made to the book when it was captured
+     */
+    public long getSequence(Cryptocurrency crypto, Side side) {
+        return getBook(crypto, side).getSequence();
+    }
+
+    /**
+     * @return the same lines as CryptoMarket.getOrderSummary, best price first
+     */
+    public String[] getOrderSummary(Cryptocurrency crypto, Side side) {
+        BookSnapshot book = getBook(crypto, side);
+        TickConfig tickConfig = crypto.getTickConfig();
+        String[] summary = new String[book.getDepth()];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < summary.length; i++) {
+            line.setLength(0);
+            tickConfig.appendQuantity(line, book.getQuantityLots(i)).append(OutputFormatter.PRICE_SEPARATOR);
+            summary[i] = tickConfig.appendPrice(line, book.getPriceTicks(i)).toString();
+        }
+        return summary;
+    }
+}
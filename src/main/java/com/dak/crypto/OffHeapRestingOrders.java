@@ -0,0 +1,295 @@
+package com.dak.crypto;
+
+import com.dak.crypto.metrics.BookMetrics;
+import com.dak.crypto.offheap.OffHeapOrderBook;
+import com.dak.crypto.offheap.OrderSlots;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.util.OutputFormatter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Resting orders held in a pair of OffHeapOrderBooks, for BookType.OFF_HEAP.
+ * An order is rebuilt from its slot each time it is read, so the TradeListener
+ * and snapshots see a CryptoMarketOrder with the same id, user and side, not
+ * the instance submitted.
+ * <p>
+ * There is no index by user, cancelling a user's orders or delisting walks
+ * every resting order.  The books take their own locks, so in SINGLE_WRITER
+ * mode readers briefly hold up the writer, and level subscriptions are not
+ * supported.
+ */
+final class OffHeapRestingOrders implements RestingOrders {
+
+    private final Cryptocurrency coinType;
+    private final TickConfig tickConfig;
+    private final OffHeapOrderBook buySideOrderBook;
+    private final OffHeapOrderBook sellSideOrderBook;
+    // Never updated, the books keep no metrics
+    private final BookMetrics buyMetrics = BookMetrics.create();
+    private final BookMetrics sellMetrics = BookMetrics.create();
+    // Reused by getBestLevel, writer only
+    private final long[] bestPriceTicks = new long[1];
+    private final long[] bestQuantityLots = new long[1];
+    private OffHeapOrderBook loadedBook;
+    private int loadedSlot = OrderSlots.NO_SLOT;
+
+    OffHeapRestingOrders(Cryptocurrency coinType) {
+        this.coinType = coinType;
+        this.tickConfig = coinType.getTickConfig();
+        this.buySideOrderBook = new OffHeapOrderBook(Side.BUY, tickConfig);
+        this.sellSideOrderBook = new OffHeapOrderBook(Side.SELL, tickConfig);
+    }
+
+    private OffHeapOrderBook getOrderBook(Side side) {
+        return side == Side.BUY ? buySideOrderBook : sellSideOrderBook;
+    }
+
+    @Override
+    public boolean contains(UUID orderId) {
+        return buySideOrderBook.findOrder(orderId) != OrderSlots.NO_SLOT
+                || sellSideOrderBook.findOrder(orderId) != OrderSlots.NO_SLOT;
+    }
+
+    @Override
+    public int size() {
+        return buySideOrderBook.getOrderCount() + sellSideOrderBook.getOrderCount();
+    }
+
+    @Override
+    public void rest(CryptoOrder order, long priceTicks, long quantityLots) {
+        getOrderBook(order.getSide()).submitOrder(order.getOrderId(), order.getUserId(), priceTicks, quantityLots, System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean loadBest(Side side) {
+        loadedBook = getOrderBook(side);
+        loadedSlot = loadedBook.getBestOrder();
+        return loadedSlot != OrderSlots.NO_SLOT;
+    }
+
+    @Override
+    public boolean load(UUID orderId) {
+        loadedBook = buySideOrderBook;
+        loadedSlot = buySideOrderBook.findOrder(orderId);
+        if (loadedSlot == OrderSlots.NO_SLOT) {
+            loadedBook = sellSideOrderBook;
+            loadedSlot = sellSideOrderBook.findOrder(orderId);
+        }
+        return loadedSlot != OrderSlots.NO_SLOT;
+    }
+
+    @Override
+    public CryptoOrder getLoadedOrder() {
+        return toOrder(loadedBook, loadedSlot);
+    }
+
+    private CryptoOrder toOrder(OffHeapOrderBook orderBook, int slot) {
+        return new CryptoMarketOrder(orderBook.getOrderId(slot), orderBook.getUserId(slot), coinType, orderBook.getSide(),
+                orderBook.getQuantityLots(slot), orderBook.getPriceTicks(slot));
+    }
+
+    @Override
+    public long getLoadedPriceTicks() {
+        return loadedBook.getPriceTicks(loadedSlot);
+    }
+
+    @Override
+    public long getLoadedQuantityLots() {
+        return loadedBook.getQuantityLots(loadedSlot);
+    }
+
+    @Override
+    public boolean fillLoaded(long quantityLots) {
+        return loadedBook.fillOrder(loadedSlot, quantityLots);
+    }
+
+    /**
+     * A partial fill of the difference, which keeps the order's time priority
+     */
+    @Override
+    public void reduceLoaded(long quantityLots) {
+        long restingLots = loadedBook.getQuantityLots(loadedSlot);
+        if (quantityLots <= 0 || quantityLots > restingLots) {
+            throw new RuntimeException(String.format("Invalid reduction to %d lots from %d resting", quantityLots, restingLots));
+        }
+        if (quantityLots < restingLots) {
+            loadedBook.fillOrder(loadedSlot, restingLots - quantityLots);
+        }
+    }
+
+    /**
+     * Removes and resubmits the order at the back of the new price's queue,
+     * keeping its timestamp
+     */
+    @Override
+    public void moveLoaded(long priceTicks, long quantityLots) {
+        OffHeapOrderBook orderBook = loadedBook;
+        int slot = loadedSlot;
+        orderBook.runExclusively(() -> {
+            UUID orderId = orderBook.getOrderId(slot);
+            String userId = orderBook.getUserId(slot);
+            long timestamp = orderBook.getTimestamp(slot);
+            orderBook.removeOrder(orderId);
+            loadedSlot = orderBook.submitOrder(orderId, userId, priceTicks, quantityLots, timestamp);
+        });
+    }
+
+    @Override
+    public void removeLoaded() {
+        loadedBook.removeOrder(loadedBook.getOrderId(loadedSlot));
+        loadedSlot = OrderSlots.NO_SLOT;
+    }
+
+    @Override
+    public boolean getBestLevel(Side side, long[] level) {
+        if (getOrderBook(side).getDepth(bestPriceTicks, bestQuantityLots) == 0) {
+            return false;
+        }
+        level[0] = bestPriceTicks[0];
+        level[1] = bestQuantityLots[0];
+        return true;
+    }
+
+    /**
+     * Walks the side's orders rather than its levels, which gives the same price
+     */
+    @Override
+    public long getSweepPriceTicks(Side side, long quantityLots) {
+        OffHeapOrderBook orderBook = getOrderBook(side);
+        long priceTicks = OrderBoardSnapshot.NO_TRADE;
+        for (int slot = orderBook.getBestOrder(); slot != OrderSlots.NO_SLOT && quantityLots > 0; slot = orderBook.getNextOrder(slot)) {
+            priceTicks = orderBook.getPriceTicks(slot);
+            quantityLots -= orderBook.getQuantityLots(slot);
+        }
+        return priceTicks;
+    }
+
+    @Override
+    public int removeUserOrders(String userId, Side side, Consumer<UUID> beforeRemoval) {
+        int removed = 0;
+        for (OffHeapOrderBook orderBook : new OffHeapOrderBook[] {buySideOrderBook, sellSideOrderBook}) {
+            if (side == null || orderBook.getSide() == side) {
+                removed += removeOrders(orderBook, userId, beforeRemoval);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void removeAll(Consumer<UUID> beforeRemoval) {
+        removeOrders(buySideOrderBook, null, beforeRemoval);
+        removeOrders(sellSideOrderBook, null, beforeRemoval);
+    }
+
+    /**
+     * Removes the user's orders, or all of them for a null user, in one step
+     *
+     * @return the number of orders removed
+     */
+    private static int removeOrders(OffHeapOrderBook orderBook, String userId, Consumer<UUID> beforeRemoval) {
+        List<UUID> orderIds = new ArrayList<>();
+        orderBook.runExclusively(() -> {
+            for (int slot = orderBook.getBestOrder(); slot != OrderSlots.NO_SLOT; slot = orderBook.getNextOrder(slot)) {
+                if (userId == null || userId.equals(orderBook.getUserId(slot))) {
+                    orderIds.add(orderBook.getOrderId(slot));
+                }
+            }
+            for (UUID orderId : orderIds) {
+                beforeRemoval.accept(orderId);
+                orderBook.removeOrder(orderId);
+            }
+        });
+        return orderIds.size();
+    }
+
+    @Override
+    public int copyOrders(CryptoOrder[] orders, long[] priceTicks, long[] remainingLots) {
+        int i = 0;
+        for (OffHeapOrderBook orderBook : new OffHeapOrderBook[] {buySideOrderBook, sellSideOrderBook}) {
+            for (int slot = orderBook.getBestOrder(); slot != OrderSlots.NO_SLOT; slot = orderBook.getNextOrder(slot)) {
+                orders[i] = toOrder(orderBook, slot);
+                priceTicks[i] = orderBook.getPriceTicks(slot);
+                remainingLots[i] = orderBook.getQuantityLots(slot);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    @Override
+    public void runExclusively(Runnable task) {
+        buySideOrderBook.runExclusively(() -> sellSideOrderBook.runExclusively(task));
+    }
+
+    @Override
+    public String[] getOrderSummary(Side side, int maxDepth) {
+        return getOrderBook(side).getOrderSummary(maxDepth);
+    }
+
+    @Override
+    public int getOrderSummary(Side side, int maxDepth, StringBuilder out) {
+        OffHeapOrderBook orderBook = getOrderBook(side);
+        int length = Math.min(maxDepth, orderBook.getSize());
+        long[] priceTicks = new long[length];
+        long[] quantityLots = new long[length];
+        int depth = orderBook.getDepth(priceTicks, quantityLots);
+        for (int i = 0; i < depth; i++) {
+            tickConfig.appendQuantity(out, quantityLots[i]).append(OutputFormatter.PRICE_SEPARATOR);
+            tickConfig.appendPrice(out, priceTicks[i]).append('\n');
+        }
+        return depth;
+    }
+
+    @Override
+    public int getDepth(Side side, long[] priceTicks, long[] quantityLots) {
+        return getOrderBook(side).getDepth(priceTicks, quantityLots);
+    }
+
+    /**
+     * Always as of the latest change, its sequence is always 0
+     */
+    @Override
+    public BookSnapshot getSnapshot(Side side, int maxDepth) {
+        OffHeapOrderBook orderBook = getOrderBook(side);
+        BookSnapshot[] snapshot = new BookSnapshot[1];
+        orderBook.runExclusively(() -> {
+            long[] priceTicks = new long[Math.min(maxDepth, orderBook.getSize())];
+            long[] quantityLots = new long[priceTicks.length];
+            int depth = orderBook.getDepth(priceTicks, quantityLots);
+            snapshot[0] = new BookSnapshot(side, 0, orderBook.getSize(),
+                    Arrays.copyOf(priceTicks, depth), Arrays.copyOf(quantityLots, depth));
+        });
+        return snapshot[0];
+    }
+
+    @Override
+    public BookSnapshot getCurrentSnapshot(Side side, int maxDepth) {
+        return getSnapshot(side, maxDepth);
+    }
+
+    @Override
+    public BookMetrics getMetrics(Side side) {
+        return side == Side.BUY ? buyMetrics : sellMetrics;
+    }
+
+    @Override
+    public void subscribe(Side side, LevelListener listener, int depth) {
+        throw new RuntimeException(String.format("Level subscriptions are not supported by %s %s books", coinType, BookType.OFF_HEAP));
+    }
+
+    @Override
+    public void resync(Side side, LevelListener listener, int depth) {
+        throw new RuntimeException(String.format("Level subscriptions are not supported by %s %s books", coinType, BookType.OFF_HEAP));
+    }
+
+    @Override
+    public boolean unsubscribe(Side side, LevelListener listener) {
+        return false;
+    }
+}
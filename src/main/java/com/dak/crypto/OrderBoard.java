@@ -1,52 +1,723 @@
 package com.dak.crypto;
 
+import com.dak.crypto.metrics.BookMetrics;
+import com.dak.crypto.order.AmendOrder;
 import com.dak.crypto.order.CancelOrder;
 import com.dak.crypto.order.CryptoOrder;
-import com.dak.crypto.order.Order;
+import com.dak.crypto.order.StopOrder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class OrderBoard {
 
-    private final OrderBook buySideOrderBook;
-    private final OrderBook sellSideorderBook;
+    private static final int DEFAULT_PUBLISHED_DEPTH = 10;
+    private static final int DEFAULT_SUMMARY_DEPTH = 10;
+    private static final long NO_TRADE = OrderBoardSnapshot.NO_TRADE;
+
     private final Cryptocurrency coinType;
+    // Both sides' books, also the board's lock
+    private final RestingOrders restingOrders;
+    private final TradeListener tradeListener;
+    private final OrderJournal orderJournal;
+    private final ConcurrencyMode concurrencyMode;
+    // SINGLE_WRITER mode only
+    private final AtomicReference<Thread> writerThread = new AtomicReference<>();
+    // Replaced whenever the best bid or ask changes, read without locking
+    private volatile TopOfBook topOfBook;
+    // Set once delisted, guarded along with restingOrders
+    private boolean delisted;
+    // Stop orders waiting for their trigger, by order id and by trigger price, guarded along with restingOrders
+    private final Map<UUID, CryptoOrder> stopOrders = new HashMap<>();
+    private final StopIndex buyStops = new StopIndex(Side.BUY);
+    private final StopIndex sellStops = new StopIndex(Side.SELL);
+    private final List<CryptoOrder> triggeredStops = new ArrayList<>();
+    private boolean firingStops;
+    private long lastTradePriceTicks = NO_TRADE;
+    // Reused by updateTopOfBook and amend, guarded along with restingOrders
+    private final long[] bestBid = new long[2];
+    private final long[] bestAsk = new long[2];
 
     public OrderBoard(Cryptocurrency type) {
+        this(type, TradeListener.NONE);
+    }
+
+    public OrderBoard(Cryptocurrency type, TradeListener tradeListener) {
+        this(type, tradeListener, ConcurrencyMode.LOCKING);
+    }
+
+    /**
+     * In SINGLE_WRITER mode all orders must be submitted from one thread,
+     * summaries may be read from any thread without blocking it
+     */
+    public OrderBoard(Cryptocurrency type, TradeListener tradeListener, ConcurrencyMode concurrencyMode) {
+        this(type, tradeListener, concurrencyMode, OrderJournal.NONE);
+    }
+
+    /**
+     * @param orderJournal told of every accepted order, cancel and amend before it is applied
+     */
+    public OrderBoard(Cryptocurrency type, TradeListener tradeListener, ConcurrencyMode concurrencyMode, OrderJournal orderJournal) {
+        this(type, tradeListener, concurrencyMode, orderJournal, type.getBookType());
+    }
+
+    /**
+     * @param bookType overrides the coin's BookType, OFF_HEAP holds the
+     *                 orders in OffHeapOrderBooks
+     */
+    public OrderBoard(Cryptocurrency type, TradeListener tradeListener, ConcurrencyMode concurrencyMode, OrderJournal orderJournal, BookType bookType) {
         this.coinType = type;
-        // Initialise the OrderBooks
-        this.buySideOrderBook = new OrderBook(Side.BUY);
-        this.sellSideorderBook = new OrderBook(Side.SELL);
+        this.tradeListener = tradeListener;
+        this.orderJournal = orderJournal;
+        this.concurrencyMode = concurrencyMode;
+        this.restingOrders = bookType == BookType.OFF_HEAP
+                ? new OffHeapRestingOrders(type)
+                : new HeapRestingOrders(type.getTickConfig(), concurrencyMode, DEFAULT_PUBLISHED_DEPTH, bookType);
+        this.topOfBook = TopOfBook.empty(type);
     }
 
-    public void submitOrder(CryptoOrder order) {
+    public SubmitResult submitOrder(CryptoOrder order) {
+        checkCoinType(order);
+
+        if (order instanceof CancelOrder) {
+            return cancelOrder(((CancelOrder) order).getOriginalOrderId()) ? SubmitResult.CANCELLED : SubmitResult.NOT_FOUND;
+        }
+        if (order instanceof AmendOrder) {
+            return amendOrder(((AmendOrder) order).getOriginalOrderId(), order.getPriceTicks(), order.getQuantityLots())
+                    ? SubmitResult.AMENDED : SubmitResult.NOT_FOUND;
+        }
+        if (order instanceof StopOrder) {
+            addStopOrder(order);
+        } else {
+            addOrder(order);
+        }
+        return SubmitResult.ACCEPTED;
+    }
+
+    private void checkCoinType(CryptoOrder order) {
         if (order.getCoinType() != this.coinType) {
             throw new RuntimeException(String.format("Invalid order submitted to OrderBoard - Expected: %s, Actual: %s", this.coinType, order.getCoinType()));
         }
+    }
+
+    /**
+     * Processes a burst of orders in sequence, taking the board's and both
+     * books' locks only once.  An invalid order is rejected without affecting
+     * the rest of the batch.
+     *
+     * @param orders
+     * @return the result of each order, in the same order
+     */
+    public SubmitResult[] submitOrders(Collection<? extends CryptoOrder> orders) {
+        CryptoOrder[] batch = orders.toArray(new CryptoOrder[0]);
+        SubmitResult[] results = new SubmitResult[batch.length];
+        submitOrders(batch, null, batch.length, results);
+        return results;
+    }
+
+    /**
+     * @param orders
+     * @param positions the positions in orders to process, or null for the first count
+     * @param count
+     * @param results written at the same positions as the orders
+     */
+    void submitOrders(CryptoOrder[] orders, int[] positions, int count, SubmitResult[] results) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            processBatch(orders, positions, count, results);
+        } else {
+            synchronized (restingOrders) {
+                restingOrders.runExclusively(() -> processBatch(orders, positions, count, results));
+            }
+        }
+    }
 
-        if (order instanceof CancelOrder) {
-            removeOrder(order);
+    private void processBatch(CryptoOrder[] orders, int[] positions, int count, SubmitResult[] results) {
+        for (int i = 0; i < count; i++) {
+            int position = positions == null ? i : positions[i];
+            CryptoOrder order = orders[position];
+            try {
+                checkCoinType(order);
+                if (order instanceof CancelOrder) {
+                    results[position] = removeOrder(((CancelOrder) order).getOriginalOrderId()) ? SubmitResult.CANCELLED : SubmitResult.NOT_FOUND;
+                } else if (order instanceof AmendOrder) {
+                    results[position] = amend(((AmendOrder) order).getOriginalOrderId(), order.getPriceTicks(), order.getQuantityLots())
+                            ? SubmitResult.AMENDED : SubmitResult.NOT_FOUND;
+                } else if (order instanceof StopOrder) {
+                    addStop(order);
+                    results[position] = SubmitResult.ACCEPTED;
+                } else {
+                    addOrder(order, order.getPriceTicks(), order.getQuantityLots());
+                    results[position] = SubmitResult.ACCEPTED;
+                }
+            } catch (RuntimeException e) {
+                results[position] = SubmitResult.REJECTED;
+            }
+        }
+    }
+
+    /**
+     * Trades the order against the opposite side in price-time priority and
+     * rests whatever is left unfilled
+     */
+    private void addOrder(CryptoOrder order) {
+        long priceTicks = order.getPriceTicks();
+        long quantityLots = order.getQuantityLots();
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            addOrder(order, priceTicks, quantityLots);
         } else {
-            addOrder(order);
+            synchronized (restingOrders) {
+                addOrder(order, priceTicks, quantityLots);
+            }
+        }
+    }
+
+    private void addOrder(CryptoOrder order, long priceTicks, long quantityLots) {
+        checkListed();
+        checkNewOrderId(order);
+        orderJournal.onOrder(order, priceTicks, quantityLots);
+        trade(order, priceTicks, quantityLots);
+    }
+
+    /**
+     * Matches an accepted and journalled order, resting the remainder
+     */
+    private void trade(CryptoOrder order, long priceTicks, long quantityLots) {
+        long unfilledLots = match(order, priceTicks, quantityLots);
+        if (unfilledLots > 0) {
+            restingOrders.rest(order, priceTicks, unfilledLots);
+        }
+        updateTopOfBook();
+        fireStops();
+    }
+
+    private void checkNewOrderId(CryptoOrder order) {
+        if (restingOrders.contains(order.getOrderId()) || stopOrders.containsKey(order.getOrderId())) {
+            throw new RuntimeException(String.format("Duplicate order id submitted to OrderBoard: %s", order.getOrderId()));
+        }
+    }
+
+    private void addStopOrder(CryptoOrder order) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            addStop(order);
+        } else {
+            synchronized (restingOrders) {
+                addStop(order);
+            }
+        }
+    }
+
+    /**
+     * Holds the stop until a trade reaches its trigger, which may be the
+     * last trade already.  Waiting stops are journalled and in snapshots,
+     * once triggered they are journalled as a trigger rather than as the
+     * order they become.
+     */
+    private void addStop(CryptoOrder order) {
+        checkListed();
+        checkNewOrderId(order);
+        if (order.getQuantityLots() <= 0) {
+            throw new RuntimeException(String.format("Invalid stop order %s for %d lots", order.getOrderId(), order.getQuantityLots()));
+        }
+        orderJournal.onStopOrder(order);
+        holdStop(order);
+        fireStops();
+    }
+
+    private void holdStop(CryptoOrder order) {
+        stopOrders.put(order.getOrderId(), order);
+        getStops(order.getSide()).add(order);
+    }
+
+    /**
+     * Submits a waiting stop order now, as if a trade had reached its
+     * trigger, along with any stops its trades trigger.  Replaying a journal
+     * uses it, where the stop has usually fired already.
+     *
+     * @param orderId
+     * @return true if the stop was waiting
+     */
+    public boolean triggerStop(UUID orderId) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return fireStop(orderId);
+        }
+        synchronized (restingOrders) {
+            return fireStop(orderId);
+        }
+    }
+
+    private boolean fireStop(UUID orderId) {
+        CryptoOrder stop = stopOrders.get(orderId);
+        if (stop == null) {
+            return false;
+        }
+        checkListed();
+        getStops(stop.getSide()).remove(stop);
+        stopOrders.remove(orderId);
+        orderJournal.onTrigger(coinType, orderId);
+        submitTriggered(stop);
+        fireStops();
+        return true;
+    }
+
+    private StopIndex getStops(Side side) {
+        return side == Side.BUY ? buyStops : sellStops;
+    }
+
+    /**
+     * Submits the stops triggered by the last trade, then any triggered in
+     * turn by their trades, each in the order its index gives.  If one
+     * fails the error reaches the caller, and the stops not yet submitted
+     * wait on for the next trade.
+     */
+    private void fireStops() {
+        if (firingStops || stopOrders.isEmpty() || lastTradePriceTicks == NO_TRADE) {
+            return;
         }
+        firingStops = true;
+        try {
+            while (buyStops.removeTriggered(lastTradePriceTicks, triggeredStops)
+                    + sellStops.removeTriggered(lastTradePriceTicks, triggeredStops) > 0) {
+                for (int i = 0; i < triggeredStops.size(); i++) {
+                    CryptoOrder stop = triggeredStops.get(i);
+                    stopOrders.remove(stop.getOrderId());
+                    orderJournal.onTrigger(coinType, stop.getOrderId());
+                    try {
+                        submitTriggered(stop);
+                    } catch (RuntimeException e) {
+                        for (CryptoOrder waiting : triggeredStops.subList(i + 1, triggeredStops.size())) {
+                            getStops(waiting.getSide()).add(waiting);
+                        }
+                        throw e;
+                    }
+                }
+                triggeredStops.clear();
+            }
+        } finally {
+            triggeredStops.clear();
+            firingStops = false;
+        }
+    }
+
+    /**
+     * A stop-limit becomes a limit order at its price.  A stop-loss takes
+     * what the other side offers, whatever is left unfilled, all of it if
+     * that side is empty, is cancelled and reported to the TradeListener.
+     */
+    private void submitTriggered(CryptoOrder stop) {
+        long quantityLots = stop.getQuantityLots();
+        if (!((StopOrder) stop).isStopLoss()) {
+            trade(stop, stop.getPriceTicks(), quantityLots);
+            return;
+        }
+        long priceTicks = restingOrders.getSweepPriceTicks(opposite(stop.getSide()), quantityLots);
+        long unfilledLots = priceTicks == NO_TRADE ? quantityLots : match(stop, priceTicks, quantityLots);
+        if (unfilledLots > 0) {
+            orderJournal.onCancel(coinType, stop.getOrderId());
+            tradeListener.onUnfilled(coinType, stop, unfilledLots);
+        }
+        updateTopOfBook();
+    }
+
+    /**
+     * Publishes a new TopOfBook if the best level of either side has changed
+     */
+    private void updateTopOfBook() {
+        boolean hasBid = restingOrders.getBestLevel(Side.BUY, bestBid);
+        boolean hasAsk = restingOrders.getBestLevel(Side.SELL, bestAsk);
+        long bidPriceTicks = hasBid ? bestBid[0] : 0;
+        long bidQuantityLots = hasBid ? bestBid[1] : 0;
+        long askPriceTicks = hasAsk ? bestAsk[0] : 0;
+        long askQuantityLots = hasAsk ? bestAsk[1] : 0;
+        TopOfBook current = topOfBook;
+        if (!current.matches(bidPriceTicks, bidQuantityLots, askPriceTicks, askQuantityLots)) {
+            topOfBook = new TopOfBook(coinType, current.getSequence() + 1, bidPriceTicks, bidQuantityLots, askPriceTicks, askQuantityLots);
+        }
+    }
+
+    /**
+     * @return the quantity left unfilled
+     */
+    private long match(CryptoOrder order, long priceTicks, long quantityLots) {
+        Side oppositeSide = opposite(order.getSide());
+        while (quantityLots > 0 && restingOrders.loadBest(oppositeSide)) {
+            long restingPriceTicks = restingOrders.getLoadedPriceTicks();
+            if (!crosses(order.getSide(), priceTicks, restingPriceTicks)) {
+                break;
+            }
+            // Read the resting order before the fill can recycle it
+            CryptoOrder restingOrder = restingOrders.getLoadedOrder();
+            long fillLots = Math.min(quantityLots, restingOrders.getLoadedQuantityLots());
+            restingOrders.fillLoaded(fillLots);
+            quantityLots -= fillLots;
+            lastTradePriceTicks = restingPriceTicks;
+            tradeListener.onTrade(coinType, order, restingOrder, restingPriceTicks, fillLots);
+        }
+        return quantityLots;
+    }
+
+    private static Side opposite(Side side) {
+        return side == Side.BUY ? Side.SELL : Side.BUY;
+    }
+
+    private static boolean crosses(Side side, long priceTicks, long restingPriceTicks) {
+        return side == Side.BUY ? priceTicks >= restingPriceTicks : priceTicks <= restingPriceTicks;
     }
 
-    private void addOrder(Order order) {
-        getOrderBook(order.getSide()).submitOrder(order);
+    /**
+     * Cancels a resting order using only its id
+     *
+     * @param orderId id of the order to cancel
+     * @return true if the order was resting and has been removed
+     */
+    public boolean cancelOrder(UUID orderId) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return removeOrder(orderId);
+        }
+        synchronized (restingOrders) {
+            return removeOrder(orderId);
+        }
     }
 
-    private void removeOrder(Order order) {
-        getOrderBook(order.getSide()).removeOrder(order);
+    private boolean removeOrder(UUID orderId) {
+        if (!restingOrders.load(orderId)) {
+            return removeStop(orderId);
+        }
+        orderJournal.onCancel(coinType, orderId);
+        restingOrders.removeLoaded();
+        updateTopOfBook();
+        return true;
     }
 
-    private OrderBook getOrderBook(Side side) {
-        return side == Side.BUY ? buySideOrderBook : sellSideorderBook;
+    private boolean removeStop(UUID orderId) {
+        CryptoOrder stop = stopOrders.remove(orderId);
+        if (stop == null) {
+            return false;
+        }
+        orderJournal.onCancel(coinType, orderId);
+        return getStops(stop.getSide()).remove(stop);
+    }
+
+    public int cancelAllForUser(String userId) {
+        return cancelAllForUser(userId, null);
+    }
+
+    /**
+     * Cancels every resting and stop order of a user, in one pass of each book
+     *
+     * @param userId
+     * @param side the side to cancel, or null for both
+     * @return the number of orders cancelled
+     */
+    public int cancelAllForUser(String userId, Side side) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return removeUserOrders(userId, side) + removeUserStops(userId, side);
+        }
+        synchronized (restingOrders) {
+            return removeUserOrders(userId, side) + removeUserStops(userId, side);
+        }
+    }
+
+    private int removeUserStops(String userId, Side side) {
+        int cancelled = 0;
+        for (Iterator<CryptoOrder> stops = stopOrders.values().iterator(); stops.hasNext(); ) {
+            CryptoOrder stop = stops.next();
+            if (stop.getUserId().equals(userId) && (side == null || stop.getSide() == side)) {
+                orderJournal.onCancel(coinType, stop.getOrderId());
+                stops.remove();
+                getStops(stop.getSide()).remove(stop);
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    private int removeUserOrders(String userId, Side side) {
+        int cancelled = restingOrders.removeUserOrders(userId, side, orderId -> orderJournal.onCancel(coinType, orderId));
+        updateTopOfBook();
+        return cancelled;
+    }
+
+    /**
+     * Cancels every resting and stop order and refuses new orders from then
+     * on, for a coin taken off the market.  Cancels are still answered.
+     *
+     * @return the resting and stop orders cancelled, so their users can be told
+     */
+    public OrderBoardSnapshot delist() {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return removeAllOrders();
+        }
+        synchronized (restingOrders) {
+            return removeAllOrders();
+        }
+    }
+
+    private OrderBoardSnapshot removeAllOrders() {
+        OrderBoardSnapshot snapshot = copyBoard();
+        restingOrders.removeAll(orderId -> orderJournal.onCancel(coinType, orderId));
+        for (UUID stopId : stopOrders.keySet()) {
+            orderJournal.onCancel(coinType, stopId);
+        }
+        stopOrders.clear();
+        buyStops.clear();
+        sellStops.clear();
+        updateTopOfBook();
+        delisted = true;
+        return snapshot;
+    }
+
+    /**
+     * Fails before any change is made if a SINGLE_WRITER board is written
+     * from a thread other than its writer, the first thread to write it
+     */
+    private void checkWriter() {
+        Thread current = Thread.currentThread();
+        Thread writer = writerThread.get();
+        if (writer != current && (writer != null || !writerThread.compareAndSet(null, current))) {
+            throw new RuntimeException(String.format("OrderBoard is owned by writer thread %s, not %s", writerThread.get().getName(), current.getName()));
+        }
+    }
+
+    private void checkListed() {
+        if (delisted) {
+            throw new RuntimeException(String.format("%s has been delisted", coinType));
+        }
+    }
+
+    /**
+     * Changes the price and unfilled quantity of a resting order without a
+     * cancel and a new order.  A lower quantity at the same price is applied
+     * in place and keeps the order's time priority.  Otherwise the order
+     * loses its priority: at a price crossing the other side it trades as if
+     * newly submitted, any remainder resting at the new price, else it is
+     * moved to the new price in one step.
+     *
+     * @param orderId id of the order to amend
+     * @param priceTicks its new price
+     * @param quantityLots its new unfilled quantity
+     * @return true if the order was resting and has been amended
+     */
+    public boolean amendOrder(UUID orderId, long priceTicks, long quantityLots) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return amend(orderId, priceTicks, quantityLots);
+        }
+        synchronized (restingOrders) {
+            return amend(orderId, priceTicks, quantityLots);
+        }
+    }
+
+    private boolean amend(UUID orderId, long priceTicks, long quantityLots) {
+        if (quantityLots <= 0) {
+            throw new RuntimeException(String.format("Invalid amend of order %s to %d lots", orderId, quantityLots));
+        }
+        if (!restingOrders.load(orderId)) {
+            return false;
+        }
+        checkListed();
+        orderJournal.onAmend(coinType, orderId, priceTicks, quantityLots);
+        CryptoOrder order = restingOrders.getLoadedOrder();
+        long[] oppositeBest = order.getSide() == Side.BUY ? bestAsk : bestBid;
+        if (priceTicks == restingOrders.getLoadedPriceTicks() && quantityLots <= restingOrders.getLoadedQuantityLots()) {
+            restingOrders.reduceLoaded(quantityLots);
+        } else if (restingOrders.getBestLevel(opposite(order.getSide()), oppositeBest)
+                && crosses(order.getSide(), priceTicks, oppositeBest[0])) {
+            restingOrders.removeLoaded();
+            long unfilledLots = match(order, priceTicks, quantityLots);
+            if (unfilledLots > 0) {
+                restingOrders.rest(order, priceTicks, unfilledLots);
+            }
+        } else {
+            restingOrders.moveLoaded(priceTicks, quantityLots);
+        }
+        updateTopOfBook();
+        fireStops();
+        return true;
+    }
+
+    /**
+     * Copies the resting and stop orders and the last trade price at a
+     * consistent point, with the journal position to replay from.  Only holds the board for the copy, the
+     * snapshot can then be written out on another thread.  Writer thread
+     * only in SINGLE_WRITER mode.
+     */
+    public OrderBoardSnapshot takeSnapshot() {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return copyBoard();
+        }
+        synchronized (restingOrders) {
+            return copyBoard();
+        }
+    }
+
+    private OrderBoardSnapshot copyBoard() {
+        int count = restingOrders.size();
+        CryptoOrder[] orders = new CryptoOrder[count];
+        long[] priceTicks = new long[count];
+        long[] remainingLots = new long[count];
+        restingOrders.copyOrders(orders, priceTicks, remainingLots);
+        List<CryptoOrder> stops = new ArrayList<>(stopOrders.size());
+        buyStops.copyTo(stops);
+        sellStops.copyTo(stops);
+        return new OrderBoardSnapshot(coinType, orderJournal.getPosition(), orders, priceTicks, remainingLots,
+                stops.toArray(new CryptoOrder[0]), lastTradePriceTicks);
+    }
+
+    /**
+     * Rests the snapshot's orders with their remaining quantities and holds
+     * its stops, in the same time priority.  Nothing is matched, fired or
+     * journalled.
+     *
+     * @param snapshot
+     */
+    public void restoreSnapshot(OrderBoardSnapshot snapshot) {
+        if (snapshot.getCoinType() != coinType) {
+            throw new RuntimeException(String.format("Invalid snapshot restored to OrderBoard - Expected: %s, Actual: %s", coinType, snapshot.getCoinType()));
+        }
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            restoreOrders(snapshot);
+        } else {
+            synchronized (restingOrders) {
+                restoreOrders(snapshot);
+            }
+        }
+    }
+
+    private void restoreOrders(OrderBoardSnapshot snapshot) {
+        if (restingOrders.size() > 0 || !stopOrders.isEmpty()) {
+            throw new RuntimeException(String.format("Snapshot restored to a %s OrderBoard holding %d orders", coinType, restingOrders.size() + stopOrders.size()));
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            restingOrders.rest(snapshot.getOrder(i), snapshot.getPriceTicks(i), snapshot.getRemainingLots(i));
+        }
+        for (int i = 0; i < snapshot.getStopOrderCount(); i++) {
+            holdStop(snapshot.getStopOrder(i));
+        }
+        lastTradePriceTicks = snapshot.getLastTradePriceTicks();
+        updateTopOfBook();
     }
 
     public String[] getOrderSummary(Side side) {
-        return getOrderBook(side).getOrderSummary();
+        return restingOrders.getOrderSummary(side, DEFAULT_SUMMARY_DEPTH);
     }
 
     public String[] getOrderSummary(Side side, int maxDepth) {
-        return getOrderBook(side).getOrderSummary(maxDepth);
+        return restingOrders.getOrderSummary(side, maxDepth);
+    }
+
+    /**
+     * Appends the summary to a reusable buffer, see OrderBook.getOrderSummary(int, StringBuilder)
+     *
+     * @return the number of levels appended
+     */
+    public int getOrderSummary(Side side, int maxDepth, StringBuilder out) {
+        return restingOrders.getOrderSummary(side, maxDepth, out);
+    }
+
+    /**
+     * @return the number of levels copied into the arrays
+     */
+    public int getDepth(Side side, long[] priceTicks, long[] quantityLots) {
+        return restingOrders.getDepth(side, priceTicks, quantityLots);
+    }
+
+    /**
+     * Never blocks order entry in SINGLE_WRITER mode
+     *
+     * @param side
+     * @param maxDepth
+     */
+    public BookSnapshot getSnapshot(Side side, int maxDepth) {
+        return restingOrders.getSnapshot(side, maxDepth);
+    }
+
+    /**
+     * Writer thread only in SINGLE_WRITER mode, see OrderBook.getCurrentSnapshot
+     */
+    public BookSnapshot getCurrentSnapshot(Side side, int maxDepth) {
+        return restingOrders.getCurrentSnapshot(side, maxDepth);
+    }
+
+    /**
+     * Never blocks, may be called from any thread
+     *
+     * @return the latest best bid and offer
+     */
+    public TopOfBook getTopOfBook() {
+        return topOfBook;
+    }
+
+    /**
+     * @return counters and latencies of one side, only updated when
+     *         Metrics.ENABLED, and visible over JMX while a market lists the board
+     */
+    public BookMetrics getMetrics(Side side) {
+        return restingOrders.getMetrics(side);
+    }
+
+    /**
+     * Subscribes to one side's level changes, see OrderBook.subscribe.
+     * Writer thread only in SINGLE_WRITER mode.
+     */
+    public void subscribe(Side side, LevelListener listener, int depth) {
+        restingOrders.subscribe(side, listener, depth);
+    }
+
+    public void resync(Side side, LevelListener listener, int depth) {
+        restingOrders.resync(side, listener, depth);
+    }
+
+    public boolean unsubscribe(Side side, LevelListener listener) {
+        return restingOrders.unsubscribe(side, listener);
+    }
+
+    /**
+     * Writer thread only in SINGLE_WRITER mode
+     */
+    public int getOrderCount() {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            return restingOrders.size();
+        }
+        synchronized (restingOrders) {
+            return restingOrders.size();
+        }
+    }
+
+    /**
+     * Writer thread only in SINGLE_WRITER mode
+     *
+     * @return the number of stop orders waiting for their trigger
+     */
+    public int getStopOrderCount() {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            return stopOrders.size();
+        }
+        synchronized (restingOrders) {
+            return stopOrders.size();
+        }
+    }
+
+    public Cryptocurrency getCoinType() {
+        return coinType;
+    }
+
+    public ConcurrencyMode getConcurrencyMode() {
+        return concurrencyMode;
     }
 
 }
@@ -0,0 +1,203 @@
+package com.dak.crypto;
+
+import com.dak.crypto.util.MpscRingBuffer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Event loop owning a single-writer OrderBoard.  Any thread may hand it
+ * work through a bounded ring buffer, the board is only ever touched by the
+ * loop thread so needs no locking.
+ */
+public class OrderBoardExecutor implements AutoCloseable {
+
+    private static final int SPINS_BEFORE_PARK = 1000;
+    private static final long FULL_BACKOFF_NANOS = 1_000;
+
+    private final OrderBoard orderBoard;
+    private final MpscRingBuffer<Task> taskQueue;
+    private final Thread thread;
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+    // Set when a task threw an Error, which stops the loop
+    private volatile Throwable failure;
+
+    public OrderBoardExecutor(OrderBoard orderBoard, int queueCapacity) {
+        if (orderBoard.getConcurrencyMode() != ConcurrencyMode.SINGLE_WRITER) {
+            throw new RuntimeException("OrderBoardExecutor requires a SINGLE_WRITER OrderBoard");
+        }
+        this.orderBoard = orderBoard;
+        this.taskQueue = new MpscRingBuffer<>(queueCapacity);
+        this.thread = new Thread(this::runLoop, "OrderBoard-" + orderBoard.getCoinType());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public OrderBoard getOrderBoard() {
+        return orderBoard;
+    }
+
+    /**
+     * Runs the call on the board's thread.  Blocks while the queue is full.
+     *
+     * @param call
+     * @return completed with the call's result, or exceptionally with what it threw
+     * @throws RuntimeException if the executor is closed or stopped before the call is queued
+     */
+    public <T> CompletableFuture<T> submit(Function<OrderBoard, T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        enqueue(new Task(() -> {
+            try {
+                result.complete(call.apply(orderBoard));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                if (e instanceof Error) {
+                    // The board may be half changed, stop the loop
+                    throw (Error) e;
+                }
+            }
+        }, result));
+        return result;
+    }
+
+    /**
+     * Runs the task on the board's thread.  Blocks while the queue is full.
+     *
+     * @throws RuntimeException if the executor is closed or stopped before the task is queued
+     */
+    public void execute(Runnable task) {
+        enqueue(new Task(task, null));
+    }
+
+    private void enqueue(Task task) {
+        if (!running) {
+            throw closed();
+        }
+        while (!taskQueue.offer(task)) {
+            LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+        }
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+        // Closed meanwhile, the loop may have ended without seeing the task
+        if (!running && !isExecutorThread()) {
+            rejectLeftovers();
+            if (task.rejected) {
+                throw closed();
+            }
+        }
+    }
+
+    /**
+     * Fails the tasks queued after the loop ended, once it has
+     */
+    private void rejectLeftovers() {
+        awaitLoop();
+        rejectQueued();
+    }
+
+    private void rejectQueued() {
+        // One consumer at a time, once the loop is gone or by the loop itself
+        synchronized (taskQueue) {
+            Task leftover;
+            while ((leftover = taskQueue.poll()) != null) {
+                leftover.rejected = true;
+                if (leftover.result != null) {
+                    leftover.result.completeExceptionally(closed());
+                }
+            }
+        }
+    }
+
+    private RuntimeException closed() {
+        Throwable cause = failure;
+        if (cause != null) {
+            return new RuntimeException("OrderBoardExecutor for " + orderBoard.getCoinType() + " stopped after a task failed", cause);
+        }
+        return new RuntimeException("OrderBoardExecutor for " + orderBoard.getCoinType() + " has been closed");
+    }
+
+    /**
+     * @return true once a task has thrown an Error, after which all work is refused
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public boolean isExecutorThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    private void runLoop() {
+        int idleSpins = 0;
+        while (running || !taskQueue.isEmpty()) {
+            Task task = taskQueue.poll();
+            if (task != null) {
+                idleSpins = 0;
+                try {
+                    task.body.run();
+                } catch (RuntimeException e) {
+                    // Keep the loop alive for the other callers
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                } catch (Error e) {
+                    // Refuse the queued and later work rather than leave callers waiting
+                    failure = e;
+                    running = false;
+                    rejectQueued();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    return;
+                }
+            } else if (++idleSpins < SPINS_BEFORE_PARK) {
+                Thread.yield();
+            } else {
+                sleeping = true;
+                // Re-check after publishing that we are about to sleep, see execute()
+                if (taskQueue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                idleSpins = 0;
+            }
+        }
+    }
+
+    /**
+     * Stops the loop once the queued work is done.  Work queued by callers
+     * racing with close is failed rather than left waiting.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        awaitLoop();
+    }
+
+    private void awaitLoop() {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Task {
+
+        private final Runnable body;
+        // Null for execute()
+        private final CompletableFuture<?> result;
+        private volatile boolean rejected;
+
+        private Task(Runnable body, CompletableFuture<?> result) {
+            this.body = body;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.dak.crypto;
+
+import com.dak.crypto.order.CryptoOrder;
+
+/**
+ * Every order resting on an OrderBoard at one point in its history, bids
+ * then asks, best price first and in time priority within each price,
+ * along with its waiting stop orders in the order they would fire.
+ * Immutable, the orders themselves are shared with the board.
+ */
+public final class OrderBoardSnapshot {
+
+    /**
+     * Last trade price of a board that has not traded
+     */
+    public static final long NO_TRADE = Long.MIN_VALUE;
+
+    private static final CryptoOrder[] NO_STOPS = new CryptoOrder[0];
+
+    private final Cryptocurrency coinType;
+    private final long journalPosition;
+    private final CryptoOrder[] orders;
+    private final long[] priceTicks;
+    private final long[] remainingLots;
+    private final CryptoOrder[] stopOrders;
+    private final long lastTradePriceTicks;
+
+    /**
+     * @param coinType
+     * @param journalPosition position of the board's first journal record not reflected in the snapshot
+     * @param orders
+     * @param priceTicks of each order
+     * @param remainingLots unfilled quantity of each order
+     */
+    public OrderBoardSnapshot(Cryptocurrency coinType, long journalPosition, CryptoOrder[] orders, long[] priceTicks, long[] remainingLots) {
+        this(coinType, journalPosition, orders, priceTicks, remainingLots, NO_STOPS, NO_TRADE);
+    }
+
+    /**
+     * @param stopOrders waiting StopOrders, buys then sells, in the order they would fire
+     * @param lastTradePriceTicks price of the board's last trade, or NO_TRADE
+     */
+    public OrderBoardSnapshot(Cryptocurrency coinType, long journalPosition, CryptoOrder[] orders, long[] priceTicks, long[] remainingLots,
+                              CryptoOrder[] stopOrders, long lastTradePriceTicks) {
+        if (orders.length != priceTicks.length || orders.length != remainingLots.length) {
+            throw new RuntimeException(String.format("Mismatched snapshot of %s - orders: %d, prices: %d, quantities: %d",
+                    coinType, orders.length, priceTicks.length, remainingLots.length));
+        }
+        this.coinType = coinType;
+        this.journalPosition = journalPosition;
+        this.orders = orders;
+        this.priceTicks = priceTicks;
+        this.remainingLots = remainingLots;
+        this.stopOrders = stopOrders;
+        this.lastTradePriceTicks = lastTradePriceTicks;
+    }
+
+    public Cryptocurrency getCoinType() {
+        return coinType;
+    }
+
+    public long getJournalPosition() {
+        return journalPosition;
+    }
+
+    public int size() {
+        return orders.length;
+    }
+
+    public CryptoOrder getOrder(int i) {
+        return orders[i];
+    }
+
+    public long getPriceTicks(int i) {
+        return priceTicks[i];
+    }
+
+    public long getRemainingLots(int i) {
+        return remainingLots[i];
+    }
+
+    public int getStopOrderCount() {
+        return stopOrders.length;
+    }
+
+    public CryptoOrder getStopOrder(int i) {
+        return stopOrders[i];
+    }
+
+    public long getLastTradePriceTicks() {
+        return lastTradePriceTicks;
+    }
+}
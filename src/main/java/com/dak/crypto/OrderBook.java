@@ -1,17 +1,24 @@
 package com.dak.crypto;
 
-import com.dak.crypto.Side;
+import com.dak.crypto.metrics.BookMetrics;
+import com.dak.crypto.metrics.Metrics;
+import com.dak.crypto.order.CancelOrder;
+import com.dak.crypto.order.CryptoOrder;
 import com.dak.crypto.order.GroupedOrder;
 import com.dak.crypto.order.Order;
+import com.dak.crypto.order.OrderNodePool;
+import com.dak.crypto.order.RestingOrder;
 import com.dak.crypto.util.OutputFormatter;
 
-import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class OrderBook {
-    class OrderComparator implements Comparator<BigDecimal> {
+    class OrderComparator implements Comparator<Long> {
 
         private final boolean ascending;
 
@@ -19,73 +26,720 @@ public class OrderBook {
             ascending = (side == Side.SELL);
         }
 
-        public int compare(BigDecimal o1, BigDecimal o2) {
-            return (ascending ? 1 : -1) * o1.compareTo(o2);
+        public int compare(Long o1, Long o2) {
+            long p1 = o1;
+            long p2 = o2;
+            return ascending ? Long.compare(p1, p2) : Long.compare(p2, p1);
         }
     }
 
     private static final int DEFAULT_MAX_DEPTH = 10;
+    private static final LevelListener[] NO_LISTENERS = new LevelListener[0];
+    private static final int INITIAL_POOL_SIZE = 256;
 
     private final Side bookSide;
-    private final Map<BigDecimal, Order> internalOrderBook;
+    private final TickConfig tickConfig;
+    private final BookType bookType;
+    private final PriceLevels internalOrderBook;
+    // Recycles orders and levels leaving the book, null when not pooled
+    private final OrderNodePool nodePool;
+    // Level at the top of the book, null when empty
+    private GroupedOrder bestLevel;
+    // Number of changes made to the book
+    private long sequence;
+    // Only changed under the lock, or by the writer thread
+    private LevelListener[] levelListeners = NO_LISTENERS;
+
+    private final ConcurrencyMode concurrencyMode;
+    // SINGLE_WRITER only: the owning thread, and the levels it publishes to readers
+    private final AtomicReference<Thread> writerThread = new AtomicReference<>();
+    private final int publishedDepth;
+    private volatile BookSnapshot publishedSnapshot;
+    private final AtomicInteger publishedSize = new AtomicInteger();
+    // Only updated when Metrics.ENABLED
+    private final BookMetrics metrics = BookMetrics.create();
 
     public OrderBook(Side side) {
+        this(side, TickConfig.DEFAULT);
+    }
+
+    public OrderBook(Side side, TickConfig tickConfig) {
+        this(side, tickConfig, ConcurrencyMode.LOCKING, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param side
+     * @param tickConfig
+     * @param concurrencyMode
+     * @param publishedDepth SINGLE_WRITER only, the number of levels published to readers, at least 1
+     */
+    public OrderBook(Side side, TickConfig tickConfig, ConcurrencyMode concurrencyMode, int publishedDepth) {
+        this(side, tickConfig, concurrencyMode, publishedDepth, BookType.TREE_MAP);
+    }
+
+    /**
+     * @param bookType how the price levels are held
+     */
+    public OrderBook(Side side, TickConfig tickConfig, ConcurrencyMode concurrencyMode, int publishedDepth, BookType bookType) {
+        this(side, tickConfig, concurrencyMode, publishedDepth, bookType, false);
+    }
+
+    /**
+     * @param pooled reuse the RestingOrders and levels of orders that have
+     *               left the book.  A RestingOrder returned by submitOrder
+     *               must then not be used once its order is filled or removed.
+     *               Only an ARRAY_LADDER book trading inside its window then
+     *               allocates nothing, the TREE_MAP index and the ladder's
+     *               overflow box a Long price and make a map entry per level.
+     */
+    public OrderBook(Side side, TickConfig tickConfig, ConcurrencyMode concurrencyMode, int publishedDepth, BookType bookType, boolean pooled) {
+        if (bookType == BookType.OFF_HEAP) {
+            throw new RuntimeException(String.format("An OrderBook cannot be built as %s, see OffHeapOrderBook", bookType));
+        }
+        if (publishedDepth < 1) {
+            throw new RuntimeException(String.format("Invalid published depth %d, at least one level is published", publishedDepth));
+        }
         this.bookSide = side;
-        this.internalOrderBook = new TreeMap<BigDecimal, Order>(new OrderComparator(side));
+        this.tickConfig = tickConfig;
+        this.bookType = bookType;
+        this.internalOrderBook = bookType == BookType.ARRAY_LADDER
+                ? new ArrayLadderPriceLevels(side, ArrayLadderPriceLevels.DEFAULT_SIZE, new OrderComparator(side))
+                : new TreeMapPriceLevels(new OrderComparator(side));
+        this.concurrencyMode = concurrencyMode;
+        this.publishedDepth = publishedDepth;
+        this.publishedSnapshot = BookSnapshot.empty(side);
+        this.nodePool = pooled ? new OrderNodePool(tickConfig, INITIAL_POOL_SIZE) : null;
     }
 
-    public void submitOrder(Order order) {
+    /**
+     * @param order
+     * @return the resting order, which can later be passed to {@link #removeOrder(RestingOrder)}
+     */
+    public RestingOrder submitOrder(Order order) {
+        return submitOrder(order, toTicks(order), toLots(order));
+    }
+
+    /**
+     * Rests an order for the given price and quantity, e.g. the unfilled
+     * remainder of an order that has partially traded
+     *
+     * @param order
+     * @param priceTicks
+     * @param quantityLots
+     * @return the resting order
+     */
+    public RestingOrder submitOrder(Order order, long priceTicks, long quantityLots) {
         if (order.getSide() != bookSide) {
             throw new RuntimeException("Order submitted to wrong book side");
         }
 
-        BigDecimal price = order.getPrice();
-        synchronized (internalOrderBook) {
-            Order existingOrder = internalOrderBook.get(price);
-            if (existingOrder == null) {
-                internalOrderBook.put(price, order);
-            } else {
-                if (existingOrder instanceof GroupedOrder) {
-                    ((GroupedOrder) existingOrder).addOrder(order);
-                } else {
-                    internalOrderBook.put(price, new GroupedOrder(existingOrder, order));
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        RestingOrder restingOrder;
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            restingOrder = addToLevel(order, priceTicks, quantityLots);
+            published(priceTicks);
+        } else {
+            synchronized (internalOrderBook) {
+                if (Metrics.ENABLED) {
+                    metrics.lockAcquired(start);
+                }
+                restingOrder = addToLevel(order, priceTicks, quantityLots);
+            }
+        }
+        if (Metrics.ENABLED) {
+            metrics.submitted(start);
+        }
+        return restingOrder;
+    }
+
+    private RestingOrder addToLevel(Order order, long priceTicks, long quantityLots) {
+        // The order outlives the call, so must not be a view of a reused buffer
+        order = order.detach();
+        RestingOrder restingOrder = nodePool == null
+                ? new RestingOrder(order, priceTicks, quantityLots)
+                : nodePool.acquireOrder(order, priceTicks, quantityLots);
+        GroupedOrder level = internalOrderBook.get(priceTicks);
+        if (level == null) {
+            level = nodePool == null ? new GroupedOrder(priceTicks, tickConfig) : nodePool.acquireLevel(priceTicks);
+            GroupedOrder better = internalOrderBook.better(priceTicks);
+            level.linkLevel(better, better == null ? bestLevel : better.getNextLevel());
+            internalOrderBook.put(level);
+            if (better == null) {
+                bestLevel = level;
+            }
+        }
+        level.addOrder(restingOrder);
+        levelChanged(level);
+        return restingOrder;
+    }
+
+    /**
+     * Removes an order by the price and id it was submitted with.  For a
+     * CancelOrder the original order is removed.
+     *
+     * @param order
+     * @return true if an order was removed
+     */
+    public boolean removeOrder(Order order) {
+        UUID orderId = (order instanceof CancelOrder) ? ((CancelOrder) order).getOriginalOrderId() : order.getOrderId();
+        long priceTicks = toTicks(order);
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        boolean removed;
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            removed = removeFromLevel(orderId, priceTicks) && published(priceTicks);
+        } else {
+            synchronized (internalOrderBook) {
+                if (Metrics.ENABLED) {
+                    metrics.lockAcquired(start);
                 }
+                removed = removeFromLevel(orderId, priceTicks);
             }
         }
+        if (Metrics.ENABLED) {
+            metrics.removed(start, removed);
+        }
+        return removed;
     }
 
-    public void removeOrder(Order order) {
-        BigDecimal price = order.getPrice();
+    private boolean removeFromLevel(UUID orderId, long priceTicks) {
+        GroupedOrder level = internalOrderBook.get(priceTicks);
+        if (level != null) {
+            RestingOrder restingOrder = level.findOrder(orderId);
+            if (restingOrder != null) {
+                unlink(restingOrder);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes a resting order in constant time
+     *
+     * @param restingOrder
+     * @return true if the order was still in this book
+     */
+    public boolean removeOrder(RestingOrder restingOrder) {
+        if (restingOrder.getOrder().getSide() != bookSide) {
+            throw new RuntimeException("Order removed from wrong book side");
+        }
+
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        boolean removed;
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            removed = removeResting(restingOrder);
+        } else {
+            synchronized (internalOrderBook) {
+                if (Metrics.ENABLED) {
+                    metrics.lockAcquired(start);
+                }
+                removed = removeResting(restingOrder);
+            }
+        }
+        if (Metrics.ENABLED) {
+            metrics.removed(start, removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes many resting orders taking the lock once, and in SINGLE_WRITER
+     * mode publishing once.  Levels are dropped as they empty.
+     *
+     * @param restingOrders
+     * @return the number of the orders that were still in this book
+     */
+    public int removeOrders(List<RestingOrder> restingOrders) {
+        if (restingOrders.isEmpty()) {
+            return 0;
+        }
+        for (RestingOrder restingOrder : restingOrders) {
+            if (restingOrder.getOrder().getSide() != bookSide) {
+                throw new RuntimeException("Order removed from wrong book side");
+            }
+        }
+
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        int removed;
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            removed = unlinkAll(restingOrders);
+            publishedSnapshot = buildSnapshot(publishedDepth);
+        } else {
+            synchronized (internalOrderBook) {
+                if (Metrics.ENABLED) {
+                    metrics.lockAcquired(start);
+                }
+                removed = unlinkAll(restingOrders);
+            }
+        }
+        if (Metrics.ENABLED) {
+            metrics.removed(start, removed);
+        }
+        return removed;
+    }
+
+    private int unlinkAll(List<RestingOrder> restingOrders) {
+        int removed = 0;
+        for (RestingOrder restingOrder : restingOrders) {
+            if (restingOrder.getLevel() != null) {
+                unlink(restingOrder);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private boolean removeResting(RestingOrder restingOrder) {
+        if (restingOrder.getLevel() == null) {
+            return false;
+        }
+        long priceTicks = restingOrder.getPriceTicks();
+        unlink(restingOrder);
+        return concurrencyMode != ConcurrencyMode.SINGLE_WRITER || published(priceTicks);
+    }
+
+    /**
+     * Fills part or all of a resting order, a partly filled order keeps its
+     * time priority
+     *
+     * @param restingOrder
+     * @param quantityLots quantity traded
+     * @return true if the order is completely filled and has left the book
+     */
+    public boolean fillOrder(RestingOrder restingOrder, long quantityLots) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            long priceTicks = restingOrder.getPriceTicks();
+            boolean filled = fill(restingOrder, quantityLots);
+            published(priceTicks);
+            return filled;
+        }
+        synchronized (internalOrderBook) {
+            return fill(restingOrder, quantityLots);
+        }
+    }
+
+    /**
+     * Lowers the unfilled quantity of a resting order, it keeps its time priority
+     *
+     * @param restingOrder
+     * @param quantityLots the new unfilled quantity, no more than the current one
+     * @return true if the order was still in this book
+     */
+    public boolean reduceOrder(RestingOrder restingOrder, long quantityLots) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return reduce(restingOrder, quantityLots) && published(restingOrder.getPriceTicks());
+        }
         synchronized (internalOrderBook) {
-            Order originalOrder = internalOrderBook.get(price);
-            if (originalOrder != null) {
-                if (originalOrder instanceof GroupedOrder) {
-                    GroupedOrder orderGroup = (GroupedOrder) originalOrder;
-                    // Is this the only e try in the group
-                    if (orderGroup.removeOrder(order)) {
-                        internalOrderBook.remove(price);
-                    }
-                } else if (originalOrder.equals(order)) {
-                    internalOrderBook.remove(price);
+            return reduce(restingOrder, quantityLots);
+        }
+    }
+
+    private boolean reduce(RestingOrder restingOrder, long quantityLots) {
+        GroupedOrder level = restingOrder.getLevel();
+        if (level == null) {
+            return false;
+        }
+        long currentLots = restingOrder.getQuantityLots();
+        if (quantityLots <= 0 || quantityLots > currentLots) {
+            throw new RuntimeException(String.format("Invalid reduction of an order of %d lots to %d", currentLots, quantityLots));
+        }
+        if (quantityLots < currentLots) {
+            level.fillOrder(restingOrder, currentLots - quantityLots);
+            levelChanged(level);
+        }
+        return true;
+    }
+
+    /**
+     * Moves a resting order to a new price and quantity in one step, readers
+     * never see the book without it.  It goes to the back of the queue at
+     * the new price.
+     *
+     * @param restingOrder
+     * @param priceTicks
+     * @param quantityLots
+     * @return the order resting at its new price, null if it was no longer in this book
+     */
+    public RestingOrder moveOrder(RestingOrder restingOrder, long priceTicks, long quantityLots) {
+        if (quantityLots <= 0) {
+            throw new RuntimeException(String.format("Invalid quantity of %d lots for a moved order", quantityLots));
+        }
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            long oldPriceTicks = restingOrder.getPriceTicks();
+            RestingOrder moved = move(restingOrder, priceTicks, quantityLots);
+            if (moved != null) {
+                published(oldPriceTicks);
+                published(priceTicks);
+            }
+            return moved;
+        }
+        synchronized (internalOrderBook) {
+            return move(restingOrder, priceTicks, quantityLots);
+        }
+    }
+
+    private RestingOrder move(RestingOrder restingOrder, long priceTicks, long quantityLots) {
+        if (restingOrder.getLevel() == null) {
+            return null;
+        }
+        Order order = restingOrder.getOrder();
+        unlink(restingOrder);
+        return addToLevel(order, priceTicks, quantityLots);
+    }
+
+    private boolean fill(RestingOrder restingOrder, long quantityLots) {
+        if (Metrics.ENABLED) {
+            metrics.filled();
+        }
+        GroupedOrder level = restingOrder.getLevel();
+        if (level.fillOrder(restingOrder, quantityLots)) {
+            unlink(restingOrder);
+            return true;
+        }
+        levelChanged(level);
+        return false;
+    }
+
+    private void unlink(RestingOrder restingOrder) {
+        GroupedOrder level = restingOrder.getLevel();
+        // Is this the only entry in the group
+        boolean emptied = level.removeOrder(restingOrder);
+        if (emptied) {
+            internalOrderBook.remove(level.getPriceTicks());
+            if (level == bestLevel) {
+                bestLevel = level.getNextLevel();
+            }
+            level.unlinkLevel();
+        }
+        levelChanged(level);
+        if (nodePool != null) {
+            nodePool.release(restingOrder);
+            if (emptied) {
+                nodePool.release(level);
+            }
+        }
+    }
+
+    private void levelChanged(GroupedOrder level) {
+        sequence++;
+        if (Metrics.ENABLED) {
+            metrics.setLevels(internalOrderBook.size());
+        }
+        for (LevelListener listener : levelListeners) {
+            listener.onLevelChange(bookSide, level.getPriceTicks(), level.getQuantityLots(), sequence);
+        }
+    }
+
+    /**
+     * Adds a listener and hands it a snapshot to apply the changes to, with
+     * no change in between.  Writer thread only in SINGLE_WRITER mode.
+     *
+     * @param listener
+     * @param depth levels in the initial snapshot, Integer.MAX_VALUE for the whole book
+     */
+    public void subscribe(LevelListener listener, int depth) {
+        runExclusively(() -> {
+            LevelListener[] listeners = Arrays.copyOf(levelListeners, levelListeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+            levelListeners = listeners;
+            listener.onSnapshot(buildSnapshot(depth));
+        });
+    }
+
+    /**
+     * Hands a subscribed listener a fresh snapshot, e.g. after it has seen a
+     * gap in the sequence.  Writer thread only in SINGLE_WRITER mode.
+     */
+    public void resync(LevelListener listener, int depth) {
+        runExclusively(() -> listener.onSnapshot(buildSnapshot(depth)));
+    }
+
+    /**
+     * Writer thread only in SINGLE_WRITER mode
+     *
+     * @return true if the listener was subscribed
+     */
+    public boolean unsubscribe(LevelListener listener) {
+        boolean[] removed = new boolean[1];
+        runExclusively(() -> {
+            for (int i = 0; i < levelListeners.length; i++) {
+                if (levelListeners[i] == listener) {
+                    LevelListener[] listeners = new LevelListener[levelListeners.length - 1];
+                    System.arraycopy(levelListeners, 0, listeners, 0, i);
+                    System.arraycopy(levelListeners, i + 1, listeners, i, listeners.length - i);
+                    levelListeners = listeners;
+                    removed[0] = true;
+                    return;
                 }
             }
+        });
+        return removed[0];
+    }
+
+    /**
+     * Runs the task holding this book's lock, so a sequence of changes made
+     * by the task pays for the lock once
+     */
+    public void runExclusively(Runnable task) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            task.run();
+        } else {
+            synchronized (internalOrderBook) {
+                task.run();
+            }
+        }
+    }
+
+    private void checkWriter() {
+        Thread current = Thread.currentThread();
+        Thread writer = writerThread.get();
+        if (writer != current && (writer != null || !writerThread.compareAndSet(null, current))) {
+            throw new RuntimeException(String.format("OrderBook is owned by writer thread %s, not %s", writerThread.get().getName(), current.getName()));
+        }
+    }
+
+    /**
+     * Publishes a new snapshot if a change at this price is visible in it
+     *
+     * @return true
+     */
+    private boolean published(long priceTicks) {
+        BookSnapshot snapshot = publishedSnapshot;
+        int depth = snapshot.getDepth();
+        if (depth < publishedDepth || !isBetter(snapshot.getPriceTicks(depth - 1), priceTicks)) {
+            publishedSnapshot = buildSnapshot(publishedDepth);
+        } else {
+            publishedSize.lazySet(internalOrderBook.size());
+        }
+        return true;
+    }
+
+    private BookSnapshot buildSnapshot(int depth) {
+        int size = internalOrderBook.size();
+        int length = Math.min(depth, size);
+        long[] priceTicks = new long[length];
+        long[] quantityLots = new long[length];
+        copyLevels(length, priceTicks, quantityLots);
+        publishedSize.lazySet(size);
+        return new BookSnapshot(bookSide, sequence, size, priceTicks, quantityLots);
+    }
+
+    private int copyLevels(int depth, long[] priceTicks, long[] quantityLots) {
+        int i = 0;
+        for (GroupedOrder level = bestLevel; level != null && i < depth; level = level.getNextLevel()) {
+            priceTicks[i] = level.getPriceTicks();
+            quantityLots[i] = level.getQuantityLots();
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isBetter(long priceTicks, long otherPriceTicks) {
+        return bookSide == Side.BUY ? priceTicks > otherPriceTicks : priceTicks < otherPriceTicks;
+    }
+
+    /**
+     * @return the first order in time priority at the best price, or null if the book is empty
+     */
+    public RestingOrder getBestOrder() {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return bestLevel == null ? null : bestLevel.getFirst();
+        }
+        synchronized (internalOrderBook) {
+            return bestLevel == null ? null : bestLevel.getFirst();
+        }
+    }
+
+    /**
+     * @return the best price level, whose getNextLevel() chain walks the rest of the book
+     */
+    GroupedOrder getBestLevel() {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return bestLevel;
+        }
+        synchronized (internalOrderBook) {
+            return bestLevel;
+        }
+    }
+
+    /**
+     * Orders already carrying ticks and lots for this book's config skip the BigDecimal conversion
+     */
+    private long toTicks(Order order) {
+        if (order instanceof CryptoOrder) {
+            CryptoOrder cryptoOrder = (CryptoOrder) order;
+            if (cryptoOrder.getCoinType().getTickConfig() == tickConfig) {
+                return cryptoOrder.getPriceTicks();
+            }
+        }
+        return tickConfig.toTicks(order.getPrice());
+    }
 
+    private long toLots(Order order) {
+        if (order instanceof CryptoOrder) {
+            CryptoOrder cryptoOrder = (CryptoOrder) order;
+            if (cryptoOrder.getCoinType().getTickConfig() == tickConfig) {
+                return cryptoOrder.getQuantityLots();
+            }
         }
+        return tickConfig.toLots(order.getQuantity());
     }
 
     public String[] getOrderSummary() {
         return getOrderSummary(DEFAULT_MAX_DEPTH);
     }
 
+    /**
+     * In SINGLE_WRITER mode the summary comes from the published snapshot, so
+     * is limited to the published depth
+     */
     public String[] getOrderSummary(int length) {
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        BookSnapshot snapshot = getSnapshot(length);
+        String[] summary = new String[Math.min(length, snapshot.getDepth())];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < summary.length; i++) {
+            line.setLength(0);
+            summary[i] = appendLevel(line, snapshot.getPriceTicks(i), snapshot.getQuantityLots(i)).toString();
+        }
+        if (Metrics.ENABLED) {
+            metrics.summarised(start);
+        }
+        return summary;
+    }
+
+    /**
+     * Appends the same lines as getOrderSummary, each ending in a newline,
+     * so a reused StringBuilder gives a summary without allocating
+     *
+     * @param length maximum number of levels
+     * @param out
+     * @return the number of levels appended
+     */
+    public int getOrderSummary(int length, StringBuilder out) {
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        int depth = 0;
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            BookSnapshot snapshot = publishedSnapshot;
+            depth = Math.min(length, snapshot.getDepth());
+            for (int i = 0; i < depth; i++) {
+                appendLevel(out, snapshot.getPriceTicks(i), snapshot.getQuantityLots(i)).append('\n');
+            }
+        } else {
+            synchronized (internalOrderBook) {
+                if (Metrics.ENABLED) {
+                    metrics.lockAcquired(start);
+                }
+                for (GroupedOrder level = bestLevel; level != null && depth < length; level = level.getNextLevel()) {
+                    appendLevel(out, level.getPriceTicks(), level.getQuantityLots()).append('\n');
+                    depth++;
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            metrics.summarised(start);
+        }
+        return depth;
+    }
+
+    private StringBuilder appendLevel(StringBuilder out, long priceTicks, long quantityLots) {
+        tickConfig.appendQuantity(out, quantityLots).append(OutputFormatter.PRICE_SEPARATOR);
+        return tickConfig.appendPrice(out, priceTicks);
+    }
+
+    /**
+     * Copies the top of the book into caller-owned arrays, best price first.
+     * Limited to the published depth in SINGLE_WRITER mode.
+     *
+     * @param priceTicks receives the price of each level
+     * @param quantityLots receives the total quantity of each level
+     * @return the number of levels copied, at most the arrays' length
+     */
+    public int getDepth(long[] priceTicks, long[] quantityLots) {
+        int length = Math.min(priceTicks.length, quantityLots.length);
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            BookSnapshot snapshot = publishedSnapshot;
+            int depth = Math.min(length, snapshot.getDepth());
+            for (int i = 0; i < depth; i++) {
+                priceTicks[i] = snapshot.getPriceTicks(i);
+                quantityLots[i] = snapshot.getQuantityLots(i);
+            }
+            return depth;
+        }
         synchronized (internalOrderBook) {
-            int outputLength = Math.min(length, internalOrderBook.size());
-            return internalOrderBook.values().stream().map(o -> OutputFormatter.formatOutput(o)).limit(outputLength).toArray(String[]::new);
+            return copyLevels(length, priceTicks, quantityLots);
         }
     }
 
+    /**
+     * A consistent view of the top of the book.  Never blocks in
+     * SINGLE_WRITER mode, where the depth is limited to the published depth.
+     *
+     * @param depth maximum number of levels
+     */
+    public BookSnapshot getSnapshot(int depth) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            return publishedSnapshot;
+        }
+        long start = Metrics.ENABLED ? metrics.start() : 0;
+        synchronized (internalOrderBook) {
+            if (Metrics.ENABLED) {
+                metrics.lockAcquired(start);
+            }
+            return buildSnapshot(depth);
+        }
+    }
+
+    /**
+     * Like getSnapshot, but always as of the latest change and to the full
+     * depth asked for.  Writer thread only in SINGLE_WRITER mode.
+     *
+     * @param depth maximum number of levels
+     */
+    public BookSnapshot getCurrentSnapshot(int depth) {
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            checkWriter();
+            return buildSnapshot(depth);
+        }
+        return getSnapshot(depth);
+    }
+
+    /**
+     * @return the book's counters and latencies, only updated when Metrics.ENABLED
+     */
+    public BookMetrics getMetrics() {
+        return metrics;
+    }
+
+    public TickConfig getTickConfig() {
+        return tickConfig;
+    }
+
+    public BookType getBookType() {
+        return bookType;
+    }
+
+    public ConcurrencyMode getConcurrencyMode() {
+        return concurrencyMode;
+    }
+
     public int getSize() {
-        return internalOrderBook.size();
+        if (concurrencyMode == ConcurrencyMode.SINGLE_WRITER) {
+            return publishedSize.get();
+        }
+        synchronized (internalOrderBook) {
+            return internalOrderBook.size();
+        }
     }
 
 }
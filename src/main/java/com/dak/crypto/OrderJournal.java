@@ -0,0 +1,90 @@
+package com.dak.crypto;
+
+import com.dak.crypto.order.CryptoOrder;
+
+import java.util.UUID;
+
+/**
+ * Records every change an OrderBoard accepts, before it is applied, so the
+ * boards can be rebuilt by replaying the records in order.  Called on the
+ * matching thread while the board is locked.
+ */
+public interface OrderJournal {
+
+    OrderJournal NONE = new OrderJournal() {
+        @Override
+        public void onOrder(CryptoOrder order, long priceTicks, long quantityLots) {
+        }
+
+        @Override
+        public void onCancel(Cryptocurrency coinType, UUID orderId) {
+        }
+
+        @Override
+        public void onAmend(Cryptocurrency coinType, UUID orderId, long priceTicks, long quantityLots) {
+        }
+    };
+
+    /**
+     * @param order a new order about to be matched and rested
+     * @param priceTicks
+     * @param quantityLots
+     */
+    void onOrder(CryptoOrder order, long priceTicks, long quantityLots);
+
+    /**
+     * @param coinType
+     * @param orderId the resting order about to be cancelled
+     */
+    void onCancel(Cryptocurrency coinType, UUID orderId);
+
+    /**
+     * @param coinType
+     * @param orderId the resting order about to be amended
+     * @param priceTicks its new price
+     * @param quantityLots its new unfilled quantity
+     */
+    void onAmend(Cryptocurrency coinType, UUID orderId, long priceTicks, long quantityLots);
+
+    /**
+     * A stop order's cancel is an onCancel like any other
+     *
+     * @param stop a StopOrder about to wait for its trigger
+     */
+    default void onStopOrder(CryptoOrder stop) {
+    }
+
+    /**
+     * Replaces onOrder for the order a stop becomes, so replay knows it
+     * from a new order with the same id
+     *
+     * @param coinType
+     * @param orderId the waiting stop order about to be submitted, its trigger having been reached
+     */
+    default void onTrigger(Cryptocurrency coinType, UUID orderId) {
+    }
+
+    /**
+     * Called by CryptoMarket once the coin's resting orders have been
+     * cancelled, after their onCancel calls
+     *
+     * @param coinType a coin taken off the market
+     */
+    default void onDelist(Cryptocurrency coinType) {
+    }
+
+    /**
+     * Called by CryptoMarket before a delisted coin takes orders again
+     *
+     * @param coinType
+     */
+    default void onList(Cryptocurrency coinType) {
+    }
+
+    /**
+     * @return where the next record will be written, recorded in board snapshots
+     */
+    default long getPosition() {
+        return 0;
+    }
+}
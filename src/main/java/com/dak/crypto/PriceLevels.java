@@ -0,0 +1,23 @@
+package com.dak.crypto;
+
+import com.dak.crypto.order.GroupedOrder;
+
+/**
+ * Index of a book's price levels by price.  The book keeps the levels'
+ * order itself, by linking each level to its neighbours.
+ */
+interface PriceLevels {
+
+    GroupedOrder get(long priceTicks);
+
+    void put(GroupedOrder level);
+
+    void remove(long priceTicks);
+
+    /**
+     * @return the level with the nearest price better than this one, or null
+     */
+    GroupedOrder better(long priceTicks);
+
+    int size();
+}
@@ -0,0 +1,124 @@
+package com.dak.crypto;
+
+import com.dak.crypto.metrics.BookMetrics;
+import com.dak.crypto.order.CryptoOrder;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * The orders resting on both sides of an OrderBoard, in books that keep
+ * them in price-time priority and an index by id.  The board's BookType
+ * picks how they are held.  Only written by the board's writer or under the
+ * board's lock.
+ * <p>
+ * One order at a time is loaded, by id or as the best of a side, to be read
+ * and then filled, reduced, moved or removed.
+ */
+interface RestingOrders {
+
+    boolean contains(UUID orderId);
+
+    /**
+     * @return the number of orders resting on both sides
+     */
+    int size();
+
+    /**
+     * Adds the order at the back of the queue at its price
+     */
+    void rest(CryptoOrder order, long priceTicks, long quantityLots);
+
+    /**
+     * Loads the first order in time priority at the best price of the side
+     *
+     * @return false if the side is empty
+     */
+    boolean loadBest(Side side);
+
+    /**
+     * @return false if the order is not resting
+     */
+    boolean load(UUID orderId);
+
+    /**
+     * Read before the loaded order is changed, it is not valid afterwards
+     */
+    CryptoOrder getLoadedOrder();
+
+    long getLoadedPriceTicks();
+
+    long getLoadedQuantityLots();
+
+    /**
+     * @return true if the loaded order is completely filled and has left the book
+     */
+    boolean fillLoaded(long quantityLots);
+
+    /**
+     * Lowers the loaded order's quantity, it keeps its time priority
+     */
+    void reduceLoaded(long quantityLots);
+
+    /**
+     * Moves the loaded order to the back of the queue at the new price in one step
+     */
+    void moveLoaded(long priceTicks, long quantityLots);
+
+    void removeLoaded();
+
+    /**
+     * Copies the best level's price and total quantity into level[0] and level[1]
+     *
+     * @return false if the side is empty
+     */
+    boolean getBestLevel(Side side, long[] level);
+
+    /**
+     * @return the worst price of the side that an order taking the quantity
+     *         from it would trade at, or OrderBoardSnapshot.NO_TRADE if it is empty
+     */
+    long getSweepPriceTicks(Side side, long quantityLots);
+
+    /**
+     * @param side the side to remove, or null for both
+     * @param beforeRemoval told the id of each order before it is removed
+     * @return the number of orders removed
+     */
+    int removeUserOrders(String userId, Side side, Consumer<UUID> beforeRemoval);
+
+    /**
+     * @param beforeRemoval told the id of each order before it is removed
+     */
+    void removeAll(Consumer<UUID> beforeRemoval);
+
+    /**
+     * Copies every order, buys then sells, each in price-time priority
+     *
+     * @return the number of orders copied
+     */
+    int copyOrders(CryptoOrder[] orders, long[] priceTicks, long[] remainingLots);
+
+    /**
+     * Runs the task holding both books' locks
+     */
+    void runExclusively(Runnable task);
+
+    String[] getOrderSummary(Side side, int maxDepth);
+
+    int getOrderSummary(Side side, int maxDepth, StringBuilder out);
+
+    int getDepth(Side side, long[] priceTicks, long[] quantityLots);
+
+    BookSnapshot getSnapshot(Side side, int maxDepth);
+
+    BookSnapshot getCurrentSnapshot(Side side, int maxDepth);
+
+    BookMetrics getMetrics(Side side);
+
+    void subscribe(Side side, LevelListener listener, int depth);
+
+    void resync(Side side, LevelListener listener, int depth);
+
+    boolean unsubscribe(Side side, LevelListener listener);
+}
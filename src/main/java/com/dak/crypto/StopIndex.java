@@ -0,0 +1,85 @@
+package com.dak.crypto;
+
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.order.StopOrder;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * One side's stop orders waiting for their trigger price, kept in the order
+ * they fire: buys from the lowest trigger up, sells from the highest down,
+ * and at each trigger price in time priority.  A trade only costs a look at
+ * the nearest trigger plus the stops that fire, however many are waiting.
+ */
+final class StopIndex {
+
+    private final Side side;
+    private final TreeMap<Long, Map<UUID, CryptoOrder>> byTrigger;
+
+    StopIndex(Side side) {
+        this.side = side;
+        this.byTrigger = new TreeMap<>(side == Side.BUY ? Comparator.<Long>naturalOrder() : Comparator.<Long>reverseOrder());
+    }
+
+    /**
+     * @param order a StopOrder on this side
+     */
+    void add(CryptoOrder order) {
+        byTrigger.computeIfAbsent(getTriggerPriceTicks(order), trigger -> new LinkedHashMap<>()).put(order.getOrderId(), order);
+    }
+
+    boolean remove(CryptoOrder order) {
+        long triggerPriceTicks = getTriggerPriceTicks(order);
+        Map<UUID, CryptoOrder> stops = byTrigger.get(triggerPriceTicks);
+        if (stops == null || stops.remove(order.getOrderId()) == null) {
+            return false;
+        }
+        if (stops.isEmpty()) {
+            byTrigger.remove(triggerPriceTicks);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the stops triggered by a trade at the price to the end of the
+     * list, in the order they fire
+     *
+     * @return the number of stops moved
+     */
+    int removeTriggered(long lastTradePriceTicks, List<CryptoOrder> triggered) {
+        int count = 0;
+        Map.Entry<Long, Map<UUID, CryptoOrder>> level;
+        while ((level = byTrigger.firstEntry()) != null && isTriggered(level.getKey(), lastTradePriceTicks)) {
+            byTrigger.pollFirstEntry();
+            triggered.addAll(level.getValue().values());
+            count += level.getValue().size();
+        }
+        return count;
+    }
+
+    private boolean isTriggered(long triggerPriceTicks, long lastTradePriceTicks) {
+        return side == Side.BUY ? lastTradePriceTicks >= triggerPriceTicks : lastTradePriceTicks <= triggerPriceTicks;
+    }
+
+    /**
+     * Appends the stops in the order they would fire
+     */
+    void copyTo(List<CryptoOrder> stops) {
+        for (Map<UUID, CryptoOrder> level : byTrigger.values()) {
+            stops.addAll(level.values());
+        }
+    }
+
+    void clear() {
+        byTrigger.clear();
+    }
+
+    private static long getTriggerPriceTicks(CryptoOrder order) {
+        return ((StopOrder) order).getTriggerPriceTicks();
+    }
+}
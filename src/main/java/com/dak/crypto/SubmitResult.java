@@ -0,0 +1,27 @@
+package com.dak.crypto;
+
+/**
+ * Outcome of an order submitted to an OrderBoard
+ */
+public enum SubmitResult {
+    /**
+     * The order was accepted, it has traded and/or is resting
+     */
+    ACCEPTED,
+    /**
+     * A cancel removed its original order
+     */
+    CANCELLED,
+    /**
+     * An amend changed its original order
+     */
+    AMENDED,
+    /**
+     * A cancel's or amend's original order was not resting
+     */
+    NOT_FOUND,
+    /**
+     * The order was invalid, e.g. for the wrong coin, off tick or a duplicate id
+     */
+    REJECTED;
+}
@@ -0,0 +1,116 @@
+package com.dak.crypto;
+
+import com.dak.crypto.util.OutputFormatter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Tick (price increment) and lot (quantity increment) sizes of a market.
+ * Inside the books prices and quantities are held as longs counting whole
+ * ticks and lots, BigDecimal is only used at the edges
+ */
+public final class TickConfig {
+
+    public static final TickConfig DEFAULT = new TickConfig("0.00000001", "0.00000001");
+
+    private final BigDecimal tickSize;
+    private final BigDecimal lotSize;
+    // Decimal places of power-of-ten sizes (e.g. 0.01 -> 2), NOT_DECIMAL otherwise
+    private final int tickPlaces;
+    private final int lotPlaces;
+    // Sizes as unscaled value and scale, for rendering without BigDecimal
+    private final long tickUnscaled;
+    private final int tickScale;
+    private final long lotUnscaled;
+    private final int lotScale;
+
+    private static final int NOT_DECIMAL = Integer.MIN_VALUE;
+
+    public TickConfig(String tickSize, String lotSize) {
+        this(new BigDecimal(tickSize), new BigDecimal(lotSize));
+    }
+
+    public TickConfig(BigDecimal tickSize, BigDecimal lotSize) {
+        if (tickSize.signum() <= 0 || lotSize.signum() <= 0) {
+            throw new RuntimeException(String.format("Tick and lot sizes must be positive - tick: %s, lot: %s", tickSize, lotSize));
+        }
+        this.tickSize = tickSize;
+        this.lotSize = lotSize;
+        this.tickPlaces = decimalPlaces(tickSize);
+        this.lotPlaces = decimalPlaces(lotSize);
+        BigDecimal tick = tickSize.scale() < 0 ? tickSize.setScale(0) : tickSize;
+        BigDecimal lot = lotSize.scale() < 0 ? lotSize.setScale(0) : lotSize;
+        this.tickUnscaled = tick.unscaledValue().longValueExact();
+        this.tickScale = tick.scale();
+        this.lotUnscaled = lot.unscaledValue().longValueExact();
+        this.lotScale = lot.scale();
+    }
+
+    private static int decimalPlaces(BigDecimal size) {
+        BigDecimal stripped = size.stripTrailingZeros();
+        return stripped.unscaledValue().equals(BigInteger.ONE) ? stripped.scale() : NOT_DECIMAL;
+    }
+
+    public BigDecimal getTickSize() {
+        return tickSize;
+    }
+
+    public BigDecimal getLotSize() {
+        return lotSize;
+    }
+
+    public long toTicks(BigDecimal price) {
+        return toUnits(price, tickSize, tickPlaces, "Price");
+    }
+
+    public BigDecimal toPrice(long ticks) {
+        return tickSize.multiply(BigDecimal.valueOf(ticks));
+    }
+
+    public long toLots(BigDecimal quantity) {
+        return toUnits(quantity, lotSize, lotPlaces, "Quantity");
+    }
+
+    public BigDecimal toQuantity(long lots) {
+        return lotSize.multiply(BigDecimal.valueOf(lots));
+    }
+
+    /**
+     * Appends the price as {@link OutputFormatter#toDisplayString} would show it, without allocating
+     */
+    public StringBuilder appendPrice(StringBuilder out, long ticks) {
+        return appendUnits(out, ticks, tickUnscaled, tickScale, tickSize);
+    }
+
+    /**
+     * Appends the quantity as {@link OutputFormatter#toDisplayString} would show it, without allocating
+     */
+    public StringBuilder appendQuantity(StringBuilder out, long lots) {
+        return appendUnits(out, lots, lotUnscaled, lotScale, lotSize);
+    }
+
+    private static StringBuilder appendUnits(StringBuilder out, long units, long unscaled, int scale, BigDecimal unit) {
+        long value = units * unscaled;
+        if (value / unscaled != units) {
+            // Out of long range, take the slow path
+            return out.append(OutputFormatter.toDisplayString(unit.multiply(BigDecimal.valueOf(units))));
+        }
+        return OutputFormatter.appendDecimal(out, value, scale);
+    }
+
+    private static long toUnits(BigDecimal value, BigDecimal unit, int places, String name) {
+        try {
+            // Shifting the decimal point is much cheaper than an exact divide
+            BigDecimal units = places != NOT_DECIMAL ? value.movePointRight(places) : value.divide(unit);
+            return units.longValueExact();
+        } catch (ArithmeticException e) {
+            throw new RuntimeException(String.format("%s %s is not a whole multiple of %s", name, value.toPlainString(), unit.toPlainString()), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TickConfig{tick=" + tickSize.toPlainString() + ", lot=" + lotSize.toPlainString() + '}';
+    }
+}
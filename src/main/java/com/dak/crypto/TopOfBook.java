@@ -0,0 +1,82 @@
+package com.dak.crypto;
+
+/**
+ * Best bid and offer of an OrderBoard at one point.  Immutable, the board
+ * publishes a new one whenever either changes.  A side with no orders has a
+ * price and quantity of 0.
+ */
+public final class TopOfBook {
+
+    private final Cryptocurrency coinType;
+    private final long sequence;
+    private final long bidPriceTicks;
+    private final long bidQuantityLots;
+    private final long askPriceTicks;
+    private final long askQuantityLots;
+
+    TopOfBook(Cryptocurrency coinType, long sequence, long bidPriceTicks, long bidQuantityLots, long askPriceTicks, long askQuantityLots) {
+        this.coinType = coinType;
+        this.sequence = sequence;
+        this.bidPriceTicks = bidPriceTicks;
+        this.bidQuantityLots = bidQuantityLots;
+        this.askPriceTicks = askPriceTicks;
+        this.askQuantityLots = askQuantityLots;
+    }
+
+    static TopOfBook empty(Cryptocurrency coinType) {
+        return new TopOfBook(coinType, 0, 0, 0, 0, 0);
+    }
+
+    boolean matches(long bidPriceTicks, long bidQuantityLots, long askPriceTicks, long askQuantityLots) {
+        return this.bidPriceTicks == bidPriceTicks && this.bidQuantityLots == bidQuantityLots
+                && this.askPriceTicks == askPriceTicks && this.askQuantityLots == askQuantityLots;
+    }
+
+    public Cryptocurrency getCoinType() {
+        return coinType;
+    }
+
+    /**
+     * @return incremented on every change to the top of the board
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean hasBid() {
+        return bidQuantityLots > 0;
+    }
+
+    public boolean hasAsk() {
+        return askQuantityLots > 0;
+    }
+
+    public long getBidPriceTicks() {
+        return bidPriceTicks;
+    }
+
+    /**
+     * @return total quantity at the best bid
+     */
+    public long getBidQuantityLots() {
+        return bidQuantityLots;
+    }
+
+    public long getAskPriceTicks() {
+        return askPriceTicks;
+    }
+
+    /**
+     * @return total quantity at the best ask
+     */
+    public long getAskQuantityLots() {
+        return askQuantityLots;
+    }
+
+    @Override
+    public String toString() {
+        return "TopOfBook{" + coinType + " #" + sequence
+                + ", bid=" + bidQuantityLots + "@" + bidPriceTicks
+                + ", ask=" + askQuantityLots + "@" + askPriceTicks + '}';
+    }
+}
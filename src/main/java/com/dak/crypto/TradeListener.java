@@ -0,0 +1,32 @@
+package com.dak.crypto;
+
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.order.Order;
+
+/**
+ * Receives a callback for every fill made by an OrderBoard, and for the
+ * orders it cancels unfilled by itself.  Called on the matching thread
+ * while the board is locked, so implementations should be quick and must
+ * not submit orders back to the same board.
+ */
+public interface TradeListener {
+
+    TradeListener NONE = (coinType, aggressor, resting, priceTicks, quantityLots) -> { };
+
+    /**
+     * @param coinType
+     * @param aggressor the incoming order
+     * @param resting the resting order traded against, the trade is at its price
+     * @param priceTicks trade price in ticks
+     * @param quantityLots quantity traded in lots
+     */
+    void onTrade(Cryptocurrency coinType, CryptoOrder aggressor, Order resting, long priceTicks, long quantityLots);
+
+    /**
+     * @param coinType
+     * @param order a triggered stop-loss order, which never rests
+     * @param unfilledLots its quantity left after trading with the other side, all of it if that side was empty
+     */
+    default void onUnfilled(Cryptocurrency coinType, CryptoOrder order, long unfilledLots) {
+    }
+}
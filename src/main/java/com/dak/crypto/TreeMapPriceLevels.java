@@ -0,0 +1,49 @@
+package com.dak.crypto;
+
+import com.dak.crypto.order.GroupedOrder;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Levels in a TreeMap, which boxes the price on every call and makes an
+ * entry for every new level, pooled books included
+ */
+class TreeMapPriceLevels implements PriceLevels {
+
+    private final TreeMap<Long, GroupedOrder> levels;
+
+    /**
+     * @param bestFirst orders prices best first
+     */
+    TreeMapPriceLevels(Comparator<Long> bestFirst) {
+        this.levels = new TreeMap<>(bestFirst);
+    }
+
+    @Override
+    public GroupedOrder get(long priceTicks) {
+        return levels.get(priceTicks);
+    }
+
+    @Override
+    public void put(GroupedOrder level) {
+        levels.put(level.getPriceTicks(), level);
+    }
+
+    @Override
+    public void remove(long priceTicks) {
+        levels.remove(priceTicks);
+    }
+
+    @Override
+    public GroupedOrder better(long priceTicks) {
+        Map.Entry<Long, GroupedOrder> better = levels.lowerEntry(priceTicks);
+        return better == null ? null : better.getValue();
+    }
+
+    @Override
+    public int size() {
+        return levels.size();
+    }
+}
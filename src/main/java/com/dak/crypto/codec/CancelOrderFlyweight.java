@@ -0,0 +1,104 @@
+package com.dak.crypto.codec;
+
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.Side;
+import com.dak.crypto.order.CancelOrder;
+import com.dak.crypto.order.CryptoMarketCancelOrder;
+import com.dak.crypto.order.CryptoOrder;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * A cancel read in place from its OrderCodec encoding.  Like a decoded
+ * cancel it has NO_ORDER_ID and identifies its original order by id alone.
+ * Only valid until the buffer is reused.
+ */
+public final class CancelOrderFlyweight implements CryptoOrder, CancelOrder {
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * @param buffer
+     * @param offset of an encoded cancel
+     * @return this flyweight, now over the cancel
+     */
+    public CancelOrderFlyweight wrap(ByteBuffer buffer, int offset) {
+        if (buffer.get(offset) != OrderCodec.CANCEL) {
+            throw new RuntimeException(String.format("Expected a cancel at offset %d, not type %d", offset, buffer.get(offset)));
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public long getOriginalOrderIdMostSignificantBits() {
+        return buffer.getLong(offset + OrderCodec.ORIGINAL_ORDER_ID_OFFSET);
+    }
+
+    public long getOriginalOrderIdLeastSignificantBits() {
+        return buffer.getLong(offset + OrderCodec.ORIGINAL_ORDER_ID_OFFSET + 8);
+    }
+
+    @Override
+    public UUID getOriginalOrderId() {
+        return new UUID(getOriginalOrderIdMostSignificantBits(), getOriginalOrderIdLeastSignificantBits());
+    }
+
+    @Override
+    public UUID getOrderId() {
+        return OrderCodec.NO_ORDER_ID;
+    }
+
+    /**
+     * @return the coin's id as sent, which may not be a known coin
+     */
+    public int getCoinId() {
+        return buffer.get(offset + OrderCodec.COIN_OFFSET) & 0xFF;
+    }
+
+    @Override
+    public Cryptocurrency getCoinType() {
+        return Cryptocurrency.fromId(getCoinId());
+    }
+
+    @Override
+    public String getUserId() {
+        return null;
+    }
+
+    @Override
+    public Side getSide() {
+        return null;
+    }
+
+    @Override
+    public BigDecimal getQuantity() {
+        return null;
+    }
+
+    @Override
+    public BigDecimal getPrice() {
+        return null;
+    }
+
+    /**
+     * The original order's price is not sent
+     */
+    @Override
+    public long getPriceTicks() {
+        return 0;
+    }
+
+    @Override
+    public long getQuantityLots() {
+        return 0;
+    }
+
+    @Override
+    public CryptoMarketCancelOrder detach() {
+        return new CryptoMarketCancelOrder(OrderCodec.NO_ORDER_ID, getOriginalOrderId(), getCoinType());
+    }
+}
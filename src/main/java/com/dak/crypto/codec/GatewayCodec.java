@@ -0,0 +1,142 @@
+package com.dak.crypto.codec;
+
+import com.dak.crypto.BookSnapshot;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.Side;
+import com.dak.crypto.SubmitResult;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Binary form of the order gateway's messages other than the orders
+ * themselves, which are as in OrderCodec.  The type bytes do not clash
+ * with OrderCodec's.
+ * <pre>
+ * depth request: type(1) coin(1) side(1) maxDepth(2)
+ * ack:           type(1) coin(1) result(1) orderId(16)
+ * fill:          type(1) coin(1) side(1) orderId(16) priceTicks(8) quantityLots(8)
+ * depth:         type(1) coin(1) side(1) sequence(8) levels(2) then per level priceTicks(8) quantityLots(8)
+ * </pre>
+ * An ack carries the id of the order submitted, for a cancel or an amend
+ * the id of its original order.  A depth request for a coin not listed, or
+ * with an invalid side or depth, is answered with a REJECTED ack carrying
+ * the requested coin byte and a zero id.
+ */
+public final class GatewayCodec {
+
+    public static final byte DEPTH_REQUEST = 4;
+    public static final byte ACK = 5;
+    public static final byte FILL = 6;
+    public static final byte DEPTH = 7;
+
+    public static final int DEPTH_REQUEST_LENGTH = 1 + 1 + 1 + 2;
+    public static final int ACK_LENGTH = 1 + 1 + 1 + 16;
+    public static final int FILL_LENGTH = 1 + 1 + 1 + 16 + 8 + 8;
+    private static final int DEPTH_FIXED_LENGTH = 1 + 1 + 1 + 8 + 2;
+    private static final int LEVEL_LENGTH = 8 + 8;
+
+    private static final SubmitResult[] RESULTS = SubmitResult.values();
+
+    private GatewayCodec() {
+    }
+
+    public static void encodeDepthRequest(ByteBuffer buffer, Cryptocurrency coinType, Side side, int maxDepth) {
+        buffer.put(DEPTH_REQUEST);
+        buffer.put((byte) coinType.getId());
+        buffer.put((byte) side.ordinal());
+        buffer.putShort((short) Math.min(maxDepth, Short.MAX_VALUE));
+    }
+
+    public static void encodeAck(ByteBuffer buffer, Cryptocurrency coinType, SubmitResult result, UUID orderId) {
+        encodeAck(buffer, coinType, result, orderId.getMostSignificantBits(), orderId.getLeastSignificantBits());
+    }
+
+    /**
+     * @param coinId as received, which need not be a coin defined here
+     */
+    public static void encodeAck(ByteBuffer buffer, int coinId, SubmitResult result, UUID orderId) {
+        encodeAck(buffer, coinId, result, orderId.getMostSignificantBits(), orderId.getLeastSignificantBits());
+    }
+
+    public static void encodeAck(ByteBuffer buffer, Cryptocurrency coinType, SubmitResult result, long orderIdMostSignificantBits, long orderIdLeastSignificantBits) {
+        encodeAck(buffer, coinType.getId(), result, orderIdMostSignificantBits, orderIdLeastSignificantBits);
+    }
+
+    /**
+     * @param coinId as requested, which need not be a coin defined here
+     */
+    public static void encodeDepthRejected(ByteBuffer buffer, int coinId) {
+        encodeAck(buffer, coinId, SubmitResult.REJECTED, 0, 0);
+    }
+
+    private static void encodeAck(ByteBuffer buffer, int coinId, SubmitResult result, long orderIdMostSignificantBits, long orderIdLeastSignificantBits) {
+        buffer.put(ACK);
+        buffer.put((byte) coinId);
+        buffer.put((byte) result.ordinal());
+        buffer.putLong(orderIdMostSignificantBits);
+        buffer.putLong(orderIdLeastSignificantBits);
+    }
+
+    public static void encodeFill(ByteBuffer buffer, Cryptocurrency coinType, Side side, UUID orderId, long priceTicks, long quantityLots) {
+        buffer.put(FILL);
+        buffer.put((byte) coinType.getId());
+        buffer.put((byte) side.ordinal());
+        buffer.putLong(orderId.getMostSignificantBits());
+        buffer.putLong(orderId.getLeastSignificantBits());
+        buffer.putLong(priceTicks);
+        buffer.putLong(quantityLots);
+    }
+
+    public static int depthLength(int levels) {
+        return DEPTH_FIXED_LENGTH + levels * LEVEL_LENGTH;
+    }
+
+    /**
+     * @param levels the number of the snapshot's levels to encode, at most its depth
+     */
+    public static void encodeDepth(ByteBuffer buffer, Cryptocurrency coinType, BookSnapshot snapshot, int levels) {
+        buffer.put(DEPTH);
+        buffer.put((byte) coinType.getId());
+        buffer.put((byte) snapshot.getSide().ordinal());
+        buffer.putLong(snapshot.getSequence());
+        buffer.putShort((short) levels);
+        for (int i = 0; i < levels; i++) {
+            buffer.putLong(snapshot.getPriceTicks(i));
+            buffer.putLong(snapshot.getQuantityLots(i));
+        }
+    }
+
+    /**
+     * @return the result carried by the ack at the buffer's position
+     */
+    public static SubmitResult getAckResult(ByteBuffer buffer) {
+        return RESULTS[buffer.get(buffer.position() + 2)];
+    }
+
+    /**
+     * @return the length of the message at the buffer's position, or -1 if
+     *         too little of it has arrived to tell
+     */
+    public static int encodedLength(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        byte type = buffer.get(buffer.position());
+        switch (type) {
+            case DEPTH_REQUEST:
+                return DEPTH_REQUEST_LENGTH;
+            case ACK:
+                return ACK_LENGTH;
+            case FILL:
+                return FILL_LENGTH;
+            case DEPTH:
+                if (buffer.remaining() < DEPTH_FIXED_LENGTH) {
+                    return -1;
+                }
+                return depthLength(buffer.getShort(buffer.position() + DEPTH_FIXED_LENGTH - 2) & 0xFFFF);
+            default:
+                throw new RuntimeException(String.format("Unknown gateway message type %d at position %d", type, buffer.position()));
+        }
+    }
+}
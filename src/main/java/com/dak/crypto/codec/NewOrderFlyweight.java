@@ -0,0 +1,126 @@
+package com.dak.crypto.codec;
+
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.Side;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.CryptoOrder;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A new order read in place from its OrderCodec encoding, so it can be
+ * matched without first being copied out of a socket or ring buffer.  Only
+ * valid until the buffer is reused: an OrderBook rests the copy made by
+ * detach, and a TradeListener given it as the aggressor must not keep it.
+ * Prefer the primitive accessors, the others allocate.
+ */
+public final class NewOrderFlyweight implements CryptoOrder {
+
+    private static final Side[] SIDES = Side.values();
+
+    private ByteBuffer buffer;
+    private int offset;
+    // Returned again while the encoded user id is the same
+    private String userId;
+
+    /**
+     * @param buffer
+     * @param offset of an encoded new order
+     * @return this flyweight, now over the order
+     */
+    public NewOrderFlyweight wrap(ByteBuffer buffer, int offset) {
+        if (buffer.get(offset) != OrderCodec.NEW_ORDER) {
+            throw new RuntimeException(String.format("Expected a new order at offset %d, not type %d", offset, buffer.get(offset)));
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int getEncodedLength() {
+        return OrderCodec.NEW_ORDER_FIXED_LENGTH + getUserIdLength();
+    }
+
+    public long getOrderIdMostSignificantBits() {
+        return buffer.getLong(offset + OrderCodec.ORDER_ID_OFFSET);
+    }
+
+    public long getOrderIdLeastSignificantBits() {
+        return buffer.getLong(offset + OrderCodec.ORDER_ID_OFFSET + 8);
+    }
+
+    @Override
+    public UUID getOrderId() {
+        return new UUID(getOrderIdMostSignificantBits(), getOrderIdLeastSignificantBits());
+    }
+
+    @Override
+    public Side getSide() {
+        return SIDES[buffer.get(offset + OrderCodec.SIDE_OFFSET)];
+    }
+
+    @Override
+    public Cryptocurrency getCoinType() {
+        return Cryptocurrency.fromId(buffer.get(offset + OrderCodec.COIN_OFFSET) & 0xFF);
+    }
+
+    @Override
+    public long getPriceTicks() {
+        return buffer.getLong(offset + OrderCodec.PRICE_OFFSET);
+    }
+
+    @Override
+    public long getQuantityLots() {
+        return buffer.getLong(offset + OrderCodec.QUANTITY_OFFSET);
+    }
+
+    @Override
+    public BigDecimal getQuantity() {
+        return getCoinType().getTickConfig().toQuantity(getQuantityLots());
+    }
+
+    @Override
+    public BigDecimal getPrice() {
+        return getCoinType().getTickConfig().toPrice(getPriceTicks());
+    }
+
+    private int getUserIdLength() {
+        return buffer.getShort(offset + OrderCodec.USER_ID_LENGTH_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * @return true if the order's user id is the value, without decoding it
+     */
+    public boolean isUserId(String value) {
+        return OrderCodec.matches(buffer, offset + OrderCodec.USER_ID_OFFSET, getUserIdLength(), value);
+    }
+
+    @Override
+    public String getUserId() {
+        if (userId == null || !isUserId(userId)) {
+            byte[] bytes = new byte[getUserIdLength()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(offset + OrderCodec.USER_ID_OFFSET + i);
+            }
+            userId = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return userId;
+    }
+
+    /**
+     * @return a copy of the order that does not depend on the buffer
+     */
+    @Override
+    public CryptoMarketOrder detach() {
+        return new CryptoMarketOrder(getOrderId(), getUserId(), getCoinType(), getSide(), getQuantityLots(), getPriceTicks());
+    }
+
+    @Override
+    public String toString() {
+        return "NewOrderFlyweight{orderId=" + getOrderId() + ", coin=" + getCoinType() + ", side=" + getSide()
+                + ", lots=" + getQuantityLots() + ", ticks=" + getPriceTicks() + '}';
+    }
+}
@@ -0,0 +1,371 @@
+package com.dak.crypto.codec;
+
+import com.dak.crypto.BookType;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.Side;
+import com.dak.crypto.order.CryptoMarketAmendOrder;
+import com.dak.crypto.order.CryptoMarketCancelOrder;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.CryptoMarketStopOrder;
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.order.StopOrder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Binary form of new orders, cancels and amends, of stop orders and their
+ * triggering, of coins being listed
+ * and delisted, and of the coin records that say what a coin id stands
+ * for.
+ * <pre>
+ * new order: type(1) coin(1) side(1) orderId(16) quantityLots(8) priceTicks(8) userIdLength(2) userId(UTF-8)
+ * cancel:    type(1) coin(1) orderId(16)
+ * amend:     type(1) coin(1) orderId(16) quantityLots(8) priceTicks(8)
+ * stop:      type(1) coin(1) side(1) orderId(16) quantityLots(8) priceTicks(8) triggerPriceTicks(8) stopLoss(1) userIdLength(2) userId(UTF-8)
+ * trigger:   type(1) coin(1) orderId(16)
+ * list:      type(1) coin(1)
+ * delist:    type(1) coin(1)
+ * coin:      type(1) coin(1) bookType(1) nameLength(1) tickSizeLength(1) lotSizeLength(1) name(UTF-8) tickSize(ASCII) lotSize(ASCII)
+ * </pre>
+ * Lengths are unsigned.
+ * Coin ids are only dense within a process, see Cryptocurrency, so a
+ * reader of records from elsewhere maps ids with a coin table built from
+ * the coin records that came before them.
+ */
+public final class OrderCodec {
+
+    public static final byte NEW_ORDER = 1;
+    public static final byte CANCEL = 2;
+    public static final byte AMEND = 3;
+    public static final byte COIN = 8;
+    public static final byte LIST = 9;
+    public static final byte DELIST = 10;
+    public static final byte STOP = 11;
+    public static final byte TRIGGER = 12;
+
+    /**
+     * Id given to decoded cancels and amends, which only carry the id of the order they cancel
+     */
+    public static final UUID NO_ORDER_ID = new UUID(0, 0);
+
+    public static final int MAX_USER_ID_LENGTH = 0xFFFF;
+
+    public static final int CANCEL_LENGTH = 1 + 1 + 16;
+    public static final int AMEND_LENGTH = 1 + 1 + 16 + 8 + 8;
+    public static final int LISTING_LENGTH = 1 + 1;
+    public static final int TRIGGER_LENGTH = 1 + 1 + 16;
+    static final int NEW_ORDER_FIXED_LENGTH = 1 + 1 + 1 + 16 + 8 + 8 + 2;
+    private static final int STOP_FIXED_LENGTH = NEW_ORDER_FIXED_LENGTH + 8 + 1;
+    private static final int COIN_FIXED_LENGTH = 1 + 1 + 1 + 1 + 1 + 1;
+
+    // Field offsets, for the flyweights
+    static final int COIN_OFFSET = 1;
+    static final int SIDE_OFFSET = 2;
+    static final int ORDER_ID_OFFSET = 3;
+    static final int QUANTITY_OFFSET = 19;
+    static final int PRICE_OFFSET = 27;
+    static final int USER_ID_LENGTH_OFFSET = 35;
+    static final int USER_ID_OFFSET = NEW_ORDER_FIXED_LENGTH;
+    static final int ORIGINAL_ORDER_ID_OFFSET = 2;
+
+    private static final Side[] SIDES = Side.values();
+    private static final BookType[] BOOK_TYPES = BookType.values();
+
+    private OrderCodec() {
+    }
+
+    public static int newOrderLength(CryptoOrder order) {
+        return NEW_ORDER_FIXED_LENGTH + utf8Length(order.getUserId());
+    }
+
+    public static void encodeNewOrder(ByteBuffer buffer, CryptoOrder order, long priceTicks, long quantityLots) {
+        int userIdLength = checkUserId(order);
+        buffer.put(NEW_ORDER);
+        buffer.put((byte) order.getCoinType().getId());
+        buffer.put((byte) order.getSide().ordinal());
+        putUuid(buffer, order.getOrderId());
+        buffer.putLong(quantityLots);
+        buffer.putLong(priceTicks);
+        putUserId(buffer, order.getUserId(), userIdLength);
+    }
+
+    /**
+     * @param stop a StopOrder
+     */
+    public static int stopLength(CryptoOrder stop) {
+        return STOP_FIXED_LENGTH + utf8Length(stop.getUserId());
+    }
+
+    /**
+     * @param stop a StopOrder
+     */
+    public static void encodeStop(ByteBuffer buffer, CryptoOrder stop) {
+        int userIdLength = checkUserId(stop);
+        buffer.put(STOP);
+        buffer.put((byte) stop.getCoinType().getId());
+        buffer.put((byte) stop.getSide().ordinal());
+        putUuid(buffer, stop.getOrderId());
+        buffer.putLong(stop.getQuantityLots());
+        buffer.putLong(stop.getPriceTicks());
+        buffer.putLong(((StopOrder) stop).getTriggerPriceTicks());
+        buffer.put((byte) (((StopOrder) stop).isStopLoss() ? 1 : 0));
+        putUserId(buffer, stop.getUserId(), userIdLength);
+    }
+
+    public static void encodeTrigger(ByteBuffer buffer, Cryptocurrency coinType, UUID orderId) {
+        buffer.put(TRIGGER);
+        buffer.put((byte) coinType.getId());
+        putUuid(buffer, orderId);
+    }
+
+    private static int checkUserId(CryptoOrder order) {
+        int userIdLength = utf8Length(order.getUserId());
+        if (userIdLength > MAX_USER_ID_LENGTH) {
+            throw new RuntimeException(String.format("User id of order %s is too long to encode: %d bytes", order.getOrderId(), userIdLength));
+        }
+        return userIdLength;
+    }
+
+    private static void putUserId(ByteBuffer buffer, String userId, int userIdLength) {
+        buffer.putShort((short) userIdLength);
+        for (int i = 0; i < userId.length(); i++) {
+            char c = userId.charAt(i);
+            if (c >= 0x80) {
+                // Rare, fall back to the charset encoder for the whole id
+                buffer.position(buffer.position() - i);
+                buffer.put(userId.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    public static void encodeCancel(ByteBuffer buffer, Cryptocurrency coinType, UUID orderId) {
+        buffer.put(CANCEL);
+        buffer.put((byte) coinType.getId());
+        putUuid(buffer, orderId);
+    }
+
+    public static void encodeAmend(ByteBuffer buffer, Cryptocurrency coinType, UUID orderId, long priceTicks, long quantityLots) {
+        buffer.put(AMEND);
+        buffer.put((byte) coinType.getId());
+        putUuid(buffer, orderId);
+        buffer.putLong(quantityLots);
+        buffer.putLong(priceTicks);
+    }
+
+    /**
+     * @param listed true for a list record, false for a delist record
+     */
+    public static void encodeListing(ByteBuffer buffer, Cryptocurrency coinType, boolean listed) {
+        buffer.put(listed ? LIST : DELIST);
+        buffer.put((byte) coinType.getId());
+    }
+
+    /**
+     * Reads the type and coin of a list, delist or trigger record from the
+     * buffer's position, leaving a trigger's order id to decodeOrderId
+     *
+     * @param coins the coin table for the id read
+     * @return the coin listed, delisted or whose stop was triggered
+     */
+    public static Cryptocurrency decodeCoinType(ByteBuffer buffer, Cryptocurrency[] coins) {
+        byte type = buffer.get();
+        if (type != LIST && type != DELIST && type != TRIGGER) {
+            throw new RuntimeException(String.format("Expected a list, delist or trigger record at position %d, not type %d", buffer.position() - 1, type));
+        }
+        return coin(buffer, coins);
+    }
+
+    public static UUID decodeOrderId(ByteBuffer buffer) {
+        return getUuid(buffer);
+    }
+
+    private static Cryptocurrency coin(ByteBuffer buffer, Cryptocurrency[] coins) {
+        int coinId = buffer.get() & 0xFF;
+        Cryptocurrency coinType = coins == null ? Cryptocurrency.fromId(coinId) : coins[coinId];
+        if (coinType == null) {
+            throw new RuntimeException(String.format("No coin record for coin id %d at position %d", coinId, buffer.position() - 1));
+        }
+        return coinType;
+    }
+
+    public static int coinLength(Cryptocurrency coinType) {
+        return COIN_FIXED_LENGTH + coinType.name().getBytes(StandardCharsets.UTF_8).length
+                + coinType.getTickConfig().getTickSize().toPlainString().length()
+                + coinType.getTickConfig().getLotSize().toPlainString().length();
+    }
+
+    public static void encodeCoin(ByteBuffer buffer, Cryptocurrency coinType) {
+        byte[] name = coinType.name().getBytes(StandardCharsets.UTF_8);
+        byte[] tickSize = coinType.getTickConfig().getTickSize().toPlainString().getBytes(StandardCharsets.US_ASCII);
+        byte[] lotSize = coinType.getTickConfig().getLotSize().toPlainString().getBytes(StandardCharsets.US_ASCII);
+        if (name.length > 0xFF || tickSize.length > 0xFF || lotSize.length > 0xFF) {
+            throw new RuntimeException(String.format("Cryptocurrency %s is too long to encode", coinType));
+        }
+        buffer.put(COIN);
+        buffer.put((byte) coinType.getId());
+        buffer.put((byte) coinType.getBookType().ordinal());
+        buffer.put((byte) name.length);
+        buffer.put((byte) tickSize.length);
+        buffer.put((byte) lotSize.length);
+        buffer.put(name);
+        buffer.put(tickSize);
+        buffer.put(lotSize);
+    }
+
+    /**
+     * Reads a coin record from the buffer's position, defining the coin if
+     * this process has not yet, and maps the record's id to it
+     *
+     * @param coins the reader's coin table, indexed by the ids read
+     * @return the id read
+     */
+    public static int decodeCoin(ByteBuffer buffer, Cryptocurrency[] coins) {
+        byte type = buffer.get();
+        if (type != COIN) {
+            throw new RuntimeException(String.format("Expected a coin record at position %d, not type %d", buffer.position() - 1, type));
+        }
+        int id = buffer.get() & 0xFF;
+        BookType bookType = BOOK_TYPES[buffer.get()];
+        byte[] name = new byte[buffer.get() & 0xFF];
+        byte[] tickSize = new byte[buffer.get() & 0xFF];
+        byte[] lotSize = new byte[buffer.get() & 0xFF];
+        buffer.get(name);
+        buffer.get(tickSize);
+        buffer.get(lotSize);
+        coins[id] = Cryptocurrency.getOrDefine(new String(name, StandardCharsets.UTF_8),
+                new String(tickSize, StandardCharsets.US_ASCII), new String(lotSize, StandardCharsets.US_ASCII), bookType);
+        return id;
+    }
+
+    /**
+     * @return the length of the encoded order at the buffer's position, or
+     *         -1 if too little of it has arrived to tell
+     */
+    public static int encodedLength(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        byte type = buffer.get(buffer.position());
+        switch (type) {
+            case NEW_ORDER:
+                if (buffer.remaining() < NEW_ORDER_FIXED_LENGTH) {
+                    return -1;
+                }
+                return NEW_ORDER_FIXED_LENGTH + (buffer.getShort(buffer.position() + NEW_ORDER_FIXED_LENGTH - 2) & 0xFFFF);
+            case CANCEL:
+                return CANCEL_LENGTH;
+            case AMEND:
+                return AMEND_LENGTH;
+            case LIST:
+            case DELIST:
+                return LISTING_LENGTH;
+            case STOP:
+                if (buffer.remaining() < STOP_FIXED_LENGTH) {
+                    return -1;
+                }
+                return STOP_FIXED_LENGTH + (buffer.getShort(buffer.position() + STOP_FIXED_LENGTH - 2) & 0xFFFF);
+            case TRIGGER:
+                return TRIGGER_LENGTH;
+            case COIN:
+                if (buffer.remaining() < COIN_FIXED_LENGTH) {
+                    return -1;
+                }
+                return COIN_FIXED_LENGTH + (buffer.get(buffer.position() + 3) & 0xFF)
+                        + (buffer.get(buffer.position() + 4) & 0xFF) + (buffer.get(buffer.position() + 5) & 0xFF);
+            default:
+                throw new RuntimeException(String.format("Unknown order type %d at position %d", type, buffer.position()));
+        }
+    }
+
+    /**
+     * Reads one encoded order from the buffer's position
+     *
+     * @return a CryptoMarketOrder or CryptoMarketStopOrder, or a
+     *         CryptoMarketCancelOrder or CryptoMarketAmendOrder with NO_ORDER_ID
+     */
+    public static CryptoOrder decode(ByteBuffer buffer) {
+        return decode(buffer, null);
+    }
+
+    /**
+     * Reads one encoded order from the buffer's position, written by
+     * another process
+     *
+     * @param coins the coin table for the ids read, or null for this
+     *              process's own ids
+     */
+    public static CryptoOrder decode(ByteBuffer buffer, Cryptocurrency[] coins) {
+        byte type = buffer.get();
+        Cryptocurrency coinType = coin(buffer, coins);
+        if (type == CANCEL) {
+            return new CryptoMarketCancelOrder(NO_ORDER_ID, getUuid(buffer), coinType);
+        }
+        if (type == AMEND) {
+            UUID originalOrderId = getUuid(buffer);
+            long quantityLots = buffer.getLong();
+            return new CryptoMarketAmendOrder(NO_ORDER_ID, originalOrderId, coinType, quantityLots, buffer.getLong());
+        }
+        if (type != NEW_ORDER && type != STOP) {
+            throw new RuntimeException(String.format("Unknown order type %d at position %d", type, buffer.position() - 2));
+        }
+        Side side = SIDES[buffer.get()];
+        UUID orderId = getUuid(buffer);
+        long quantityLots = buffer.getLong();
+        long priceTicks = buffer.getLong();
+        if (type == STOP) {
+            long triggerPriceTicks = buffer.getLong();
+            boolean stopLoss = buffer.get() != 0;
+            String userId = getUserId(buffer);
+            return stopLoss
+                    ? new CryptoMarketStopOrder(orderId, userId, coinType, side, quantityLots, triggerPriceTicks)
+                    : new CryptoMarketStopOrder(orderId, userId, coinType, side, quantityLots, triggerPriceTicks, priceTicks);
+        }
+        return new CryptoMarketOrder(orderId, getUserId(buffer), coinType, side, quantityLots, priceTicks);
+    }
+
+    /**
+     * @return true if the UTF-8 bytes at the position spell the value, only
+     *         ever for ASCII values
+     */
+    static boolean matches(ByteBuffer buffer, int position, int length, String value) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80 || buffer.get(position + i) != (byte) c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static String getUserId(ByteBuffer buffer) {
+        byte[] userId = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(userId);
+        return new String(userId, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return value.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,403 @@
+package com.dak.crypto.gateway;
+
+import com.dak.crypto.BookSnapshot;
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.ExecutionMode;
+import com.dak.crypto.OrderBoard;
+import com.dak.crypto.Side;
+import com.dak.crypto.SubmitResult;
+import com.dak.crypto.TradeListener;
+import com.dak.crypto.codec.CancelOrderFlyweight;
+import com.dak.crypto.codec.GatewayCodec;
+import com.dak.crypto.codec.NewOrderFlyweight;
+import com.dak.crypto.codec.OrderCodec;
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.order.Order;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Non-blocking TCP front end of a CryptoMarket.  Clients send orders as
+ * encoded by OrderCodec and depth requests, and receive acks, fills and
+ * depth as encoded by GatewayCodec, all big-endian with no other framing.
+ * Messages are read where they lie in each connection's read buffer, new
+ * orders through a NewOrderFlyweight.
+ * <p>
+ * One selector thread runs every connection and calls the market itself,
+ * so the market must execute on the caller's thread.  Pass the gateway to
+ * the market as its TradeListener, fills are sent to the connection that
+ * last submitted an order for each side's user.  Orders given to the market
+ * other than through the gateway are not reported.
+ * <p>
+ * A connection is dropped if what it has yet to read outgrows the gateway's
+ * output limit, so a client that stops reading cannot hold on to memory.
+ */
+public class OrderGateway implements TradeListener, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_OUTPUT_SIZE = 4 * 1024 * 1024;
+    private static final Side[] SIDES = Side.values();
+
+    private final int maxOutputSize;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    // Selector thread only
+    private final Map<String, Session> sessionsByUser = new HashMap<>();
+    private final List<Session> unflushed = new ArrayList<>();
+    private CryptoMarket market;
+    private Thread thread;
+    private volatile boolean running;
+
+    public OrderGateway(InetSocketAddress address) {
+        this(address, DEFAULT_MAX_OUTPUT_SIZE);
+    }
+
+    /**
+     * Listens on the address straight away, connections are served once started
+     *
+     * @param address port 0 picks a free port, see getLocalAddress
+     * @param maxOutputSize bytes a connection may have waiting to be sent before it is dropped
+     */
+    public OrderGateway(InetSocketAddress address, int maxOutputSize) {
+        if (maxOutputSize < BUFFER_SIZE) {
+            throw new RuntimeException(String.format("OrderGateway output limit of %d bytes is below %d", maxOutputSize, BUFFER_SIZE));
+        }
+        this.maxOutputSize = maxOutputSize;
+        try {
+            this.selector = Selector.open();
+            this.server = ServerSocketChannel.open();
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("OrderGateway could not listen on %s", address), e);
+        }
+    }
+
+    /**
+     * @param market a CALLER_THREAD market created with this gateway as its TradeListener
+     */
+    public synchronized void start(CryptoMarket market) {
+        if (market.getExecutionMode() != ExecutionMode.CALLER_THREAD) {
+            throw new RuntimeException(String.format("OrderGateway needs a CALLER_THREAD market, not %s", market.getExecutionMode()));
+        }
+        if (thread != null) {
+            throw new RuntimeException("OrderGateway has already been started");
+        }
+        this.market = market;
+        this.running = true;
+        this.thread = new Thread(this::runLoop, "OrderGateway-" + getLocalAddress().getPort());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new RuntimeException("OrderGateway is closed", e);
+        }
+    }
+
+    private void runLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Session session = (Session) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            session.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            session.flush();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // A broken or misbehaving client only loses its own connection
+                        session.close();
+                    }
+                }
+                flushAll();
+            }
+        } catch (IOException e) {
+            if (running) {
+                throw new RuntimeException("OrderGateway selector failed", e);
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Session) {
+                    ((Session) key.attachment()).close();
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Session session = new Session(channel);
+        session.key = channel.register(selector, SelectionKey.OP_READ, session);
+    }
+
+    /**
+     * Sends what each connection was given while handling the last batch of
+     * reads, so a burst of fills goes out in as few writes as possible
+     */
+    private void flushAll() {
+        for (Session session : unflushed) {
+            session.queued = false;
+            try {
+                session.flush();
+            } catch (IOException e) {
+                session.close();
+            }
+        }
+        unflushed.clear();
+    }
+
+    @Override
+    public void onTrade(Cryptocurrency coinType, CryptoOrder aggressor, Order resting, long priceTicks, long quantityLots) {
+        if (Thread.currentThread() != thread) {
+            return;
+        }
+        reportFill(aggressor.getUserId(), coinType, aggressor.getSide(), aggressor.getOrderId(), priceTicks, quantityLots);
+        if (resting instanceof CryptoOrder) {
+            reportFill(((CryptoOrder) resting).getUserId(), coinType, resting.getSide(), resting.getOrderId(), priceTicks, quantityLots);
+        }
+    }
+
+    private void reportFill(String userId, Cryptocurrency coinType, Side side, UUID orderId, long priceTicks, long quantityLots) {
+        Session session = sessionsByUser.get(userId);
+        if (session != null) {
+            GatewayCodec.encodeFill(session.reserve(GatewayCodec.FILL_LENGTH), coinType, side, orderId, priceTicks, quantityLots);
+        }
+    }
+
+    /**
+     * Stops serving and closes every connection
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        Thread loop;
+        synchronized (this) {
+            loop = thread;
+        }
+        if (loop != null) {
+            try {
+                loop.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException e) {
+            throw new RuntimeException("OrderGateway did not close cleanly", e);
+        }
+    }
+
+    /**
+     * One client connection, only touched by the selector thread
+     */
+    private final class Session {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final NewOrderFlyweight newOrder = new NewOrderFlyweight();
+        private final CancelOrderFlyweight cancelOrder = new CancelOrderFlyweight();
+        private SelectionKey key;
+        // The same String while the client keeps sending the same user id
+        private String userId;
+        private boolean queued;
+        private boolean closed;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            while (true) {
+                int length = in.hasRemaining() && in.get(in.position()) == GatewayCodec.DEPTH_REQUEST
+                        ? GatewayCodec.DEPTH_REQUEST_LENGTH : OrderCodec.encodedLength(in);
+                if (length > in.capacity()) {
+                    throw new RuntimeException(String.format("Message of %d bytes is larger than the read buffer", length));
+                }
+                if (length < 0 || in.remaining() < length) {
+                    break;
+                }
+                int end = in.position() + length;
+                handle();
+                in.position(end);
+                if (closed) {
+                    return;
+                }
+            }
+            in.compact();
+        }
+
+        private void handle() {
+            switch (in.get(in.position())) {
+                case OrderCodec.NEW_ORDER: {
+                    NewOrderFlyweight order = newOrder.wrap(in, in.position());
+                    if (order.getUserId() != userId) {
+                        userId = order.getUserId();
+                        sessionsByUser.put(userId, this);
+                    }
+                    SubmitResult result;
+                    try {
+                        result = market.submitOrder(order);
+                    } catch (RuntimeException e) {
+                        result = SubmitResult.REJECTED;
+                    }
+                    GatewayCodec.encodeAck(reserve(GatewayCodec.ACK_LENGTH), order.getCoinType(), result,
+                            order.getOrderIdMostSignificantBits(), order.getOrderIdLeastSignificantBits());
+                    break;
+                }
+                case OrderCodec.CANCEL: {
+                    CancelOrderFlyweight cancel = cancelOrder.wrap(in, in.position());
+                    UUID orderId = cancel.getOriginalOrderId();
+                    SubmitResult result;
+                    try {
+                        result = market.cancelOrder(cancel.getCoinType(), orderId) ? SubmitResult.CANCELLED : SubmitResult.NOT_FOUND;
+                    } catch (RuntimeException e) {
+                        // e.g. an unknown or delisted coin
+                        result = SubmitResult.REJECTED;
+                    }
+                    GatewayCodec.encodeAck(reserve(GatewayCodec.ACK_LENGTH), cancel.getCoinId(), result, orderId);
+                    break;
+                }
+                case OrderCodec.AMEND: {
+                    in.get();
+                    int coinId = in.get() & 0xFF;
+                    UUID orderId = new UUID(in.getLong(), in.getLong());
+                    long quantityLots = in.getLong();
+                    long priceTicks = in.getLong();
+                    SubmitResult result;
+                    try {
+                        result = market.amendOrder(Cryptocurrency.fromId(coinId), orderId, priceTicks, quantityLots) ? SubmitResult.AMENDED : SubmitResult.NOT_FOUND;
+                    } catch (RuntimeException e) {
+                        result = SubmitResult.REJECTED;
+                    }
+                    GatewayCodec.encodeAck(reserve(GatewayCodec.ACK_LENGTH), coinId, result, orderId);
+                    break;
+                }
+                case GatewayCodec.DEPTH_REQUEST: {
+                    in.get();
+                    int coinId = in.get() & 0xFF;
+                    int side = in.get();
+                    int maxDepth = in.getShort();
+                    // Never lists a coin, unknown or delisted ones are refused
+                    OrderBoard board = coinId < Cryptocurrency.count() && side >= 0 && side < SIDES.length && maxDepth >= 0
+                            ? market.find(Cryptocurrency.fromId(coinId)) : null;
+                    if (board == null) {
+                        GatewayCodec.encodeDepthRejected(reserve(GatewayCodec.ACK_LENGTH), coinId);
+                        break;
+                    }
+                    BookSnapshot snapshot = board.getSnapshot(SIDES[side], maxDepth);
+                    int levels = Math.min(maxDepth, snapshot.getDepth());
+                    GatewayCodec.encodeDepth(reserve(GatewayCodec.depthLength(levels)), board.getCoinType(), snapshot, levels);
+                    break;
+                }
+                default:
+                    throw new RuntimeException(String.format("Unknown message type %d from %s", in.get(in.position()), channel));
+            }
+        }
+
+        /**
+         * @return the write buffer, with room for a message of the given
+         *         length, which is dropped if the connection has been closed
+         */
+        ByteBuffer reserve(int length) {
+            if (closed) {
+                if (out.capacity() < length) {
+                    out = ByteBuffer.allocate(length);
+                }
+                out.clear();
+                return out;
+            }
+            if (!queued) {
+                queued = true;
+                unflushed.add(this);
+            }
+            if (out.remaining() < length) {
+                // Try to make room before growing, e.g. for a long sweep of fills
+                try {
+                    flush();
+                } catch (IOException e) {
+                    // Surfaces again on the next flush
+                }
+                if (out.position() + length > maxOutputSize) {
+                    // Not reading what it is sent, drop it rather than buffer without end
+                    close();
+                    return reserve(length);
+                }
+                if (out.remaining() < length) {
+                    ByteBuffer larger = ByteBuffer.allocateDirect(Math.min(Math.max(out.capacity() * 2, out.position() + length), maxOutputSize));
+                    out.flip();
+                    larger.put(out);
+                    out = larger;
+                }
+            }
+            return out;
+        }
+
+        void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            out.flip();
+            channel.write(out);
+            out.compact();
+            if (key.isValid()) {
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+
+        void close() {
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more to send it
+            }
+            sessionsByUser.values().removeIf(session -> session == this);
+        }
+    }
+}
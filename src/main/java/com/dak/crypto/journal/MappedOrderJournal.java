@@ -0,0 +1,520 @@
+package com.dak.crypto.journal;
+
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.OrderJournal;
+import com.dak.crypto.codec.OrderCodec;
+import com.dak.crypto.order.AmendOrder;
+import com.dak.crypto.order.CancelOrder;
+import com.dak.crypto.order.CryptoOrder;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal in a memory-mapped file.  Each record is an int
+ * length followed by an OrderCodec encoded order, cancel, amend, stop,
+ * trigger, list, delist or coin record, a zero length marks the end.  A coin record comes before the
+ * first record that uses its id and again whenever the id stands for
+ * another coin, e.g. after a restart that defined coins in another order,
+ * so replay finds the coins by name.  The file is mapped a region at a
+ * time and grows as records are added.
+ * <p>
+ * To rebuild a market, open the journal, create the market with it and
+ * call replay(market) before submitting any new orders.
+ */
+public class MappedOrderJournal implements OrderJournal, AutoCloseable {
+
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_SYNC_BATCH_SIZE = 256;
+    public static final long DEFAULT_MAX_SYNC_DELAY_MILLIS = 100;
+
+    private static final int LENGTH_SIZE = 4;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final SyncPolicy syncPolicy;
+    private final int syncBatchSize;
+    private final long maxSyncDelayNanos;
+    private final int regionSize;
+    // SyncPolicy.BATCH only, syncs records left waiting by a quiet journal
+    private final ScheduledExecutorService flusher;
+
+    // Both guarded by this
+    private final List<CoinRecord> coinRecords = new ArrayList<>();
+    private final Cryptocurrency[] writtenCoins = new Cryptocurrency[Cryptocurrency.MAX_COINS];
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+    private int unsynced;
+    private long lastSyncNanos = System.nanoTime();
+    private volatile boolean replaying;
+
+    public MappedOrderJournal(Path file, SyncPolicy syncPolicy) {
+        this(file, syncPolicy, DEFAULT_SYNC_BATCH_SIZE, DEFAULT_REGION_SIZE);
+    }
+
+    public MappedOrderJournal(Path file, SyncPolicy syncPolicy, int syncBatchSize, int regionSize) {
+        this(file, syncPolicy, syncBatchSize, DEFAULT_MAX_SYNC_DELAY_MILLIS, regionSize);
+    }
+
+    /**
+     * @param file created if it does not exist, otherwise appended to
+     * @param syncPolicy
+     * @param syncBatchSize records per sync with SyncPolicy.BATCH
+     * @param maxSyncDelayMillis with SyncPolicy.BATCH, the longest a record waits to be synced
+     * @param regionSize bytes mapped at a time
+     */
+    public MappedOrderJournal(Path file, SyncPolicy syncPolicy, int syncBatchSize, long maxSyncDelayMillis, int regionSize) {
+        if (syncBatchSize < 1 || maxSyncDelayMillis < 0 || regionSize < LENGTH_SIZE * 2 + 1024) {
+            throw new RuntimeException(String.format("Invalid journal settings - sync batch: %d, max sync delay: %dms, region size: %d",
+                    syncBatchSize, maxSyncDelayMillis, regionSize));
+        }
+        this.file = file;
+        this.syncPolicy = syncPolicy;
+        this.syncBatchSize = syncBatchSize;
+        this.maxSyncDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxSyncDelayMillis);
+        this.regionSize = regionSize;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to open journal %s", file), e);
+        }
+        // Appends continue after the last complete record
+        this.position = forEach(0, new Cryptocurrency[Cryptocurrency.MAX_COINS], new RecordHandler() {
+            @Override
+            public void onOrder(CryptoOrder order, long recordPosition) {
+            }
+
+            @Override
+            public void onCoin(int id, Cryptocurrency coinType, long recordPosition) {
+                coinRecords.add(new CoinRecord(recordPosition, id, coinType));
+                writtenCoins[id] = coinType;
+            }
+        });
+        map(position);
+        if (syncPolicy == SyncPolicy.BATCH && maxSyncDelayMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "MappedOrderJournal-" + file.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, maxSyncDelayMillis, maxSyncDelayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    @Override
+    public void onOrder(CryptoOrder order, long priceTicks, long quantityLots) {
+        if (replaying) {
+            return;
+        }
+        synchronized (this) {
+            describe(order.getCoinType());
+            int start = reserve(OrderCodec.newOrderLength(order));
+            OrderCodec.encodeNewOrder(region, order, priceTicks, quantityLots);
+            commit(start);
+        }
+    }
+
+    @Override
+    public void onCancel(Cryptocurrency coinType, UUID orderId) {
+        if (replaying) {
+            return;
+        }
+        synchronized (this) {
+            describe(coinType);
+            int start = reserve(OrderCodec.CANCEL_LENGTH);
+            OrderCodec.encodeCancel(region, coinType, orderId);
+            commit(start);
+        }
+    }
+
+    @Override
+    public void onAmend(Cryptocurrency coinType, UUID orderId, long priceTicks, long quantityLots) {
+        if (replaying) {
+            return;
+        }
+        synchronized (this) {
+            describe(coinType);
+            int start = reserve(OrderCodec.AMEND_LENGTH);
+            OrderCodec.encodeAmend(region, coinType, orderId, priceTicks, quantityLots);
+            commit(start);
+        }
+    }
+
+    @Override
+    public void onStopOrder(CryptoOrder stop) {
+        if (replaying) {
+            return;
+        }
+        synchronized (this) {
+            describe(stop.getCoinType());
+            int start = reserve(OrderCodec.stopLength(stop));
+            OrderCodec.encodeStop(region, stop);
+            commit(start);
+        }
+    }
+
+    @Override
+    public void onTrigger(Cryptocurrency coinType, UUID orderId) {
+        if (replaying) {
+            return;
+        }
+        synchronized (this) {
+            describe(coinType);
+            int start = reserve(OrderCodec.TRIGGER_LENGTH);
+            OrderCodec.encodeTrigger(region, coinType, orderId);
+            commit(start);
+        }
+    }
+
+    @Override
+    public void onDelist(Cryptocurrency coinType) {
+        writeListing(coinType, false);
+    }
+
+    @Override
+    public void onList(Cryptocurrency coinType) {
+        writeListing(coinType, true);
+    }
+
+    private void writeListing(Cryptocurrency coinType, boolean listed) {
+        if (replaying) {
+            return;
+        }
+        synchronized (this) {
+            describe(coinType);
+            int start = reserve(OrderCodec.LISTING_LENGTH);
+            OrderCodec.encodeListing(region, coinType, listed);
+            commit(start);
+        }
+    }
+
+    /**
+     * Writes a coin record unless the file already maps the coin's id to it
+     */
+    private void describe(Cryptocurrency coinType) {
+        int id = coinType.getId();
+        if (writtenCoins[id] == coinType) {
+            return;
+        }
+        int start = reserve(OrderCodec.coinLength(coinType));
+        OrderCodec.encodeCoin(region, coinType);
+        coinRecords.add(new CoinRecord(regionStart + start, id, coinType));
+        commit(start);
+        writtenCoins[id] = coinType;
+    }
+
+    /**
+     * @return the coin table for reading from the position on
+     */
+    private synchronized Cryptocurrency[] coinTableAt(long fromPosition) {
+        Cryptocurrency[] coins = new Cryptocurrency[Cryptocurrency.MAX_COINS];
+        for (CoinRecord coinRecord : coinRecords) {
+            if (coinRecord.position >= fromPosition) {
+                break;
+            }
+            coins[coinRecord.id] = coinRecord.coinType;
+        }
+        return coins;
+    }
+
+    /**
+     * Positions the region after room for the length and returns where the record starts
+     */
+    private int reserve(int length) {
+        checkOpen();
+        // Leave room for the record and the end marker after it
+        if (position + LENGTH_SIZE + length + LENGTH_SIZE > regionStart + region.capacity()) {
+            if (LENGTH_SIZE + length + LENGTH_SIZE > regionSize) {
+                throw new RuntimeException(String.format("Record of %d bytes is larger than the journal region", length));
+            }
+            force();
+            map(position);
+        }
+        int start = (int) (position - regionStart);
+        region.position(start + LENGTH_SIZE);
+        return start;
+    }
+
+    /**
+     * Writes the length last, so a partly written record reads as the end of the journal
+     */
+    private void commit(int start) {
+        int end = region.position();
+        region.putInt(end, 0);
+        region.putInt(start, end - start - LENGTH_SIZE);
+        position = regionStart + end;
+        if (syncPolicy == SyncPolicy.EVERY_RECORD || (syncPolicy == SyncPolicy.BATCH
+                && (++unsynced >= syncBatchSize || System.nanoTime() - lastSyncNanos >= maxSyncDelayNanos))) {
+            force();
+        }
+    }
+
+    /**
+     * Forces any records not yet on disk, whatever the sync policy
+     */
+    public synchronized void sync() {
+        checkOpen();
+        force();
+    }
+
+    /**
+     * Syncs any records written since the last sync, run by the flusher
+     */
+    private synchronized void flush() {
+        if (region != null && unsynced > 0) {
+            force();
+        }
+    }
+
+    private void force() {
+        region.force();
+        unsynced = 0;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /**
+     * @return records written since the last sync
+     */
+    synchronized int getUnsyncedCount() {
+        return unsynced;
+    }
+
+    private void map(long start) {
+        try {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+            regionStart = start;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to map journal %s at %d", file, start), e);
+        }
+    }
+
+    private void checkOpen() {
+        if (region == null) {
+            throw new RuntimeException(String.format("Journal %s has been closed", file));
+        }
+    }
+
+    @Override
+    public synchronized long getPosition() {
+        return position;
+    }
+
+    /**
+     * Reads the records from a position up to the end of the journal
+     *
+     * @param fromPosition 0 or a position returned by getPosition()
+     * @param consumer receives each order, cancels and amends are CryptoMarketCancelOrders and CryptoMarketAmendOrders
+     *                 with OrderCodec.NO_ORDER_ID, stops are CryptoMarketStopOrders, trigger, list, delist and coin
+     *                 records are skipped
+     * @return the position after the last record
+     */
+    public long forEach(long fromPosition, Consumer<CryptoOrder> consumer) {
+        return forEach(fromPosition, coinTableAt(fromPosition), (order, position) -> consumer.accept(order));
+    }
+
+    /**
+     * @param coins the coin table as of the position, updated by the coin records read
+     */
+    private long forEach(long fromPosition, Cryptocurrency[] coins, RecordHandler handler) {
+        try {
+            long fileSize = channel.size();
+            long readPosition = fromPosition;
+            MappedByteBuffer readRegion = null;
+            long readStart = 0;
+            while (readPosition + LENGTH_SIZE <= fileSize) {
+                if (readRegion == null || readPosition + LENGTH_SIZE > readStart + readRegion.capacity()) {
+                    readStart = readPosition;
+                    readRegion = channel.map(FileChannel.MapMode.READ_ONLY, readStart, Math.min(regionSize, fileSize - readStart));
+                }
+                int length = readRegion.getInt((int) (readPosition - readStart));
+                if (length <= 0) {
+                    break;
+                }
+                if (readPosition + LENGTH_SIZE + length > readStart + readRegion.capacity()) {
+                    if (readStart == readPosition) {
+                        // Cut short by the end of the file
+                        break;
+                    }
+                    // Records never span regions when written, but may when read
+                    readRegion = null;
+                    continue;
+                }
+                readRegion.position((int) (readPosition - readStart) + LENGTH_SIZE);
+                byte type = readRegion.get(readRegion.position());
+                if (type == OrderCodec.COIN) {
+                    int id = OrderCodec.decodeCoin(readRegion, coins);
+                    handler.onCoin(id, coins[id], readPosition);
+                } else if (type == OrderCodec.LIST || type == OrderCodec.DELIST) {
+                    handler.onListing(OrderCodec.decodeCoinType(readRegion, coins), type == OrderCodec.LIST, readPosition);
+                } else if (type == OrderCodec.TRIGGER) {
+                    Cryptocurrency coinType = OrderCodec.decodeCoinType(readRegion, coins);
+                    handler.onTrigger(coinType, OrderCodec.decodeOrderId(readRegion), readPosition);
+                } else {
+                    handler.onOrder(OrderCodec.decode(readRegion, coins), readPosition);
+                }
+                readPosition += LENGTH_SIZE + length;
+            }
+            return readPosition;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to read journal %s", file), e);
+        }
+    }
+
+    /**
+     * Rebuilds the market's boards from the whole journal.  The replayed
+     * orders are not journalled again, but their trades are reported to the
+     * market's TradeListener.
+     *
+     * @param market an empty market writing to this journal
+     * @return the number of records replayed
+     */
+    public long replay(CryptoMarket market) {
+        return replay(market, 0);
+    }
+
+    /**
+     * @param market
+     * @param fromPosition where to start
+     * @return the number of records replayed
+     */
+    public long replay(CryptoMarket market, long fromPosition) {
+        return replay(market, Collections.emptyMap(), fromPosition);
+    }
+
+    /**
+     * Replays each board from its own position, for a market restored from
+     * board snapshots taken at different points
+     *
+     * @param market
+     * @param fromPositions position of each board's first record to replay
+     * @param otherFromPosition where to start for coins left out of fromPositions
+     * @return the number of records replayed
+     */
+    public long replay(CryptoMarket market, Map<Cryptocurrency, Long> fromPositions, long otherFromPosition) {
+        long from = otherFromPosition;
+        for (long fromPosition : fromPositions.values()) {
+            from = Math.min(from, fromPosition);
+        }
+        long[] count = new long[1];
+        replaying = true;
+        try {
+            forEach(from, coinTableAt(from), new RecordHandler() {
+                @Override
+                public void onOrder(CryptoOrder order, long recordPosition) {
+                    if (recordPosition < fromPositions.getOrDefault(order.getCoinType(), otherFromPosition)) {
+                        return;
+                    }
+                    if (order instanceof CancelOrder) {
+                        market.cancelOrder(order.getCoinType(), ((CancelOrder) order).getOriginalOrderId());
+                    } else if (order instanceof AmendOrder) {
+                        market.amendOrder(order.getCoinType(), ((AmendOrder) order).getOriginalOrderId(), order.getPriceTicks(), order.getQuantityLots());
+                    } else {
+                        market.submitOrder(order);
+                    }
+                    count[0]++;
+                }
+
+                @Override
+                public void onListing(Cryptocurrency coinType, boolean listed, long recordPosition) {
+                    if (recordPosition < fromPositions.getOrDefault(coinType, otherFromPosition)) {
+                        return;
+                    }
+                    if (listed) {
+                        market.list(coinType);
+                    } else {
+                        market.delist(coinType);
+                    }
+                    count[0]++;
+                }
+
+                @Override
+                public void onTrigger(Cryptocurrency coinType, UUID orderId, long recordPosition) {
+                    if (recordPosition < fromPositions.getOrDefault(coinType, otherFromPosition)) {
+                        return;
+                    }
+                    // Usually fired already by the trade replayed before it
+                    market.triggerStop(coinType, orderId);
+                    count[0]++;
+                }
+            });
+        } finally {
+            replaying = false;
+        }
+        return count[0];
+    }
+
+    /**
+     * What a read of the file does with each record
+     */
+    private interface RecordHandler {
+
+        void onOrder(CryptoOrder order, long recordPosition);
+
+        default void onCoin(int id, Cryptocurrency coinType, long recordPosition) {
+        }
+
+        default void onListing(Cryptocurrency coinType, boolean listed, long recordPosition) {
+        }
+
+        default void onTrigger(Cryptocurrency coinType, UUID orderId, long recordPosition) {
+        }
+    }
+
+    private static final class CoinRecord {
+
+        private final long position;
+        private final int id;
+        private final Cryptocurrency coinType;
+
+        private CoinRecord(long position, int id, Cryptocurrency coinType) {
+            this.position = position;
+            this.id = id;
+            this.coinType = coinType;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Syncs and closes the file, the market must not be used afterwards
+     */
+    @Override
+    public synchronized void close() {
+        if (region == null) {
+            return;
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        force();
+        region = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to close journal %s", file), e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.dak.crypto.journal;
+
+/**
+ * When journal records are forced to disk
+ */
+public enum SyncPolicy {
+    /**
+     * Left to the operating system, survives a process crash but not a machine crash
+     */
+    NONE,
+    /**
+     * After every batch of records, and by the journal's flusher thread once
+     * per max sync delay while records wait, and on sync() and close().  So
+     * a crash loses at most a batch, or the records of the last max sync
+     * delay.
+     */
+    BATCH,
+    /**
+     * After every record
+     */
+    EVERY_RECORD
+}
@@ -0,0 +1,151 @@
+package com.dak.crypto.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of one OrderBook.  Only updated when
+ * {@link Metrics#ENABLED}, callers pass the value start() returned when the
+ * operation began.
+ */
+public final class BookMetrics implements BookMetricsMXBean {
+
+    /**
+     * Shared by every book while Metrics.ENABLED is false, so books do not
+     * each hold histograms that are never recorded to
+     */
+    public static final BookMetrics DISABLED = new BookMetrics();
+
+    // Counted only when one operation in several is timed
+    private final AtomicInteger operations = new AtomicInteger();
+    private final AtomicLong submits = new AtomicLong();
+    private final AtomicLong cancels = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fills = new AtomicLong();
+    private volatile int levels;
+    private final LatencyHistogram submitLatency = new LatencyHistogram();
+    private final LatencyHistogram removeLatency = new LatencyHistogram();
+    private final LatencyHistogram summaryLatency = new LatencyHistogram();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+
+    /**
+     * @return new metrics, or DISABLED when Metrics.ENABLED is false
+     */
+    public static BookMetrics create() {
+        return Metrics.ENABLED ? new BookMetrics() : DISABLED;
+    }
+
+    /**
+     * @return the time to pass when the operation completes, 0 if it is not timed
+     */
+    public long start() {
+        if (Metrics.TIMING_MASK == 0) {
+            return System.nanoTime();
+        }
+        return (operations.getAndIncrement() & Metrics.TIMING_MASK) == 0 ? System.nanoTime() : 0;
+    }
+
+    public void submitted(long startNanos) {
+        submits.incrementAndGet();
+        if (startNanos != 0) {
+            submitLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void removed(long startNanos, boolean found) {
+        (found ? cancels : misses).incrementAndGet();
+        if (startNanos != 0) {
+            removeLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * A bulk remove of count orders, timed as one operation
+     */
+    public void removed(long startNanos, int count) {
+        cancels.addAndGet(count);
+        if (startNanos != 0) {
+            removeLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void filled() {
+        fills.incrementAndGet();
+    }
+
+    public void summarised(long startNanos) {
+        if (startNanos != 0) {
+            summaryLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void lockAcquired(long startNanos) {
+        if (startNanos != 0) {
+            lockWait.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void setLevels(int levels) {
+        this.levels = levels;
+    }
+
+    @Override
+    public long getSubmits() {
+        return submits.get();
+    }
+
+    @Override
+    public long getCancels() {
+        return cancels.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getFills() {
+        return fills.get();
+    }
+
+    @Override
+    public int getLevels() {
+        return levels;
+    }
+
+    @Override
+    public LatencySnapshot getSubmitLatency() {
+        return submitLatency.getSnapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRemoveLatency() {
+        return removeLatency.getSnapshot();
+    }
+
+    @Override
+    public LatencySnapshot getSummaryLatency() {
+        return summaryLatency.getSnapshot();
+    }
+
+    @Override
+    public LatencySnapshot getLockWait() {
+        return lockWait.getSnapshot();
+    }
+
+    /**
+     * Clears the counters and histograms, the level count is kept
+     */
+    @Override
+    public void reset() {
+        submits.set(0);
+        cancels.set(0);
+        misses.set(0);
+        fills.set(0);
+        submitLatency.reset();
+        removeLatency.reset();
+        summaryLatency.reset();
+        lockWait.reset();
+    }
+}
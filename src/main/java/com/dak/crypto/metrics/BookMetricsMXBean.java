@@ -0,0 +1,36 @@
+package com.dak.crypto.metrics;
+
+/**
+ * JMX view of one OrderBook's counters and latencies
+ */
+public interface BookMetricsMXBean {
+
+    long getSubmits();
+
+    /**
+     * @return removals that found their order
+     */
+    long getCancels();
+
+    /**
+     * @return removals whose order was no longer in the book
+     */
+    long getMisses();
+
+    long getFills();
+
+    int getLevels();
+
+    LatencySnapshot getSubmitLatency();
+
+    LatencySnapshot getRemoveLatency();
+
+    LatencySnapshot getSummaryLatency();
+
+    /**
+     * @return time spent waiting for the book's lock, LOCKING mode only
+     */
+    LatencySnapshot getLockWait();
+
+    void reset();
+}
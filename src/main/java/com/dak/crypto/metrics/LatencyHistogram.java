@@ -0,0 +1,91 @@
+package com.dak.crypto.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of nanosecond latencies in the style of HdrHistogram.
+ * Values below 64 are counted exactly, above that each power of two is split
+ * into 32 buckets, so a recorded value is reported within about 3%.  Safe to
+ * record from several threads, recording never allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = SUB_BUCKETS * 2;
+    // Enough buckets for any positive long
+    private static final int BUCKETS = EXACT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.getAndIncrement(bucketOf(nanos));
+        totalNanos.getAndAdd(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the highest value counted in the bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < EXACT) {
+            return bucket;
+        }
+        int shift = (bucket - EXACT) / SUB_BUCKETS + 1;
+        long top = (bucket - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Copies the histogram, concurrent recording may be partly included
+     */
+    public LatencySnapshot getSnapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        long max = maxNanos.get();
+        return new LatencySnapshot(count, count == 0 ? 0 : totalNanos.get() / count,
+                percentile(copy, count, 50, max), percentile(copy, count, 90, max),
+                percentile(copy, count, 99, max), percentile(copy, count, 99.9, max), max);
+    }
+
+    private static long percentile(long[] counts, long count, double percentile, long max) {
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return 0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+}
@@ -0,0 +1,59 @@
+package com.dak.crypto.metrics;
+
+/**
+ * Summary of a LatencyHistogram at one point, all values in nanoseconds
+ */
+public final class LatencySnapshot {
+
+    private final long count;
+    private final long mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    LatencySnapshot(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{count=" + count + ", mean=" + mean + ", p50=" + p50 + ", p90=" + p90
+                + ", p99=" + p99 + ", p99.9=" + p999 + ", max=" + max + '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.dak.crypto.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Only updated when {@link Metrics#ENABLED}
+ */
+public final class MarketMetrics implements MarketMetricsMXBean {
+
+    // Counted only when one operation in several is timed
+    private final AtomicInteger operations = new AtomicInteger();
+    private final AtomicLong submits = new AtomicLong();
+    private final AtomicLong cancels = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final LatencyHistogram submitLatency = new LatencyHistogram();
+    private final LatencyHistogram cancelLatency = new LatencyHistogram();
+
+    /**
+     * @return the time to pass when the operation completes, 0 if it is not timed
+     */
+    public long start() {
+        if (Metrics.TIMING_MASK == 0) {
+            return System.nanoTime();
+        }
+        return (operations.getAndIncrement() & Metrics.TIMING_MASK) == 0 ? System.nanoTime() : 0;
+    }
+
+    public void submitted(long startNanos) {
+        submits.incrementAndGet();
+        if (startNanos != 0) {
+            submitLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void cancelled(long startNanos, boolean found) {
+        (found ? cancels : misses).incrementAndGet();
+        if (startNanos != 0) {
+            cancelLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public long getSubmits() {
+        return submits.get();
+    }
+
+    @Override
+    public long getCancels() {
+        return cancels.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public LatencySnapshot getSubmitLatency() {
+        return submitLatency.getSnapshot();
+    }
+
+    @Override
+    public LatencySnapshot getCancelLatency() {
+        return cancelLatency.getSnapshot();
+    }
+
+    @Override
+    public void reset() {
+        submits.set(0);
+        cancels.set(0);
+        misses.set(0);
+        submitLatency.reset();
+        cancelLatency.reset();
+    }
+}
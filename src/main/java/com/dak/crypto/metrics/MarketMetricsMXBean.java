@@ -0,0 +1,26 @@
+package com.dak.crypto.metrics;
+
+/**
+ * JMX view of a CryptoMarket's latencies as seen by its callers, including
+ * any wait for a board thread
+ */
+public interface MarketMetricsMXBean {
+
+    long getSubmits();
+
+    /**
+     * @return cancels that removed their order
+     */
+    long getCancels();
+
+    /**
+     * @return cancels whose order was not resting
+     */
+    long getMisses();
+
+    LatencySnapshot getSubmitLatency();
+
+    LatencySnapshot getCancelLatency();
+
+    void reset();
+}
@@ -0,0 +1,72 @@
+package com.dak.crypto.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Switch for the latency and throughput instrumentation of the books and
+ * markets.  Off unless the JVM is started with -Dcom.dak.crypto.metrics=true;
+ * every call site tests the constant first, so when off the JIT removes the
+ * instrumentation altogether.
+ * <p>
+ * Counters are always exact.  Reading the clock is most of the cost when on,
+ * so -Dcom.dak.crypto.metrics.timingInterval=N times only one operation in N,
+ * rounded up to a power of two.
+ */
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("com.dak.crypto.metrics");
+
+    public static final String DOMAIN = "com.dak.crypto";
+
+    static final int TIMING_MASK = timingMask(Integer.getInteger("com.dak.crypto.metrics.timingInterval", 1));
+
+    private Metrics() {
+    }
+
+    private static int timingMask(int interval) {
+        if (interval < 1 || interval > 1 << 30) {
+            throw new RuntimeException(String.format("Invalid metrics timing interval %d", interval));
+        }
+        return Integer.highestOneBit(interval * 2 - 1) - 1;
+    }
+
+    /**
+     * Registers an MXBean with the platform MBean server, replacing any
+     * already registered under the same name.  Does nothing when disabled.
+     *
+     * @param properties e.g. "type=OrderBook,market=1,coin=BITCOIN,side=BUY"
+     */
+    public static void register(String properties, Object mxBean) {
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mxBean, name);
+        } catch (JMException e) {
+            throw new RuntimeException(String.format("Unable to register metrics %s", properties), e);
+        }
+    }
+
+    public static void unregister(String properties) {
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException(String.format("Unable to unregister metrics %s", properties), e);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.dak.crypto.offheap;
+
+import com.dak.crypto.Side;
+import com.dak.crypto.TickConfig;
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.util.OutputFormatter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * One side of a book for very deep markets.  Resting orders are kept as
+ * {@link OrderSlots} records in direct memory and found by id through an
+ * off-heap index, each price level links its orders' slots by number.  The
+ * heap holds only the price levels and one entry per user with orders
+ * resting, so it stays flat however many orders rest.
+ * <p>
+ * An OrderBoard holds its orders in a pair of these when its BookType is
+ * OFF_HEAP.  Orders are identified by slot number, e.g. getBestOrder() then
+ * fillOrder(slot, lots) when matching.  A slot number is only valid while
+ * its order rests.  Every method takes the book's lock, use runExclusively
+ * to make several calls in one step.
+ */
+public class OffHeapOrderBook {
+
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The orders resting at one price, a queue of slots in time priority
+     */
+    private static final class Level {
+        // Position in levelsById, recorded in each of the level's slots
+        int id;
+        long priceTicks;
+        int head = OrderSlots.NO_SLOT;
+        int tail = OrderSlots.NO_SLOT;
+        int orderCount;
+        long quantityLots;
+    }
+
+    private final Side bookSide;
+    private final TickConfig tickConfig;
+    private final OrderSlots slots;
+    private final SlotIndex index;
+    // Best first, also the book's lock
+    private final TreeMap<Level, Level> levels;
+    // Reused to look up levels without allocating
+    private final Level probe = new Level();
+    // So an order's level is found from its slot without searching the tree
+    private Level[] levelsById = new Level[16];
+    private int[] freeLevelIds = new int[16];
+    private int freeLevelIdCount;
+    private int levelIdLimit;
+    // Users with resting orders, an index is reused once its user's last order leaves
+    private final Map<String, Integer> userIndexes = new HashMap<>();
+    private String[] userIds = new String[16];
+    private int[] userOrderCounts = new int[16];
+    private int[] freeUserIndexes = new int[16];
+    private int freeUserIndexCount;
+    private int userIndexLimit;
+    // Orders tend to come in runs from one user
+    private String lastUserId;
+    private int lastUserIndex;
+
+    public OffHeapOrderBook(Side side, TickConfig tickConfig) {
+        this(side, tickConfig, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity orders the direct memory is sized for up front, it grows as needed
+     */
+    public OffHeapOrderBook(Side side, TickConfig tickConfig, int initialCapacity) {
+        this.bookSide = side;
+        this.tickConfig = tickConfig;
+        this.slots = new OrderSlots(initialCapacity);
+        this.index = new SlotIndex(initialCapacity);
+        Comparator<Level> byPrice = (l1, l2) -> Long.compare(l1.priceTicks, l2.priceTicks);
+        this.levels = new TreeMap<>(side == Side.SELL ? byPrice : byPrice.reversed());
+    }
+
+    /**
+     * Rests the order, stamped with the current time
+     *
+     * @return the order's slot
+     */
+    public int submitOrder(CryptoOrder order) {
+        if (order.getSide() != bookSide) {
+            throw new RuntimeException("Order submitted to wrong book side");
+        }
+        if (order.getCoinType().getTickConfig() != tickConfig) {
+            throw new RuntimeException(String.format("Order for %s submitted to a book with %s", order.getCoinType(), tickConfig));
+        }
+        return submitOrder(order.getOrderId(), order.getUserId(), order.getPriceTicks(), order.getQuantityLots(), System.currentTimeMillis());
+    }
+
+    /**
+     * @param timestamp stored with the order, e.g. when it was received
+     * @return the order's slot
+     */
+    public int submitOrder(UUID orderId, String userId, long priceTicks, long quantityLots, long timestamp) {
+        if (quantityLots <= 0) {
+            throw new RuntimeException(String.format("Invalid quantity of %d lots for order %s", quantityLots, orderId));
+        }
+        synchronized (levels) {
+            int slot = slots.allocate();
+            if (!index.put(orderId.getMostSignificantBits(), orderId.getLeastSignificantBits(), slot)) {
+                slots.free(slot);
+                throw new RuntimeException(String.format("Duplicate order id submitted to OffHeapOrderBook: %s", orderId));
+            }
+            slots.setOrderId(slot, orderId.getMostSignificantBits(), orderId.getLeastSignificantBits());
+            slots.setQuantityLots(slot, quantityLots);
+            slots.setPriceTicks(slot, priceTicks);
+            slots.setTimestamp(slot, timestamp);
+            slots.setUserIndex(slot, userIndex(userId));
+
+            Level level = getLevel(priceTicks);
+            if (level == null) {
+                level = newLevel(priceTicks);
+            }
+            slots.setLevelId(slot, level.id);
+            slots.setPrev(slot, level.tail);
+            slots.setNext(slot, OrderSlots.NO_SLOT);
+            if (level.tail == OrderSlots.NO_SLOT) {
+                level.head = slot;
+            } else {
+                slots.setNext(level.tail, slot);
+            }
+            level.tail = slot;
+            level.orderCount++;
+            level.quantityLots += quantityLots;
+            return slot;
+        }
+    }
+
+    /**
+     * @return the user's index, counting one more order resting for it
+     */
+    private int userIndex(String userId) {
+        int userIndex;
+        if (userId == lastUserId) {
+            userIndex = lastUserIndex;
+        } else {
+            Integer known = userIndexes.get(userId);
+            userIndex = known == null ? newUserIndex(userId) : known;
+            lastUserId = userId;
+            lastUserIndex = userIndex;
+        }
+        userOrderCounts[userIndex]++;
+        return userIndex;
+    }
+
+    private int newUserIndex(String userId) {
+        int userIndex;
+        if (freeUserIndexCount > 0) {
+            userIndex = freeUserIndexes[--freeUserIndexCount];
+        } else {
+            if (userIndexLimit == userIds.length) {
+                userIds = Arrays.copyOf(userIds, userIndexLimit * 2);
+                userOrderCounts = Arrays.copyOf(userOrderCounts, userIndexLimit * 2);
+                freeUserIndexes = Arrays.copyOf(freeUserIndexes, userIndexLimit * 2);
+            }
+            userIndex = userIndexLimit++;
+        }
+        userIds[userIndex] = userId;
+        userIndexes.put(userId, userIndex);
+        return userIndex;
+    }
+
+    private void releaseUserIndex(int userIndex) {
+        if (--userOrderCounts[userIndex] > 0) {
+            return;
+        }
+        userIndexes.remove(userIds[userIndex]);
+        if (userIds[userIndex] == lastUserId) {
+            lastUserId = null;
+        }
+        userIds[userIndex] = null;
+        freeUserIndexes[freeUserIndexCount++] = userIndex;
+    }
+
+    private Level newLevel(long priceTicks) {
+        Level level = new Level();
+        level.priceTicks = priceTicks;
+        if (freeLevelIdCount > 0) {
+            level.id = freeLevelIds[--freeLevelIdCount];
+        } else {
+            if (levelIdLimit == levelsById.length) {
+                levelsById = Arrays.copyOf(levelsById, levelIdLimit * 2);
+                freeLevelIds = Arrays.copyOf(freeLevelIds, levelIdLimit * 2);
+            }
+            level.id = levelIdLimit++;
+        }
+        levelsById[level.id] = level;
+        levels.put(level, level);
+        return level;
+    }
+
+    private Level getLevel(long priceTicks) {
+        probe.priceTicks = priceTicks;
+        return levels.get(probe);
+    }
+
+    /**
+     * @return true if the order was resting and has been removed
+     */
+    public boolean removeOrder(UUID orderId) {
+        synchronized (levels) {
+            int slot = index.get(orderId.getMostSignificantBits(), orderId.getLeastSignificantBits());
+            if (slot == OrderSlots.NO_SLOT) {
+                return false;
+            }
+            unlink(slot);
+            return true;
+        }
+    }
+
+    private void unlink(int slot) {
+        index.remove(slots.getOrderIdMsb(slot), slots.getOrderIdLsb(slot));
+        Level level = levelsById[slots.getLevelId(slot)];
+        int prev = slots.getPrev(slot);
+        int next = slots.getNext(slot);
+        if (prev == OrderSlots.NO_SLOT) {
+            level.head = next;
+        } else {
+            slots.setNext(prev, next);
+        }
+        if (next == OrderSlots.NO_SLOT) {
+            level.tail = prev;
+        } else {
+            slots.setPrev(next, prev);
+        }
+        level.orderCount--;
+        level.quantityLots -= slots.getQuantityLots(slot);
+        if (level.orderCount == 0) {
+            levels.remove(level);
+            levelsById[level.id] = null;
+            freeLevelIds[freeLevelIdCount++] = level.id;
+        }
+        releaseUserIndex(slots.getUserIndex(slot));
+        slots.free(slot);
+    }
+
+    /**
+     * Fills part or all of a resting order, a partly filled order keeps its
+     * time priority
+     *
+     * @return true if the order is completely filled and has left the book
+     */
+    public boolean fillOrder(int slot, long quantityLots) {
+        synchronized (levels) {
+            long restingLots = slots.getQuantityLots(slot);
+            if (quantityLots <= 0 || quantityLots > restingLots) {
+                throw new RuntimeException(String.format("Invalid fill of %d lots against %d resting", quantityLots, restingLots));
+            }
+            if (quantityLots == restingLots) {
+                unlink(slot);
+                return true;
+            }
+            slots.setQuantityLots(slot, restingLots - quantityLots);
+            levelsById[slots.getLevelId(slot)].quantityLots -= quantityLots;
+            return false;
+        }
+    }
+
+    /**
+     * @return the slot of the first order in time priority at the best price, NO_SLOT if empty
+     */
+    public int getBestOrder() {
+        synchronized (levels) {
+            return levels.isEmpty() ? OrderSlots.NO_SLOT : levels.firstKey().head;
+        }
+    }
+
+    /**
+     * @return the slot of the order after this one in price-time priority, NO_SLOT after the last
+     */
+    public int getNextOrder(int slot) {
+        synchronized (levels) {
+            int next = slots.getNext(slot);
+            if (next != OrderSlots.NO_SLOT) {
+                return next;
+            }
+            Level nextLevel = levels.higherKey(levelsById[slots.getLevelId(slot)]);
+            return nextLevel == null ? OrderSlots.NO_SLOT : nextLevel.head;
+        }
+    }
+
+    /**
+     * @return the slot of the order, NO_SLOT if it is not resting
+     */
+    public int findOrder(UUID orderId) {
+        synchronized (levels) {
+            return index.get(orderId.getMostSignificantBits(), orderId.getLeastSignificantBits());
+        }
+    }
+
+    public UUID getOrderId(int slot) {
+        synchronized (levels) {
+            return new UUID(slots.getOrderIdMsb(slot), slots.getOrderIdLsb(slot));
+        }
+    }
+
+    public String getUserId(int slot) {
+        synchronized (levels) {
+            return userIds[slots.getUserIndex(slot)];
+        }
+    }
+
+    public long getQuantityLots(int slot) {
+        synchronized (levels) {
+            return slots.getQuantityLots(slot);
+        }
+    }
+
+    public long getPriceTicks(int slot) {
+        synchronized (levels) {
+            return slots.getPriceTicks(slot);
+        }
+    }
+
+    public long getTimestamp(int slot) {
+        synchronized (levels) {
+            return slots.getTimestamp(slot);
+        }
+    }
+
+    /**
+     * Runs the task holding this book's lock
+     */
+    public void runExclusively(Runnable task) {
+        synchronized (levels) {
+            task.run();
+        }
+    }
+
+    /**
+     * Same lines as OrderBook.getOrderSummary
+     */
+    public String[] getOrderSummary(int length) {
+        synchronized (levels) {
+            String[] summary = new String[Math.min(length, levels.size())];
+            StringBuilder line = new StringBuilder();
+            int i = 0;
+            for (Level level : levels.keySet()) {
+                if (i == summary.length) {
+                    break;
+                }
+                line.setLength(0);
+                tickConfig.appendQuantity(line, level.quantityLots).append(OutputFormatter.PRICE_SEPARATOR);
+                summary[i++] = tickConfig.appendPrice(line, level.priceTicks).toString();
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * Copies the top of the book into caller-owned arrays, best price first
+     *
+     * @return the number of levels copied
+     */
+    public int getDepth(long[] priceTicks, long[] quantityLots) {
+        int length = Math.min(priceTicks.length, quantityLots.length);
+        synchronized (levels) {
+            int i = 0;
+            for (Level level : levels.keySet()) {
+                if (i == length) {
+                    break;
+                }
+                priceTicks[i] = level.priceTicks;
+                quantityLots[i] = level.quantityLots;
+                i++;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * @return the number of price levels
+     */
+    public int getSize() {
+        synchronized (levels) {
+            return levels.size();
+        }
+    }
+
+    public int getOrderCount() {
+        synchronized (levels) {
+            return index.size();
+        }
+    }
+
+    /**
+     * @return the number of users with orders resting
+     */
+    int getUserCount() {
+        synchronized (levels) {
+            return userIndexes.size();
+        }
+    }
+
+    /**
+     * @return bytes of direct memory held by the order records and index
+     */
+    public long getOffHeapMemoryUsed() {
+        synchronized (levels) {
+            return slots.getMemoryUsed() + index.getMemoryUsed();
+        }
+    }
+
+    public Side getSide() {
+        return bookSide;
+    }
+
+    public TickConfig getTickConfig() {
+        return tickConfig;
+    }
+}
@@ -0,0 +1,175 @@
+package com.dak.crypto.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Fixed-size order records in direct memory, addressed by slot number.
+ * Memory is allocated a chunk at a time and freed slots are reused, so the
+ * heap only holds one small ByteBuffer per chunk however many orders there
+ * are.  Not thread safe.
+ * <pre>
+ * slot: orderIdMsb(8) orderIdLsb(8) quantityLots(8) priceTicks(8) timestamp(8) prev(4) next(4) userIndex(4) levelId(4) unused(8)
+ * </pre>
+ */
+public final class OrderSlots {
+
+    public static final int NO_SLOT = -1;
+
+    static final int SLOT_SIZE = 64;
+    private static final int SLOT_BITS = 6;
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SLOTS = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SLOTS - 1;
+
+    private static final int ORDER_ID_MSB = 0;
+    private static final int ORDER_ID_LSB = 8;
+    private static final int QUANTITY_LOTS = 16;
+    private static final int PRICE_TICKS = 24;
+    private static final int TIMESTAMP = 32;
+    private static final int PREV = 40;
+    // Also links the free slots
+    private static final int NEXT = 44;
+    private static final int USER_INDEX = 48;
+    private static final int LEVEL_ID = 52;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int freeSlot = NO_SLOT;
+    private int usedSlots;
+
+    /**
+     * @param initialCapacity slots allocated up front
+     */
+    public OrderSlots(int initialCapacity) {
+        while (getCapacity() < initialCapacity) {
+            addChunk();
+        }
+    }
+
+    /**
+     * @return a slot whose fields are all to be set by the caller
+     */
+    public int allocate() {
+        if (freeSlot == NO_SLOT) {
+            addChunk();
+        }
+        int slot = freeSlot;
+        freeSlot = getNext(slot);
+        usedSlots++;
+        return slot;
+    }
+
+    public void free(int slot) {
+        setNext(slot, freeSlot);
+        freeSlot = slot;
+        usedSlots--;
+    }
+
+    private void addChunk() {
+        if (chunks.length == (Integer.MAX_VALUE >> CHUNK_BITS)) {
+            throw new RuntimeException(String.format("Order slots are full at %d", getCapacity()));
+        }
+        int first = chunks.length << CHUNK_BITS;
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        chunks[chunks.length - 1] = ByteBuffer.allocateDirect(CHUNK_SLOTS * SLOT_SIZE).order(ByteOrder.nativeOrder());
+        // Lowest slot first
+        for (int slot = first + CHUNK_SLOTS - 1; slot >= first; slot--) {
+            setNext(slot, freeSlot);
+            freeSlot = slot;
+        }
+    }
+
+    public int getCapacity() {
+        return chunks.length << CHUNK_BITS;
+    }
+
+    public int getUsedSlots() {
+        return usedSlots;
+    }
+
+    /**
+     * @return bytes of direct memory held
+     */
+    public long getMemoryUsed() {
+        return (long) getCapacity() * SLOT_SIZE;
+    }
+
+    private static int offset(int slot, int field) {
+        return ((slot & CHUNK_MASK) << SLOT_BITS) + field;
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> CHUNK_BITS];
+    }
+
+    public long getOrderIdMsb(int slot) {
+        return chunk(slot).getLong(offset(slot, ORDER_ID_MSB));
+    }
+
+    public long getOrderIdLsb(int slot) {
+        return chunk(slot).getLong(offset(slot, ORDER_ID_LSB));
+    }
+
+    public void setOrderId(int slot, long msb, long lsb) {
+        ByteBuffer chunk = chunk(slot);
+        chunk.putLong(offset(slot, ORDER_ID_MSB), msb);
+        chunk.putLong(offset(slot, ORDER_ID_LSB), lsb);
+    }
+
+    public long getQuantityLots(int slot) {
+        return chunk(slot).getLong(offset(slot, QUANTITY_LOTS));
+    }
+
+    public void setQuantityLots(int slot, long quantityLots) {
+        chunk(slot).putLong(offset(slot, QUANTITY_LOTS), quantityLots);
+    }
+
+    public long getPriceTicks(int slot) {
+        return chunk(slot).getLong(offset(slot, PRICE_TICKS));
+    }
+
+    public void setPriceTicks(int slot, long priceTicks) {
+        chunk(slot).putLong(offset(slot, PRICE_TICKS), priceTicks);
+    }
+
+    public long getTimestamp(int slot) {
+        return chunk(slot).getLong(offset(slot, TIMESTAMP));
+    }
+
+    public void setTimestamp(int slot, long timestamp) {
+        chunk(slot).putLong(offset(slot, TIMESTAMP), timestamp);
+    }
+
+    public int getPrev(int slot) {
+        return chunk(slot).getInt(offset(slot, PREV));
+    }
+
+    public void setPrev(int slot, int prev) {
+        chunk(slot).putInt(offset(slot, PREV), prev);
+    }
+
+    public int getNext(int slot) {
+        return chunk(slot).getInt(offset(slot, NEXT));
+    }
+
+    public void setNext(int slot, int next) {
+        chunk(slot).putInt(offset(slot, NEXT), next);
+    }
+
+    public int getUserIndex(int slot) {
+        return chunk(slot).getInt(offset(slot, USER_INDEX));
+    }
+
+    public void setUserIndex(int slot, int userIndex) {
+        chunk(slot).putInt(offset(slot, USER_INDEX), userIndex);
+    }
+
+    public int getLevelId(int slot) {
+        return chunk(slot).getInt(offset(slot, LEVEL_ID));
+    }
+
+    public void setLevelId(int slot, int levelId) {
+        chunk(slot).putInt(offset(slot, LEVEL_ID), levelId);
+    }
+}
@@ -0,0 +1,149 @@
+package com.dak.crypto.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Order id to slot hash table in direct memory, open addressing with
+ * linear probing, kept at most half full.  Not thread safe.
+ * <pre>
+ * entry: orderIdMsb(8) orderIdLsb(8) slot + 1(4) unused(4), slot + 1 is 0 when empty
+ * </pre>
+ */
+final class SlotIndex {
+
+    private static final int ENTRY_SIZE = 24;
+    private static final int MSB = 0;
+    private static final int LSB = 8;
+    private static final int SLOT = 16;
+    private static final int MAX_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / ENTRY_SIZE);
+
+    private ByteBuffer table;
+    private int mask;
+    private int size;
+
+    SlotIndex(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2L && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        table = ByteBuffer.allocateDirect(capacity * ENTRY_SIZE).order(ByteOrder.nativeOrder());
+        mask = capacity - 1;
+    }
+
+    private static int hash(long msb, long lsb) {
+        // The murmur3 finaliser, sequential ids differ only in the low bits
+        long h = msb ^ (lsb * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private int slotAt(int index) {
+        return table.getInt(index * ENTRY_SIZE + SLOT) - 1;
+    }
+
+    private boolean matches(int index, long msb, long lsb) {
+        int offset = index * ENTRY_SIZE;
+        return table.getLong(offset + MSB) == msb && table.getLong(offset + LSB) == lsb;
+    }
+
+    /**
+     * @return where the id is, or the empty entry where it would go
+     */
+    private int find(long msb, long lsb) {
+        int index = hash(msb, lsb) & mask;
+        while (slotAt(index) != OrderSlots.NO_SLOT && !matches(index, msb, lsb)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    int get(long msb, long lsb) {
+        return slotAt(find(msb, lsb));
+    }
+
+    /**
+     * @return false if the id is already present
+     */
+    boolean put(long msb, long lsb, int slot) {
+        if ((size + 1) * 2L > mask + 1) {
+            resize();
+        }
+        int index = find(msb, lsb);
+        if (slotAt(index) != OrderSlots.NO_SLOT) {
+            return false;
+        }
+        write(index, msb, lsb, slot);
+        size++;
+        return true;
+    }
+
+    private void write(int index, long msb, long lsb, int slot) {
+        int offset = index * ENTRY_SIZE;
+        table.putLong(offset + MSB, msb);
+        table.putLong(offset + LSB, lsb);
+        table.putInt(offset + SLOT, slot + 1);
+    }
+
+    /**
+     * @return the slot the id was at, NO_SLOT if absent
+     */
+    int remove(long msb, long lsb) {
+        int index = find(msb, lsb);
+        int slot = slotAt(index);
+        if (slot == OrderSlots.NO_SLOT) {
+            return slot;
+        }
+        // Shift back later entries of the probe sequence into the gap
+        int gap = index;
+        for (int next = (gap + 1) & mask; slotAt(next) != OrderSlots.NO_SLOT; next = (next + 1) & mask) {
+            int offset = next * ENTRY_SIZE;
+            long nextMsb = table.getLong(offset + MSB);
+            long nextLsb = table.getLong(offset + LSB);
+            int home = hash(nextMsb, nextLsb) & mask;
+            // Move it unless its home lies cyclically after the gap, up to its position
+            boolean stays = gap <= next ? (home > gap && home <= next) : (home > gap || home <= next);
+            if (!stays) {
+                write(gap, nextMsb, nextLsb, slotAt(next));
+                gap = next;
+            }
+        }
+        table.putInt(gap * ENTRY_SIZE + SLOT, 0);
+        size--;
+        return slot;
+    }
+
+    private void resize() {
+        int capacity = mask + 1;
+        if (capacity >= MAX_CAPACITY) {
+            throw new RuntimeException(String.format("Order index is full at %d orders", size));
+        }
+        ByteBuffer old = table;
+        allocate(capacity * 2);
+        for (int index = 0; index < capacity; index++) {
+            int offset = index * ENTRY_SIZE;
+            int slot = old.getInt(offset + SLOT) - 1;
+            if (slot != OrderSlots.NO_SLOT) {
+                long msb = old.getLong(offset + MSB);
+                long lsb = old.getLong(offset + LSB);
+                write(find(msb, lsb), msb, lsb, slot);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getMemoryUsed() {
+        return (long) table.capacity();
+    }
+}
@@ -0,0 +1,11 @@
+package com.dak.crypto.order;
+
+import java.util.UUID;
+
+/**
+ * Changes the price and unfilled quantity of a resting order, given by
+ * getPriceTicks() and getQuantityLots()
+ */
+public interface AmendOrder {
+    UUID getOriginalOrderId();
+}
@@ -0,0 +1,79 @@
+package com.dak.crypto.order;
+
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.Side;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public class CryptoMarketAmendOrder implements CryptoOrder, AmendOrder {
+
+    private final UUID orderId;
+    private final UUID originalOrderId;
+    private final Cryptocurrency coinType;
+    private final long quantityLots;
+    private final long priceTicks;
+
+    /**
+     * @param quantityLots the new unfilled quantity of the original order
+     * @param priceTicks the new price of the original order
+     */
+    public CryptoMarketAmendOrder(UUID orderId, UUID originalOrderId, Cryptocurrency coinType, long quantityLots, long priceTicks) {
+        this.orderId = orderId;
+        this.originalOrderId = originalOrderId;
+        this.coinType = coinType;
+        this.quantityLots = quantityLots;
+        this.priceTicks = priceTicks;
+
+        assert(orderId != null && originalOrderId != null && coinType != null);
+    }
+
+    @Override
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    @Override
+    public UUID getOriginalOrderId() {
+        return originalOrderId;
+    }
+
+    /**
+     * @return null, the side is that of the original order
+     */
+    @Override
+    public Side getSide() {
+        return null;
+    }
+
+    @Override
+    public BigDecimal getQuantity() {
+        return coinType.getTickConfig().toQuantity(quantityLots);
+    }
+
+    @Override
+    public BigDecimal getPrice() {
+        return coinType.getTickConfig().toPrice(priceTicks);
+    }
+
+    @Override
+    public String getUserId() {
+        return null;
+    }
+
+    @Override
+    public Cryptocurrency getCoinType() {
+        return coinType;
+    }
+
+    @Override
+    public long getQuantityLots() {
+        return quantityLots;
+    }
+
+    @Override
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+}
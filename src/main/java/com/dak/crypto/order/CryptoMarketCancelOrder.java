@@ -17,6 +17,13 @@ public class CryptoMarketCancelOrder extends MarketCancelOrder implements Crypto
         assert(coinType != null);
     }
 
+    public CryptoMarketCancelOrder(UUID orderId, UUID originalOrderId, Cryptocurrency coinType) {
+        super(orderId, originalOrderId);
+        this.coinType = coinType;
+
+        assert(coinType != null);
+    }
+
     @Override
     public String getUserId() {
         return null;
@@ -27,4 +34,17 @@ public class CryptoMarketCancelOrder extends MarketCancelOrder implements Crypto
         return coinType;
     }
 
+    /**
+     * @return 0 for a cancel without the original order's price
+     */
+    @Override
+    public long getPriceTicks() {
+        return getPrice() == null ? 0 : CryptoOrder.super.getPriceTicks();
+    }
+
+    @Override
+    public long getQuantityLots() {
+        return 0;
+    }
+
 }
@@ -9,18 +9,36 @@ import java.util.UUID;
 
 public class CryptoMarketOrder extends MarketOrder implements CryptoOrder {
 
+    // Marks an order created from BigDecimals, ticks and lots are derived on request
+    private static final long NOT_SCALED = Long.MIN_VALUE;
+
     private final String userId;
     private final Cryptocurrency coinType;
+    private final long quantityLots;
+    private final long priceTicks;
 
     public CryptoMarketOrder(UUID orderId, String userId, Cryptocurrency coinType,
                              Side side, BigDecimal quantity, BigDecimal price) {
         super(orderId, side, quantity, price);
         this.coinType = coinType;
         this.userId = userId;
+        this.quantityLots = NOT_SCALED;
+        this.priceTicks = NOT_SCALED;
 
         assert(coinType != null && userId != null);
     }
 
+    public CryptoMarketOrder(UUID orderId, String userId, Cryptocurrency coinType,
+                             Side side, long quantityLots, long priceTicks) {
+        super(orderId, side, coinType.getTickConfig().toQuantity(quantityLots), coinType.getTickConfig().toPrice(priceTicks));
+        this.coinType = coinType;
+        this.userId = userId;
+        this.quantityLots = quantityLots;
+        this.priceTicks = priceTicks;
+
+        assert(userId != null);
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(super.hashCode(), userId, coinType);
@@ -33,4 +51,14 @@ public class CryptoMarketOrder extends MarketOrder implements CryptoOrder {
     public Cryptocurrency getCoinType() {
         return coinType;
     }
+
+    @Override
+    public long getPriceTicks() {
+        return priceTicks != NOT_SCALED ? priceTicks : CryptoOrder.super.getPriceTicks();
+    }
+
+    @Override
+    public long getQuantityLots() {
+        return quantityLots != NOT_SCALED ? quantityLots : CryptoOrder.super.getQuantityLots();
+    }
 }
@@ -0,0 +1,48 @@
+package com.dak.crypto.order;
+
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.Side;
+
+import java.util.UUID;
+
+public class CryptoMarketStopOrder extends CryptoMarketOrder implements StopOrder {
+
+    private final long triggerPriceTicks;
+    private final boolean stopLoss;
+
+    /**
+     * A stop-limit order
+     *
+     * @param triggerPriceTicks
+     * @param priceTicks the limit price once triggered
+     */
+    public CryptoMarketStopOrder(UUID orderId, String userId, Cryptocurrency coinType,
+                                 Side side, long quantityLots, long triggerPriceTicks, long priceTicks) {
+        this(orderId, userId, coinType, side, quantityLots, triggerPriceTicks, priceTicks, false);
+    }
+
+    /**
+     * A stop-loss order, priced at its trigger until it trades
+     */
+    public CryptoMarketStopOrder(UUID orderId, String userId, Cryptocurrency coinType,
+                                 Side side, long quantityLots, long triggerPriceTicks) {
+        this(orderId, userId, coinType, side, quantityLots, triggerPriceTicks, triggerPriceTicks, true);
+    }
+
+    private CryptoMarketStopOrder(UUID orderId, String userId, Cryptocurrency coinType,
+                                  Side side, long quantityLots, long triggerPriceTicks, long priceTicks, boolean stopLoss) {
+        super(orderId, userId, coinType, side, quantityLots, priceTicks);
+        this.triggerPriceTicks = triggerPriceTicks;
+        this.stopLoss = stopLoss;
+    }
+
+    @Override
+    public long getTriggerPriceTicks() {
+        return triggerPriceTicks;
+    }
+
+    @Override
+    public boolean isStopLoss() {
+        return stopLoss;
+    }
+}
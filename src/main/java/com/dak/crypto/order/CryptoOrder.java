@@ -8,4 +8,18 @@ public interface CryptoOrder extends Order {
 
     Cryptocurrency getCoinType();
 
+    /**
+     * @return the price as a whole number of ticks of the coin's tick size
+     */
+    default long getPriceTicks() {
+        return getCoinType().getTickConfig().toTicks(getPrice());
+    }
+
+    /**
+     * @return the quantity as a whole number of lots of the coin's lot size
+     */
+    default long getQuantityLots() {
+        return getCoinType().getTickConfig().toLots(getQuantity());
+    }
+
 }
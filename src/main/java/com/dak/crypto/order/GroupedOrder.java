@@ -1,20 +1,44 @@
 package com.dak.crypto.order;
 
 import com.dak.crypto.Side;
+import com.dak.crypto.TickConfig;
 
 import java.math.BigDecimal;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.UUID;
 
+/**
+ * All orders resting at one price, held in time priority as an intrusive
+ * doubly-linked queue of RestingOrders
+ */
 public class GroupedOrder implements Order {
 
-    private final List<Order> orders;
+    private long priceTicks;
+    private final TickConfig tickConfig;
+    private RestingOrder head;
+    private RestingOrder tail;
+    private int size;
+    // Running total of the unfilled quantity of every order in the queue
+    private long quantityLots;
+    // Neighbouring levels of the book, in price priority
+    private GroupedOrder betterLevel;
+    private GroupedOrder worseLevel;
+    // Free list link of OrderNodePool, only set while the level is pooled
+    GroupedOrder nextFree;
 
-    public GroupedOrder(Order order1, Order order2) {
-        orders = new LinkedList<>();
-        orders.add(order1);
-        orders.add(order2);
+    public GroupedOrder(long priceTicks, TickConfig tickConfig) {
+        this.priceTicks = priceTicks;
+        this.tickConfig = tickConfig;
+    }
+
+    /**
+     * Moves an empty, unlinked level to a new price so OrderNodePool can reuse it
+     */
+    void reset(long priceTicks) {
+        if (size != 0 || betterLevel != null || worseLevel != null) {
+            throw new RuntimeException(String.format("Price level %d is still in use", this.priceTicks));
+        }
+        this.priceTicks = priceTicks;
+        this.quantityLots = 0;
     }
 
     public UUID getOrderId() {
@@ -22,28 +46,154 @@ public class GroupedOrder implements Order {
     }
 
     public Side getSide() {
-        return orders.get(0).getSide();
+        return head.getOrder().getSide();
     }
 
     public BigDecimal getQuantity() {
-        return orders.stream().map(o -> o.getQuantity()).reduce(new BigDecimal(0), (a,b) -> a.add(b));
+        return tickConfig.toQuantity(getQuantityLots());
     }
 
     public BigDecimal getPrice() {
-        return orders.get(0).getPrice();
+        return tickConfig.toPrice(priceTicks);
+    }
+
+    /**
+     * @return the unfilled quantity of all orders at this price, in lots
+     */
+    public long getQuantityLots() {
+        return quantityLots;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    /**
+     * @return the next level down the book, or null at the bottom
+     */
+    public GroupedOrder getNextLevel() {
+        return worseLevel;
+    }
+
+    /**
+     * Links this level into the book's chain of levels
+     *
+     * @param better the level immediately above it, or null if it is the new best
+     * @param worse the level immediately below it, or null if it is the new bottom
+     */
+    public void linkLevel(GroupedOrder better, GroupedOrder worse) {
+        this.betterLevel = better;
+        this.worseLevel = worse;
+        if (better != null) {
+            better.worseLevel = this;
+        }
+        if (worse != null) {
+            worse.betterLevel = this;
+        }
+    }
+
+    /**
+     * Removes this level from the book's chain of levels
+     */
+    public void unlinkLevel() {
+        if (betterLevel != null) {
+            betterLevel.worseLevel = worseLevel;
+        }
+        if (worseLevel != null) {
+            worseLevel.betterLevel = betterLevel;
+        }
+        betterLevel = null;
+        worseLevel = null;
+    }
+
+    public RestingOrder getFirst() {
+        return head;
     }
 
-    public void addOrder(Order order) {
-        this.orders.add(order);
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void addOrder(RestingOrder node) {
+        if (node.level != null) {
+            throw new RuntimeException("Order is already resting in a price level");
+        }
+        node.level = this;
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        size++;
+        quantityLots += node.getQuantityLots();
     }
 
     /**
      *
-     * @param order
+     * @param node
      * @return true if this group is now empty
      */
-    public boolean removeOrder(Order order) {
-        orders.remove(order);
-        return (orders.size() == 0);
+    public boolean removeOrder(RestingOrder node) {
+        if (node.level != this) {
+            throw new RuntimeException("Order does not rest in this price level");
+        }
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.level = null;
+        node.prev = null;
+        node.next = null;
+        size--;
+        quantityLots -= node.getQuantityLots();
+        return (size == 0);
+    }
+
+    /**
+     * Reduces the unfilled quantity of an order at this price, it keeps its
+     * place in the queue
+     *
+     * @param node
+     * @param quantityLots
+     * @return true if the order is now completely filled
+     */
+    public boolean fillOrder(RestingOrder node, long quantityLots) {
+        if (node.level != this) {
+            throw new RuntimeException("Order does not rest in this price level");
+        }
+        if (quantityLots <= 0 || quantityLots > node.getQuantityLots()) {
+            throw new RuntimeException(String.format("Invalid fill of %d lots against %d resting", quantityLots, node.getQuantityLots()));
+        }
+        node.reduceQuantity(quantityLots);
+        this.quantityLots -= quantityLots;
+        return node.getQuantityLots() == 0;
+    }
+
+    /**
+     * Linear search of the level, prefer holding on to the RestingOrder
+     *
+     * @param orderId
+     * @return the resting order with the given id, or null
+     */
+    public RestingOrder findOrder(UUID orderId) {
+        for (RestingOrder node = head; node != null; node = node.next) {
+            if (orderId.equals(node.getOrder().getOrderId())) {
+                return node;
+            }
+        }
+        return null;
     }
 }
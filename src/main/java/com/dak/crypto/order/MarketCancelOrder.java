@@ -22,6 +22,18 @@ public class MarketCancelOrder implements Order,CancelOrder {
         assert(orderId != null && originalOrderId != null && side != null && originalOrderPrice != null);
     }
 
+    /**
+     * A cancel identifying the original order by id alone, without its side and price
+     */
+    public MarketCancelOrder(UUID orderId, UUID originalOrderId) {
+        this.orderId = orderId;
+        this.originalOrderId = originalOrderId;
+        this.side = null;
+        this.originalOrderPrice = null;
+
+        assert(orderId != null && originalOrderId != null);
+    }
+
     @Override
     public UUID getOrderId() {
         return orderId;
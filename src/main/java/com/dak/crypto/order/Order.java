@@ -15,6 +15,11 @@ public interface Order {
 
     BigDecimal getPrice();
 
-
-
+    /**
+     * @return an order that stays the same after this call, this order
+     *         itself unless it is a view of a buffer that will be reused
+     */
+    default Order detach() {
+        return this;
+    }
 }
\ No newline at end of file
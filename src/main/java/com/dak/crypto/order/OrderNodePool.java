@@ -0,0 +1,87 @@
+package com.dak.crypto.order;
+
+import com.dak.crypto.TickConfig;
+
+/**
+ * Free lists of RestingOrders and GroupedOrders for one OrderBook, so an
+ * order or level leaving the book is reused by the next one to arrive
+ * instead of being left for the garbage collector.  The book's price index
+ * may still allocate, see OrderBook.  Not thread safe, it is
+ * only used by the book's writer or under the book's lock.
+ */
+public final class OrderNodePool {
+
+    private final TickConfig tickConfig;
+    private RestingOrder freeOrders;
+    private GroupedOrder freeLevels;
+    private int freeOrderCount;
+    private int freeLevelCount;
+
+    /**
+     * @param tickConfig of the levels handed out
+     * @param initialSize orders and levels created up front
+     */
+    public OrderNodePool(TickConfig tickConfig, int initialSize) {
+        this.tickConfig = tickConfig;
+        for (int i = 0; i < initialSize; i++) {
+            release(new RestingOrder(null, 0, 0));
+            release(new GroupedOrder(0, tickConfig));
+        }
+    }
+
+    public RestingOrder acquireOrder(Order order, long priceTicks, long quantityLots) {
+        RestingOrder node = freeOrders;
+        if (node == null) {
+            return new RestingOrder(order, priceTicks, quantityLots);
+        }
+        freeOrders = node.next;
+        node.next = null;
+        freeOrderCount--;
+        node.init(order, priceTicks, quantityLots);
+        return node;
+    }
+
+    /**
+     * Takes back an order that has left its book, it must not be used again
+     */
+    public void release(RestingOrder node) {
+        if (node.level != null) {
+            throw new RuntimeException("Order is still resting in a price level");
+        }
+        node.init(null, 0, 0);
+        node.prev = null;
+        node.next = freeOrders;
+        freeOrders = node;
+        freeOrderCount++;
+    }
+
+    public GroupedOrder acquireLevel(long priceTicks) {
+        GroupedOrder level = freeLevels;
+        if (level == null) {
+            return new GroupedOrder(priceTicks, tickConfig);
+        }
+        freeLevels = level.nextFree;
+        level.nextFree = null;
+        freeLevelCount--;
+        level.reset(priceTicks);
+        return level;
+    }
+
+    /**
+     * Takes back an empty level that has been unlinked from its book
+     */
+    public void release(GroupedOrder level) {
+        level.reset(0);
+        level.nextFree = freeLevels;
+        freeLevels = level;
+        freeLevelCount++;
+    }
+
+    public int getFreeOrderCount() {
+        return freeOrderCount;
+    }
+
+    public int getFreeLevelCount() {
+        return freeLevelCount;
+    }
+}
@@ -0,0 +1,61 @@
+package com.dak.crypto.order;
+
+/**
+ * An order resting in an OrderBook.  Doubles as the node of its price
+ * level's queue, so the order can be unlinked without searching the level
+ */
+public class RestingOrder {
+
+    private Order order;
+    private long priceTicks;
+    private long quantityLots;
+
+    // Maintained by GroupedOrder
+    GroupedOrder level;
+    RestingOrder prev;
+    RestingOrder next;
+
+    public RestingOrder(Order order, long priceTicks, long quantityLots) {
+        init(order, priceTicks, quantityLots);
+    }
+
+    // Also used by OrderNodePool to recycle the node
+    void init(Order order, long priceTicks, long quantityLots) {
+        this.order = order;
+        this.priceTicks = priceTicks;
+        this.quantityLots = quantityLots;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    /**
+     * @return the unfilled quantity in lots
+     */
+    public long getQuantityLots() {
+        return quantityLots;
+    }
+
+    void reduceQuantity(long lots) {
+        quantityLots -= lots;
+    }
+
+    /**
+     * @return the price level holding this order, null once it has left the book
+     */
+    public GroupedOrder getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the next order in time priority at the same price
+     */
+    public RestingOrder getNext() {
+        return next;
+    }
+}
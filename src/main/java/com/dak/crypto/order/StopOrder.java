@@ -0,0 +1,17 @@
+package com.dak.crypto.order;
+
+/**
+ * Held off the books until the market trades at or through the trigger
+ * price: at or above it for a buy, at or below it for a sell.  A stop-limit
+ * order then becomes a limit order at getPriceTicks(), a stop-loss order
+ * trades against whatever the other side holds and the rest is cancelled.
+ */
+public interface StopOrder {
+
+    long getTriggerPriceTicks();
+
+    /**
+     * @return true if the order takes any price once triggered
+     */
+    boolean isStopLoss();
+}
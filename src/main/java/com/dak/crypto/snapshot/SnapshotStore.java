@@ -0,0 +1,358 @@
+package com.dak.crypto.snapshot;
+
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.OrderBoardSnapshot;
+import com.dak.crypto.codec.OrderCodec;
+import com.dak.crypto.journal.MappedOrderJournal;
+import com.dak.crypto.order.CryptoOrder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary snapshots of every OrderBoard in a market, kept as numbered files
+ * in a directory.  Each board is copied at a consistent point on its own
+ * thread, the file is then written on the store's thread so order entry is
+ * only held up for the copy.
+ * <pre>
+ * file:  magic(4) version(4) journalPosition(8) coins(2) OrderCodec coin record... delisted(2) coin(1)... boards(4) board...
+ * board: coin(1) journalPosition(8) lastTradePriceTicks(8) orders(4) order... stops(4) OrderCodec stop...
+ * order: remainingLots(8) OrderCodec new order
+ * </pre>
+ * The file's journal position is taken before the boards are listed, so
+ * coins without a board in the snapshot are replayed from there.  The coin
+ * records map the coin ids in the file to coins by name.
+ */
+public class SnapshotStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x43534E50;
+    private static final int VERSION = 3;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+    private final int retained;
+    private final AtomicLong sequence;
+    private final ScheduledExecutorService writer;
+
+    public SnapshotStore(Path directory) {
+        this(directory, 2);
+    }
+
+    /**
+     * @param directory created if it does not exist
+     * @param retained number of the latest snapshots kept, older ones are deleted
+     */
+    public SnapshotStore(Path directory, int retained) {
+        if (retained < 1) {
+            throw new RuntimeException("At least one snapshot must be retained: " + retained);
+        }
+        this.directory = directory;
+        this.retained = retained;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to create snapshot directory %s", directory), e);
+        }
+        Map.Entry<Long, Path> latest = listSnapshots().lastEntry();
+        this.sequence = new AtomicLong(latest == null ? 0 : latest.getKey());
+        this.writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "SnapshotStore-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return completes with the snapshot file once it has been written
+     */
+    public CompletableFuture<Path> takeSnapshot(CryptoMarket market) {
+        return capture(market).thenApplyAsync(this::write, writer);
+    }
+
+    /**
+     * Takes a snapshot every period until the store is closed.  Failures are
+     * passed to the store thread's uncaught exception handler.
+     */
+    public void scheduleSnapshots(CryptoMarket market, long period, TimeUnit unit) {
+        writer.scheduleAtFixedRate(() -> {
+            try {
+                write(capture(market).join());
+            } catch (RuntimeException e) {
+                // Keep later snapshots running
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }, period, period, unit);
+    }
+
+    private static CompletableFuture<Contents> capture(CryptoMarket market) {
+        // Before the coins are listed, so a board listed after it has no earlier records
+        long journalPosition = market.getJournalPosition();
+        List<Cryptocurrency> delisted = market.getDelistedCoins();
+        List<CompletableFuture<OrderBoardSnapshot>> boards = new ArrayList<>();
+        for (Cryptocurrency crypto : market.getListedCoins()) {
+            boards.add(market.takeSnapshotAsync(crypto));
+        }
+        return CompletableFuture.allOf(boards.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<OrderBoardSnapshot> snapshots = new ArrayList<>(boards.size());
+            for (CompletableFuture<OrderBoardSnapshot> board : boards) {
+                snapshots.add(board.join());
+            }
+            return new Contents(journalPosition, delisted, snapshots);
+        });
+    }
+
+    private Path write(Contents contents) {
+        return write(contents.journalPosition, contents.delisted, contents.boards);
+    }
+
+    /**
+     * Writes the snapshots as the latest file, replacing it atomically so a
+     * crash never leaves a partial snapshot
+     *
+     * @param journalPosition where coins without a board here are replayed from
+     * @param delisted coins delisted when the snapshot was taken
+     * @param snapshots
+     * @return the file written
+     */
+    public Path write(long journalPosition, List<Cryptocurrency> delisted, List<OrderBoardSnapshot> snapshots) {
+        Set<Cryptocurrency> coins = new LinkedHashSet<>(delisted);
+        for (OrderBoardSnapshot snapshot : snapshots) {
+            coins.add(snapshot.getCoinType());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(encodedLength(coins, delisted, snapshots));
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(journalPosition);
+        buffer.putShort((short) coins.size());
+        for (Cryptocurrency coinType : coins) {
+            OrderCodec.encodeCoin(buffer, coinType);
+        }
+        buffer.putShort((short) delisted.size());
+        for (Cryptocurrency coinType : delisted) {
+            buffer.put((byte) coinType.getId());
+        }
+        buffer.putInt(snapshots.size());
+        for (OrderBoardSnapshot snapshot : snapshots) {
+            buffer.put((byte) snapshot.getCoinType().getId());
+            buffer.putLong(snapshot.getJournalPosition());
+            buffer.putLong(snapshot.getLastTradePriceTicks());
+            buffer.putInt(snapshot.size());
+            for (int i = 0; i < snapshot.size(); i++) {
+                CryptoOrder order = snapshot.getOrder(i);
+                buffer.putLong(snapshot.getRemainingLots(i));
+                OrderCodec.encodeNewOrder(buffer, order, snapshot.getPriceTicks(i), order.getQuantityLots());
+            }
+            buffer.putInt(snapshot.getStopOrderCount());
+            for (int i = 0; i < snapshot.getStopOrderCount(); i++) {
+                OrderCodec.encodeStop(buffer, snapshot.getStopOrder(i));
+            }
+        }
+        buffer.flip();
+
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, sequence.incrementAndGet(), SUFFIX));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to write snapshot %s", file), e);
+        }
+        deleteOldSnapshots();
+        return file;
+    }
+
+    private static int encodedLength(Set<Cryptocurrency> coins, List<Cryptocurrency> delisted, List<OrderBoardSnapshot> snapshots) {
+        long length = 4 + 4 + 8 + 2 + 2 + delisted.size() + 4;
+        for (Cryptocurrency coinType : coins) {
+            length += OrderCodec.coinLength(coinType);
+        }
+        for (OrderBoardSnapshot snapshot : snapshots) {
+            length += 1 + 8 + 8 + 4 + 4;
+            for (int i = 0; i < snapshot.size(); i++) {
+                length += 8 + OrderCodec.newOrderLength(snapshot.getOrder(i));
+            }
+            for (int i = 0; i < snapshot.getStopOrderCount(); i++) {
+                length += OrderCodec.stopLength(snapshot.getStopOrder(i));
+            }
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new RuntimeException(String.format("Snapshot of %d bytes is too large", length));
+        }
+        return (int) length;
+    }
+
+    private void deleteOldSnapshots() {
+        TreeMap<Long, Path> snapshots = listSnapshots();
+        while (snapshots.size() > retained) {
+            try {
+                Files.deleteIfExists(snapshots.pollFirstEntry().getValue());
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Unable to delete old snapshots in %s", directory), e);
+            }
+        }
+    }
+
+    /**
+     * @return the snapshot files by number
+     */
+    private TreeMap<Long, Path> listSnapshots() {
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                snapshots.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to list snapshots in %s", directory), e);
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return the boards in the latest snapshot, empty if there is none
+     */
+    public List<OrderBoardSnapshot> readLatest() {
+        return readLatestContents().boards;
+    }
+
+    private Contents readLatestContents() {
+        Map.Entry<Long, Path> latest = listSnapshots().lastEntry();
+        return latest == null ? new Contents(0, new ArrayList<>(), new ArrayList<>()) : readContents(latest.getValue());
+    }
+
+    public static List<OrderBoardSnapshot> read(Path file) {
+        return readContents(file).boards;
+    }
+
+    private static Contents readContents(Path file) {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Unable to read snapshot %s", file), e);
+        }
+        int version = buffer.getInt() == MAGIC ? buffer.getInt() : 0;
+        if (version != VERSION) {
+            throw new RuntimeException(String.format("%s is not a version %d snapshot", file, VERSION));
+        }
+        Cryptocurrency[] coins = new Cryptocurrency[Cryptocurrency.MAX_COINS];
+        long journalPosition = buffer.getLong();
+        for (int c = buffer.getShort(); c > 0; c--) {
+            OrderCodec.decodeCoin(buffer, coins);
+        }
+        List<Cryptocurrency> delisted = new ArrayList<>();
+        for (int d = buffer.getShort(); d > 0; d--) {
+            delisted.add(coin(file, coins, buffer.get()));
+        }
+        int boards = buffer.getInt();
+        List<OrderBoardSnapshot> snapshots = new ArrayList<>(boards);
+        for (int b = 0; b < boards; b++) {
+            Cryptocurrency coinType = coin(file, coins, buffer.get());
+            long boardPosition = buffer.getLong();
+            long lastTradePriceTicks = buffer.getLong();
+            int size = buffer.getInt();
+            CryptoOrder[] orders = new CryptoOrder[size];
+            long[] priceTicks = new long[size];
+            long[] remainingLots = new long[size];
+            for (int i = 0; i < size; i++) {
+                remainingLots[i] = buffer.getLong();
+                orders[i] = OrderCodec.decode(buffer, coins);
+                priceTicks[i] = orders[i].getPriceTicks();
+            }
+            CryptoOrder[] stops = new CryptoOrder[buffer.getInt()];
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = OrderCodec.decode(buffer, coins);
+            }
+            snapshots.add(new OrderBoardSnapshot(coinType, boardPosition, orders, priceTicks, remainingLots, stops, lastTradePriceTicks));
+        }
+        return new Contents(journalPosition, delisted, snapshots);
+    }
+
+    private static Cryptocurrency coin(Path file, Cryptocurrency[] coins, byte id) {
+        Cryptocurrency coinType = coins[id & 0xFF];
+        if (coinType == null) {
+            throw new RuntimeException(String.format("%s has no coin record for coin id %d", file, id & 0xFF));
+        }
+        return coinType;
+    }
+
+    /**
+     * Restarts an empty market from the latest snapshot, then replays the
+     * journal records written after it: each board's from its own position,
+     * other coins' from the snapshot's, so delists and new boards since are
+     * replayed too
+     *
+     * @param market empty, writing to the journal
+     * @param journal
+     * @return the number of journal records replayed
+     */
+    public long recover(CryptoMarket market, MappedOrderJournal journal) {
+        Contents contents = readLatestContents();
+        for (Cryptocurrency crypto : contents.delisted) {
+            market.restoreDelisted(crypto);
+        }
+        Map<Cryptocurrency, Long> fromPositions = new HashMap<>();
+        for (OrderBoardSnapshot snapshot : contents.boards) {
+            market.restoreSnapshot(snapshot);
+            fromPositions.put(snapshot.getCoinType(), snapshot.getJournalPosition());
+        }
+        return journal.replay(market, fromPositions, contents.journalPosition);
+    }
+
+    /**
+     * What a snapshot file holds
+     */
+    private static final class Contents {
+
+        private final long journalPosition;
+        private final List<Cryptocurrency> delisted;
+        private final List<OrderBoardSnapshot> boards;
+
+        private Contents(long journalPosition, List<Cryptocurrency> delisted, List<OrderBoardSnapshot> boards) {
+            this.journalPosition = journalPosition;
+            this.delisted = delisted;
+            this.boards = boards;
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stops scheduled snapshots, waiting for one in progress
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.dak.crypto.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer, single-consumer queue over a pre-allocated ring.
+ * Each slot carries a sequence number saying whether it is free for the
+ * producer claiming that position or holds an element for the consumer,
+ * so producers only contend on the tail counter.
+ */
+public class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Only touched by the consumer
+    private long head;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new RuntimeException("Invalid ring buffer capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * May be called from any thread
+     *
+     * @param element
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // Volatile write, ordered before any later read of the consumer's state
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The consumer has not yet freed this slot from the previous lap
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Consumer thread only
+     *
+     * @return the next element, or null if the buffer is empty
+     */
+    public E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.lazySet(index, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * Consumer thread only
+     */
+    public boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -2,29 +2,85 @@ package com.dak.crypto.util;
 
 import com.dak.crypto.Cryptocurrency;
 import com.dak.crypto.Side;
+import com.dak.crypto.order.CryptoMarketAmendOrder;
 import com.dak.crypto.order.CryptoMarketCancelOrder;
 import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.CryptoMarketStopOrder;
 
 import java.math.BigDecimal;
 import java.util.UUID;
 
 public class OrderCreator {
 
+    private static volatile OrderIdGenerator orderIdGenerator = OrderIdGenerator.RANDOM;
+
+    /**
+     * Replaces the source of new order ids, for example with a
+     * SequenceOrderIdGenerator, which is much cheaper under contention
+     */
+    public static void setOrderIdGenerator(OrderIdGenerator generator) {
+        assert generator != null;
+        orderIdGenerator = generator;
+    }
+
+    public static OrderIdGenerator getOrderIdGenerator() {
+        return orderIdGenerator;
+    }
+
+    private static UUID nextOrderId() {
+        return orderIdGenerator.nextOrderId();
+    }
+
     public static CryptoMarketOrder createCryptoMarketOrder(Cryptocurrency crypto,
                                                             String userId,
                                                             Side side,
                                                             BigDecimal quantity,
                                                             BigDecimal price) {
-        return new CryptoMarketOrder(UUID.randomUUID(), userId, crypto, side, quantity, price);
+        return new CryptoMarketOrder(nextOrderId(), userId, crypto, side, quantity, price);
+    }
+
+    public static CryptoMarketOrder createCryptoMarketOrder(Cryptocurrency crypto,
+                                                            String userId,
+                                                            Side side,
+                                                            long quantityLots,
+                                                            long priceTicks) {
+        return new CryptoMarketOrder(nextOrderId(), userId, crypto, side, quantityLots, priceTicks);
     }
 
     public static CryptoMarketCancelOrder createCryptoMarketCancelOrder(UUID originalOrderId,
                                                                         Cryptocurrency crypto,
                                                                         Side side,
                                                                         BigDecimal price) {
-        return new CryptoMarketCancelOrder(UUID.randomUUID(), originalOrderId, crypto, side, price);
+        return new CryptoMarketCancelOrder(nextOrderId(), originalOrderId, crypto, side, price);
+    }
+
+    public static CryptoMarketCancelOrder createCryptoMarketCancelOrder(UUID originalOrderId,
+                                                                        Cryptocurrency crypto) {
+        return new CryptoMarketCancelOrder(nextOrderId(), originalOrderId, crypto);
+    }
+
+    public static CryptoMarketAmendOrder createCryptoMarketAmendOrder(UUID originalOrderId,
+                                                                      Cryptocurrency crypto,
+                                                                      long quantityLots,
+                                                                      long priceTicks) {
+        return new CryptoMarketAmendOrder(nextOrderId(), originalOrderId, crypto, quantityLots, priceTicks);
     }
 
+    public static CryptoMarketStopOrder createStopLimitOrder(Cryptocurrency crypto,
+                                                             String userId,
+                                                             Side side,
+                                                             long quantityLots,
+                                                             long triggerPriceTicks,
+                                                             long priceTicks) {
+        return new CryptoMarketStopOrder(nextOrderId(), userId, crypto, side, quantityLots, triggerPriceTicks, priceTicks);
+    }
 
+    public static CryptoMarketStopOrder createStopLossOrder(Cryptocurrency crypto,
+                                                            String userId,
+                                                            Side side,
+                                                            long quantityLots,
+                                                            long triggerPriceTicks) {
+        return new CryptoMarketStopOrder(nextOrderId(), userId, crypto, side, quantityLots, triggerPriceTicks);
+    }
 
 }
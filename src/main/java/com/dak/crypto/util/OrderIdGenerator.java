@@ -0,0 +1,17 @@
+package com.dak.crypto.util;
+
+import java.util.UUID;
+
+/**
+ * Source of the ids given to new orders by OrderCreator.  Must be safe to
+ * call from any thread.
+ */
+public interface OrderIdGenerator {
+
+    /**
+     * Random UUIDs, drawn from the shared SecureRandom so slow under contention
+     */
+    OrderIdGenerator RANDOM = UUID::randomUUID;
+
+    UUID nextOrderId();
+}
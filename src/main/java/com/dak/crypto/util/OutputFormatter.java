@@ -2,9 +2,78 @@ package com.dak.crypto.util;
 
 import com.dak.crypto.order.Order;
 
+import java.math.BigDecimal;
+
 public class OutputFormatter {
 
+    /**
+     * Between the quantity and price of a summary line
+     */
+    public static final String PRICE_SEPARATOR = " for £";
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Shows the order's quantity and price as given, e.g. "10 for £2.40"
+     */
     public static String formatOutput(Order order) {
-        return order.getQuantity().toPlainString() + " for £" + order.getPrice().toPlainString();
+        return formatOutput(order.getQuantity(), order.getPrice());
+    }
+
+    public static String formatOutput(BigDecimal quantity, BigDecimal price) {
+        return quantity.toPlainString() + PRICE_SEPARATOR + price.toPlainString();
+    }
+
+    /**
+     * How order summaries show a level's quantity and price.  They are built
+     * from ticks and lots, which carry the scale of the tick or lot size rather
+     * than the scale the orders were given in, so trailing zeros are dropped,
+     * keeping at least one decimal place: 10 lots of 1 show as "10.0" and 2.40
+     * as "2.4"
+     */
+    public static String toDisplayString(BigDecimal value) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        return (stripped.scale() < 1 ? stripped.setScale(1) : stripped).toPlainString();
+    }
+
+    /**
+     * Appends unscaledValue x 10^-scale following the same rules as
+     * toDisplayString, without going through BigDecimal or a String
+     *
+     * @param out
+     * @param unscaledValue
+     * @param scale
+     * @return out
+     */
+    public static StringBuilder appendDecimal(StringBuilder out, long unscaledValue, int scale) {
+        if (scale < 0 || scale >= POWERS_OF_TEN.length || unscaledValue == Long.MIN_VALUE) {
+            return out.append(toDisplayString(BigDecimal.valueOf(unscaledValue, scale)));
+        }
+        while (scale > 1 && unscaledValue % 10 == 0) {
+            unscaledValue /= 10;
+            scale--;
+        }
+        if (unscaledValue < 0) {
+            out.append('-');
+            unscaledValue = -unscaledValue;
+        }
+        if (scale == 0) {
+            return out.append(unscaledValue).append(".0");
+        }
+        long divisor = POWERS_OF_TEN[scale];
+        long fraction = unscaledValue % divisor;
+        out.append(unscaledValue / divisor).append('.');
+        // Leading zeros of the fraction
+        for (int digits = scale - 1; digits > 0 && fraction < POWERS_OF_TEN[digits]; digits--) {
+            out.append('0');
+        }
+        return out.append(fraction);
     }
 }
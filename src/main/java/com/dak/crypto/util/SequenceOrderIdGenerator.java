@@ -0,0 +1,59 @@
+package com.dak.crypto.util;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free, monotonically increasing order ids.  The UUID's high word is
+ * fixed per generator and the low word is a sequence number, which can be
+ * used on its own as a compact long id.
+ */
+public class SequenceOrderIdGenerator implements OrderIdGenerator {
+
+    private final long prefix;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Uses a random prefix, so ids from separate generators do not collide
+     */
+    public SequenceOrderIdGenerator() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    public SequenceOrderIdGenerator(long prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public UUID nextOrderId() {
+        return new UUID(prefix, nextSequence());
+    }
+
+    /**
+     * @return the next compact id, starting from 1
+     */
+    public long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    public long getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return true if this generator produced the id
+     */
+    public boolean isGenerated(UUID orderId) {
+        return orderId.getMostSignificantBits() == prefix
+                && orderId.getLeastSignificantBits() > 0
+                && orderId.getLeastSignificantBits() <= sequence.get();
+    }
+
+    /**
+     * @return the compact long id carried by an id from a SequenceOrderIdGenerator
+     */
+    public static long sequenceOf(UUID orderId) {
+        return orderId.getLeastSignificantBits();
+    }
+}
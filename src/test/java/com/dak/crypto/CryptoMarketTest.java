@@ -1,18 +1,38 @@
 package com.dak.crypto;
 
+import com.dak.crypto.metrics.Metrics;
 import com.dak.crypto.order.CryptoMarketCancelOrder;
 import com.dak.crypto.order.CryptoMarketOrder;
 import com.dak.crypto.order.CryptoOrder;
 import com.dak.crypto.util.OrderCreator;
+import com.dak.crypto.util.OutputFormatter;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 public class CryptoMarketTest {
 
@@ -42,8 +62,187 @@ public class CryptoMarketTest {
 
     @Test
     public void testSubmissionToCorrectOrderBoard() {
-        CryptoMarket market = new CryptoMarket();
+        checkSubmissionToCorrectOrderBoard(new CryptoMarket());
+    }
+
+    @Test
+    public void testSubmissionToCorrectOrderBoardOnBoardThreads() {
+        try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, ExecutionMode.BOARD_THREAD)) {
+            checkSubmissionToCorrectOrderBoard(market);
+        }
+    }
+
+    @Test
+    public void testConcurrentAsyncSubmission() throws Exception {
+        final int ordersPerThread = 500;
+        Cryptocurrency[] coins = Cryptocurrency.values();
+        AtomicInteger trades = new AtomicInteger();
+        try (CryptoMarket market = new CryptoMarket((c, a, r, p, q) -> trades.incrementAndGet(), ExecutionMode.BOARD_THREAD)) {
+            List<CompletableFuture<SubmitResult>> results = new ArrayList<>();
+            Thread[] submitters = new Thread[4];
+            for (int t = 0; t < submitters.length; t++) {
+                final Side side = (t % 2 == 0) ? Side.BUY : Side.SELL;
+                final String price = (side == Side.BUY) ? "1.23" : "1.24";
+                submitters[t] = new Thread(() -> {
+                    for (int i = 0; i < ordersPerThread; i++) {
+                        CompletableFuture<SubmitResult> result = market.submitOrderAsync(createOrder(coins[i % coins.length], side, price, "1.0"));
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    }
+                });
+                submitters[t].start();
+            }
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+            assertEquals(0, trades.get());
+            // Each coin gets its share of every thread's orders, each for 1.0
+            for (Cryptocurrency coin : coins) {
+                BigDecimal expected = new BigDecimal((ordersPerThread - coin.getId() + coins.length - 1) / coins.length);
+                for (Side side : Side.values()) {
+                    long lots = market.get(coin).getSnapshot(side, 1).getBestQuantityLots();
+                    assertEquals(0, expected.multiply(new BigDecimal(2)).compareTo(coin.getTickConfig().toQuantity(lots)));
+                }
+            }
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testBoardThreadFailureReachesCaller() {
+        try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, ExecutionMode.BOARD_THREAD)) {
+            CryptoOrder order = createOrder(Cryptocurrency.XRP, Side.BUY, "1.23", "2.4");
+            market.submitOrder(order);
+            // Duplicate order id
+            market.submitOrder(order);
+        }
+    }
+
+    @Test
+    public void testDepthViewFollowsBook() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode)) {
+                Cryptocurrency coin = Cryptocurrency.BITCOIN;
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(coin, "user", Side.SELL, 1_000L, 10_050L));
+                DepthView bids = new DepthView(Side.BUY);
+                DepthView asks = new DepthView(Side.SELL);
+                market.subscribe(coin, Side.BUY, bids, Integer.MAX_VALUE);
+                market.subscribe(coin, Side.SELL, asks, Integer.MAX_VALUE);
+
+                List<CryptoMarketOrder> orders = new ArrayList<>();
+                for (int i = 0; i < 300; i++) {
+                    Side side = i % 2 == 0 ? Side.BUY : Side.SELL;
+                    long priceTicks = side == Side.BUY ? 10_000 + i % 17 : 10_010 + i % 19;
+                    CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(coin, "user", side, 100L * (1 + i % 4), priceTicks);
+                    market.submitOrder(order);
+                    orders.add(order);
+                    if (i % 5 == 0) {
+                        market.cancelOrder(coin, orders.get(i / 2).getOrderId());
+                    }
+                }
+                // Read after a round trip, so the views are up to date in BOARD_THREAD mode
+                market.unsubscribe(coin, Side.BUY, bids);
+                market.unsubscribe(coin, Side.SELL, asks);
+
+                for (DepthView view : Arrays.asList(bids, asks)) {
+                    Side side = view == bids ? Side.BUY : Side.SELL;
+                    BookSnapshot snapshot = market.get(coin).getSnapshot(side, 10);
+                    assertEquals(false, view.isStale());
+                    // Published snapshots skip changes below their depth
+                    assertTrue(view.getSequence() >= snapshot.getSequence());
+                    long[] priceTicks = new long[snapshot.getDepth()];
+                    long[] quantityLots = new long[snapshot.getDepth()];
+                    view.getDepth(priceTicks, quantityLots);
+                    for (int level = 0; level < snapshot.getDepth(); level++) {
+                        assertEquals(snapshot.getPriceTicks(level), priceTicks[level]);
+                        assertEquals(snapshot.getQuantityLots(level), quantityLots[level]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBatchSubmission() {
+        checkBatchSubmission(new CryptoMarket());
+        try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, ExecutionMode.BOARD_THREAD)) {
+            checkBatchSubmission(market);
+        }
+    }
+
+    private void checkBatchSubmission(CryptoMarket market) {
+        CryptoOrder etherBuy = createOrder(Cryptocurrency.ETHERIUM, Side.BUY, "1.23", "2.4");
+        CryptoOrder bitSell = createOrder(Cryptocurrency.BITCOIN, Side.SELL, "1.23", "2.4");
+        CryptoOrder bitOffTick = createOrder(Cryptocurrency.BITCOIN, Side.SELL, "1.234", "2.4");
+        CryptoOrder xrpBuy = createOrder(Cryptocurrency.XRP, Side.BUY, "1.23", "2.4");
+
+        SubmitResult[] results = market.submitOrders(Arrays.asList(
+                etherBuy, bitSell, bitOffTick, createCancelOrder(etherBuy), xrpBuy, createCancelOrder(etherBuy), etherBuy));
+
+        assertArrayEquals(new SubmitResult[] {
+                SubmitResult.ACCEPTED, SubmitResult.ACCEPTED, SubmitResult.REJECTED, SubmitResult.CANCELLED,
+                SubmitResult.ACCEPTED, SubmitResult.NOT_FOUND, SubmitResult.ACCEPTED}, results);
+        assertEquals(1, market.getOrderSummary(Cryptocurrency.ETHERIUM, Side.BUY).length);
+        assertEquals(1, market.getOrderSummary(Cryptocurrency.BITCOIN, Side.SELL).length);
+        assertEquals(1, market.getOrderSummary(Cryptocurrency.XRP, Side.BUY).length);
+    }
+
+    @Test
+    public void testCancelAllForUser() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode)) {
+                for (Cryptocurrency coin : Cryptocurrency.values()) {
+                    market.submitOrder(OrderCreator.createCryptoMarketOrder(coin, "gone", Side.BUY, new BigDecimal("1.0"), new BigDecimal("1.20")));
+                    market.submitOrder(OrderCreator.createCryptoMarketOrder(coin, "gone", Side.SELL, new BigDecimal("1.0"), new BigDecimal("1.30")));
+                    market.submitOrder(OrderCreator.createCryptoMarketOrder(coin, "stays", Side.SELL, new BigDecimal("1.0"), new BigDecimal("1.30")));
+                }
+                assertEquals(1, market.cancelAllForUser("gone", Cryptocurrency.XRP, Side.SELL));
+                assertEquals(2 * Cryptocurrency.values().length - 1, market.cancelAllForUser("gone"));
+                for (Cryptocurrency coin : Cryptocurrency.values()) {
+                    assertEquals(0, market.getOrderSummary(coin, Side.BUY).length);
+                    assertEquals(1, market.getOrderSummary(coin, Side.SELL).length);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMarketSnapshot() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode)) {
+                checkMarketSnapshot(market);
+            }
+        }
+    }
+
+    private void checkMarketSnapshot(CryptoMarket market) {
+        for (Cryptocurrency coin : Cryptocurrency.values()) {
+            market.submitOrder(createOrder(coin, Side.BUY, "1.23", "2.4"));
+            market.submitOrder(createOrder(coin, Side.BUY, "1.21", "1.5"));
+            market.submitOrder(createOrder(coin, Side.SELL, "1.25", "3.0"));
+        }
+        MarketSnapshot snapshot = market.getMarketSnapshot(10);
+        for (Cryptocurrency coin : Cryptocurrency.values()) {
+            for (Side side : Side.values()) {
+                assertArrayEquals(market.getOrderSummary(coin, side), snapshot.getOrderSummary(coin, side));
+            }
+            assertEquals(2, snapshot.getBook(coin, Side.BUY).getDepth());
+            assertEquals(1, snapshot.getBook(coin, Side.SELL).getDepth());
+        }
+
+        // Only the changed book moves on
+        market.submitOrder(createOrder(Cryptocurrency.XRP, Side.SELL, "1.26", "1.0"));
+        MarketSnapshot next = market.getMarketSnapshot(1);
+        assertEquals(snapshot.getSequence(Cryptocurrency.XRP, Side.SELL) + 1, next.getSequence(Cryptocurrency.XRP, Side.SELL));
+        assertEquals(snapshot.getSequence(Cryptocurrency.XRP, Side.BUY), next.getSequence(Cryptocurrency.XRP, Side.BUY));
+        assertEquals(snapshot.getSequence(Cryptocurrency.BITCOIN, Side.SELL), next.getSequence(Cryptocurrency.BITCOIN, Side.SELL));
+        assertEquals(1, next.getBook(Cryptocurrency.XRP, Side.SELL).getDepth());
+        assertEquals(2, next.getBook(Cryptocurrency.XRP, Side.SELL).getSize());
+    }
 
+    private void checkSubmissionToCorrectOrderBoard(CryptoMarket market) {
         Set<Pair<Cryptocurrency,Side>> ordersPresent = new HashSet<>();
         int orderCount = validateMarket(market, ordersPresent);
         assertEquals(0, orderCount);
@@ -109,6 +308,143 @@ public class CryptoMarketTest {
         return totalOrders;
     }
 
+    // Defined once for the JVM, as other tests see every defined coin
+    private static final Cryptocurrency DOGECOIN = Cryptocurrency.define("DOGECOIN", "0.0001", "0.01", BookType.TREE_MAP);
+
+    @Test
+    public void testCoinDefinedAtRuntime() {
+        assertSame(DOGECOIN, Cryptocurrency.valueOf("DOGECOIN"));
+        assertTrue(DOGECOIN.getId() > Cryptocurrency.XRP.getId());
+        assertEquals(DOGECOIN, Cryptocurrency.fromId(DOGECOIN.getId()));
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode)) {
+                assertTrue(market.getListedCoins().isEmpty());
+                market.submitOrder(createOrder(DOGECOIN, Side.SELL, "0.0712", "100.0"));
+                market.submitOrder(createOrder(Cryptocurrency.BITCOIN, Side.SELL, "1.25", "3.0"));
+                assertEquals(Arrays.asList(Cryptocurrency.BITCOIN, DOGECOIN), market.getListedCoins());
+                assertArrayEquals(new String[] {"100.0" + OutputFormatter.PRICE_SEPARATOR + "0.0712"},
+                        market.getOrderSummary(DOGECOIN, Side.SELL));
+                assertEquals(1, market.getMarketSnapshot(5).getBook(DOGECOIN, Side.SELL).getDepth());
+            }
+        }
+    }
+
+    private static final Cryptocurrency OFFHEAPCOIN = Cryptocurrency.define("OFFHEAPCOIN", "0.01", "0.01", BookType.OFF_HEAP);
+
+    @Test
+    public void testOffHeapCoinTradedThroughMarket() throws Exception {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            List<UUID> restingTraded = new ArrayList<>();
+            TradeListener listener = (coinType, aggressor, resting, priceTicks, quantityLots) -> restingTraded.add(resting.getOrderId());
+            try (CryptoMarket market = new CryptoMarket(listener, mode)) {
+                CryptoOrder aliceFirst = OrderCreator.createCryptoMarketOrder(OFFHEAPCOIN, "alice", Side.SELL, 1000, 125);
+                CryptoOrder aliceSecond = OrderCreator.createCryptoMarketOrder(OFFHEAPCOIN, "alice", Side.SELL, 500, 126);
+                CryptoOrder bob = OrderCreator.createCryptoMarketOrder(OFFHEAPCOIN, "bob", Side.SELL, 400, 125);
+                market.submitOrder(aliceFirst);
+                market.submitOrder(aliceSecond);
+                market.submitOrder(bob);
+
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(OFFHEAPCOIN, "carol", Side.BUY, 1200, 125));
+                assertEquals(Arrays.asList(aliceFirst.getOrderId(), bob.getOrderId()), restingTraded);
+                TopOfBook top = market.getTopOfBook(OFFHEAPCOIN);
+                assertFalse(top.hasBid());
+                assertEquals(125, top.getAskPriceTicks());
+                assertEquals(200, top.getAskQuantityLots());
+
+                // Moved behind bob's remainder
+                assertTrue(market.amendOrder(OFFHEAPCOIN, aliceSecond.getOrderId(), 125, 300));
+                assertEquals(500, market.getTopOfBook(OFFHEAPCOIN).getAskQuantityLots());
+                BookSnapshot asks = market.getMarketSnapshot(5).getBook(OFFHEAPCOIN, Side.SELL);
+                assertEquals(1, asks.getDepth());
+                OrderBoardSnapshot snapshot = market.takeSnapshotAsync(OFFHEAPCOIN).get(5, TimeUnit.SECONDS);
+                assertEquals(2, snapshot.size());
+                assertEquals(bob.getOrderId(), snapshot.getOrder(0).getOrderId());
+                assertEquals(200, snapshot.getRemainingLots(0));
+                assertEquals(aliceSecond.getOrderId(), snapshot.getOrder(1).getOrderId());
+                assertEquals("alice", snapshot.getOrder(1).getUserId());
+
+                assertEquals(1, market.cancelAllForUser("alice", OFFHEAPCOIN, null));
+                assertTrue(market.cancelOrder(OFFHEAPCOIN, bob.getOrderId()));
+                assertFalse(market.cancelOrder(OFFHEAPCOIN, bob.getOrderId()));
+                assertFalse(market.getTopOfBook(OFFHEAPCOIN).hasAsk());
+                assertEquals(0, market.getOrderSummary(OFFHEAPCOIN, Side.SELL).length);
+            }
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCoinNameDefinedTwice() {
+        Cryptocurrency.define("BITCOIN", "0.01", "0.00000001", BookType.TREE_MAP);
+    }
+
+    @Test
+    public void testCoinLookedUpOrDefined() {
+        assertSame(DOGECOIN, Cryptocurrency.getOrDefine("DOGECOIN", "0.00010", "0.01", BookType.TREE_MAP));
+        try {
+            Cryptocurrency.getOrDefine("DOGECOIN", "0.001", "0.01", BookType.TREE_MAP);
+            fail("Coin redefined with another tick size");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDelist() {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode)) {
+                CryptoMarketOrder resting = createOrder(Cryptocurrency.XRP, Side.BUY, "1.23", "2.4");
+                market.submitOrder(resting);
+                market.submitOrder(createOrder(Cryptocurrency.BITCOIN, Side.BUY, "1.23", "2.4"));
+
+                OrderBoardSnapshot cancelled = market.delist(Cryptocurrency.XRP);
+                assertEquals(1, cancelled.size());
+                assertEquals(resting.getOrderId(), cancelled.getOrder(0).getOrderId());
+                assertEquals(Arrays.asList(Cryptocurrency.BITCOIN), market.getListedCoins());
+                try {
+                    market.submitOrder(createOrder(Cryptocurrency.XRP, Side.BUY, "1.23", "2.4"));
+                    fail("Order for a delisted coin accepted");
+                } catch (RuntimeException e) {
+                    // Refused
+                }
+                SubmitResult[] results = market.submitOrders(new CryptoOrder[] {
+                        createOrder(Cryptocurrency.XRP, Side.SELL, "1.25", "1.0"),
+                        createOrder(Cryptocurrency.BITCOIN, Side.SELL, "1.25", "1.0")});
+                assertArrayEquals(new SubmitResult[] {SubmitResult.REJECTED, SubmitResult.ACCEPTED}, results);
+                assertEquals(1, market.getOrderSummary(Cryptocurrency.BITCOIN, Side.BUY).length);
+
+                // Listed again with an empty board
+                market.list(Cryptocurrency.XRP);
+                assertEquals(0, market.getOrderSummary(Cryptocurrency.XRP, Side.BUY).length);
+                assertEquals(SubmitResult.ACCEPTED, market.submitOrder(createOrder(Cryptocurrency.XRP, Side.BUY, "1.23", "2.4")));
+            }
+        }
+    }
+
+    @Test
+    public void testSubmitRacingDelistNeverHangs() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            try (CryptoMarket market = new CryptoMarket(TradeListener.NONE, ExecutionMode.BOARD_THREAD)) {
+                market.list(Cryptocurrency.XRP);
+                CountDownLatch started = new CountDownLatch(1);
+                Thread submitter = new Thread(() -> {
+                    try {
+                        while (true) {
+                            market.submitOrder(createOrder(Cryptocurrency.XRP, Side.BUY, "1.23", "2.4"));
+                            started.countDown();
+                        }
+                    } catch (RuntimeException e) {
+                        // Delisted, before or while queueing
+                    }
+                });
+                submitter.start();
+                started.await();
+                market.delist(Cryptocurrency.XRP);
+                submitter.join(10_000);
+                assertFalse(submitter.isAlive());
+            }
+        }
+    }
+
     private CryptoMarketOrder createOrder(Cryptocurrency cCcy, Side side, String price, String quantity) {
         return OrderCreator.createCryptoMarketOrder(cCcy, "userId", side, new BigDecimal(quantity), new BigDecimal(price));
     }
@@ -116,4 +452,51 @@ public class CryptoMarketTest {
     private CryptoMarketCancelOrder createCancelOrder(CryptoOrder origOrder) {
         return OrderCreator.createCryptoMarketCancelOrder(origOrder.getOrderId(), origOrder.getCoinType(), origOrder.getSide(), origOrder.getPrice());
     }
+
+    @Test
+    public void testMetricsVisibleOverJmx() throws Exception {
+        assumeTrue(Metrics.ENABLED);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName xrpBooks = new ObjectName(Metrics.DOMAIN + ":type=OrderBook,coin=XRP,*");
+        // Markets left open by other tests stay registered
+        Set<ObjectName> open = server.queryNames(xrpBooks, null);
+        int openBooks = open.size();
+        try (CryptoMarket market = new CryptoMarket()) {
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(Cryptocurrency.XRP, "user", Side.BUY, BigDecimal.ONE, BigDecimal.ONE);
+            market.submitOrder(order);
+            market.cancelOrder(Cryptocurrency.XRP, order.getOrderId());
+            market.cancelOrder(Cryptocurrency.XRP, order.getOrderId());
+
+            assertEquals(1, market.getMetrics().getSubmits());
+            assertEquals(1, market.getMetrics().getCancels());
+            assertEquals(1, market.getMetrics().getMisses());
+            assertEquals(2, market.getMetrics().getCancelLatency().getCount());
+
+            Set<ObjectName> books = server.queryNames(new ObjectName(Metrics.DOMAIN + ":type=OrderBook,coin=XRP,side=BUY,*"), null);
+            books.removeAll(open);
+            assertEquals(1, books.size());
+            ObjectName book = books.iterator().next();
+            assertEquals(1L, server.getAttribute(book, "Submits"));
+            assertEquals(1L, server.getAttribute(book, "Cancels"));
+            // The board finds the order is gone without asking the book
+            assertEquals(0L, server.getAttribute(book, "Misses"));
+            assertEquals(0, server.getAttribute(book, "Levels"));
+            CompositeData latency = (CompositeData) server.getAttribute(book, "SubmitLatency");
+            assertEquals(1L, latency.get("count"));
+            assertTrue((Long) latency.get("p99") > 0);
+            assertEquals(1, server.queryNames(new ObjectName(Metrics.DOMAIN + ":type=CryptoMarket,*"), null).size());
+
+            try (CryptoMarket other = new CryptoMarket()) {
+                other.list(Cryptocurrency.XRP);
+                assertEquals(openBooks + 4, server.queryNames(xrpBooks, null).size());
+                assertEquals(1L, server.getAttribute(book, "Submits"));
+                other.delist(Cryptocurrency.XRP);
+                assertEquals(openBooks + 2, server.queryNames(xrpBooks, null).size());
+                other.list(Cryptocurrency.XRP);
+            }
+            assertEquals(openBooks + 2, server.queryNames(xrpBooks, null).size());
+        }
+        assertEquals(openBooks, server.queryNames(xrpBooks, null).size());
+        assertEquals(0, server.queryNames(new ObjectName(Metrics.DOMAIN + ":type=CryptoMarket,*"), null).size());
+    }
 }
@@ -5,9 +5,17 @@ import com.dak.crypto.order.CryptoMarketOrder;
 import com.dak.crypto.order.CryptoOrder;
 import com.dak.crypto.order.Order;
 import com.dak.crypto.util.OrderCreator;
+import com.dak.crypto.util.OutputFormatter;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.*;
 
@@ -20,7 +28,7 @@ public class OrderBoardTest {
         OrderBoard ob = new OrderBoard(C_CCY);
 
         CryptoOrder buyOrder = createOrder(Side.BUY, "1.23", "2.4");
-        CryptoOrder sellOrder = createOrder(Side.SELL, "1.23", "2.4");
+        CryptoOrder sellOrder = createOrder(Side.SELL, "1.24", "2.4");
         CryptoOrder cancelBuyOrder = createCancelOrder(buyOrder);
         CryptoOrder cancelSellOrder = createCancelOrder(sellOrder);
 
@@ -53,6 +61,373 @@ public class OrderBoardTest {
         assertEquals(1, ob.getOrderSummary(Side.SELL).length);
     }
 
+    @Test
+    public void testCancelByOrderIdOnly() {
+        OrderBoard ob = new OrderBoard(C_CCY);
+
+        CryptoOrder buyOrder1 = createOrder(Side.BUY, "1.23", "2.4");
+        CryptoOrder buyOrder2 = createOrder(Side.BUY, "1.23", "1.1");
+        CryptoOrder sellOrder = createOrder(Side.SELL, "1.25", "2.4");
+        ob.submitOrder(buyOrder1);
+        ob.submitOrder(buyOrder2);
+        ob.submitOrder(sellOrder);
+        assertEquals(3, ob.getOrderCount());
+
+        assertTrue(ob.cancelOrder(buyOrder1.getOrderId()));
+        assertFalse(ob.cancelOrder(buyOrder1.getOrderId()));
+        assertEquals(1, ob.getOrderSummary(Side.BUY).length);
+
+        ob.submitOrder(OrderCreator.createCryptoMarketCancelOrder(sellOrder.getOrderId(), C_CCY));
+        assertEquals(0, ob.getOrderSummary(Side.SELL).length);
+
+        // The price on the cancel is no longer needed to find the order
+        ob.submitOrder(OrderCreator.createCryptoMarketCancelOrder(buyOrder2.getOrderId(), C_CCY, Side.BUY, new BigDecimal("9.99")));
+        assertEquals(0, ob.getOrderSummary(Side.BUY).length);
+        assertEquals(0, ob.getOrderCount());
+    }
+
+    @Test
+    public void testCrossingOrderSweepsInPriceTimePriority() {
+        List<String> trades = new ArrayList<>();
+        OrderBoard ob = new OrderBoard(C_CCY, recordingListener(trades));
+
+        CryptoOrder sell1 = createOrder(Side.SELL, "1.25", "1.0");
+        CryptoOrder sell2 = createOrder(Side.SELL, "1.24", "2.0");
+        CryptoOrder sell3 = createOrder(Side.SELL, "1.24", "1.5");
+        CryptoOrder sell4 = createOrder(Side.SELL, "1.26", "4.0");
+        ob.submitOrder(sell1);
+        ob.submitOrder(sell2);
+        ob.submitOrder(sell3);
+        ob.submitOrder(sell4);
+        assertEquals(0, trades.size());
+
+        CryptoOrder buy = createOrder(Side.BUY, "1.25", "4.0");
+        ob.submitOrder(buy);
+
+        assertEquals(3, trades.size());
+        assertEquals(sell2.getOrderId() + " 200000000 @ 124", trades.get(0));
+        assertEquals(sell3.getOrderId() + " 150000000 @ 124", trades.get(1));
+        assertEquals(sell1.getOrderId() + " 50000000 @ 125", trades.get(2));
+
+        // sell1 partly filled and keeps its place, the buy is completely filled
+        String[] summary = ob.getOrderSummary(Side.SELL);
+        assertEquals(2, summary.length);
+        assertEquals("0.5 for £1.25", summary[0]);
+        assertEquals("4.0 for £1.26", summary[1]);
+        assertEquals(0, ob.getOrderSummary(Side.BUY).length);
+        assertEquals(2, ob.getOrderCount());
+        assertFalse(ob.cancelOrder(sell2.getOrderId()));
+    }
+
+    @Test
+    public void testUnfilledRemainderRests() {
+        List<String> trades = new ArrayList<>();
+        OrderBoard ob = new OrderBoard(C_CCY, recordingListener(trades));
+
+        CryptoOrder buy = createOrder(Side.BUY, "1.23", "2.0");
+        ob.submitOrder(buy);
+        CryptoOrder sell = createOrder(Side.SELL, "1.20", "3.5");
+        ob.submitOrder(sell);
+
+        assertEquals(1, trades.size());
+        assertEquals(buy.getOrderId() + " 200000000 @ 123", trades.get(0));
+        assertEquals(0, ob.getOrderSummary(Side.BUY).length);
+        assertArrayEquals(new String[] {"1.5 for £1.2"}, ob.getOrderSummary(Side.SELL));
+
+        assertTrue(ob.cancelOrder(sell.getOrderId()));
+        assertEquals(0, ob.getOrderCount());
+    }
+
+    @Test
+    public void testSingleWriterBoardMatches() {
+        List<String> trades = new ArrayList<>();
+        OrderBoard ob = new OrderBoard(C_CCY, recordingListener(trades), ConcurrencyMode.SINGLE_WRITER);
+
+        CryptoOrder sell = createOrder(Side.SELL, "1.24", "2.0");
+        ob.submitOrder(sell);
+        ob.submitOrder(createOrder(Side.BUY, "1.23", "1.0"));
+        ob.submitOrder(createOrder(Side.BUY, "1.24", "0.5"));
+
+        assertEquals(1, trades.size());
+        BookSnapshot asks = ob.getSnapshot(Side.SELL, 10);
+        assertEquals(124, asks.getBestPriceTicks());
+        assertEquals(150_000_000L, asks.getBestQuantityLots());
+        assertArrayEquals(new String[] {"1.0 for £1.23"}, ob.getOrderSummary(Side.BUY));
+
+        assertTrue(ob.cancelOrder(sell.getOrderId()));
+        assertTrue(ob.getSnapshot(Side.SELL, 10).isEmpty());
+    }
+
+    @Test
+    public void testSingleWriterSnapshotTakenByWriterOnly() throws Exception {
+        OrderBoard ob = new OrderBoard(C_CCY, TradeListener.NONE, ConcurrencyMode.SINGLE_WRITER);
+        ob.submitOrder(createOrder(Side.SELL, "1.24", "2.0"));
+        assertEquals(1, ob.takeSnapshot().size());
+
+        RuntimeException[] failure = new RuntimeException[1];
+        Thread reader = new Thread(() -> {
+            try {
+                ob.takeSnapshot();
+            } catch (RuntimeException e) {
+                failure[0] = e;
+            }
+        });
+        reader.start();
+        reader.join();
+        assertNotNull(failure[0]);
+    }
+
+    @Test
+    public void testExecutorRefusesWorkAfterError() throws InterruptedException, TimeoutException {
+        OrderBoardExecutor executor = new OrderBoardExecutor(new OrderBoard(C_CCY, TradeListener.NONE, ConcurrencyMode.SINGLE_WRITER), 16);
+        try {
+            try {
+                executor.submit(board -> {
+                    throw new AssertionError("broken board");
+                }).get(10, TimeUnit.SECONDS);
+                fail("Expected the call's error");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AssertionError);
+            }
+            // Refused on submit, or failed once queued, never left waiting
+            try {
+                executor.submit(OrderBoard::getOrderCount).get(10, TimeUnit.SECONDS);
+                fail("Expected the stopped executor to refuse work");
+            } catch (RuntimeException | ExecutionException e) {
+                assertTrue(executor.isFailed());
+            }
+        } finally {
+            executor.close();
+        }
+    }
+
+    @Test
+    public void testSingleWriterBoardRefusesOtherThreadsUnchanged() throws InterruptedException {
+        List<String> journal = new ArrayList<>();
+        OrderBoard ob = new OrderBoard(C_CCY, TradeListener.NONE, ConcurrencyMode.SINGLE_WRITER, new OrderJournal() {
+            @Override
+            public void onOrder(CryptoOrder order, long priceTicks, long quantityLots) {
+                journal.add("order");
+            }
+
+            @Override
+            public void onCancel(Cryptocurrency coinType, UUID orderId) {
+                journal.add("cancel");
+            }
+
+            @Override
+            public void onAmend(Cryptocurrency coinType, UUID orderId, long priceTicks, long quantityLots) {
+                journal.add("amend");
+            }
+        });
+        CryptoOrder sell = createOrder(Side.SELL, "1.24", "2.0");
+        ob.submitOrder(sell);
+
+        List<RuntimeException> errors = new ArrayList<>();
+        Thread other = new Thread(() -> {
+            for (Runnable call : new Runnable[] {
+                    () -> ob.cancelOrder(sell.getOrderId()),
+                    () -> ob.amendOrder(sell.getOrderId(), 125L, 100L),
+                    () -> ob.cancelAllForUser(sell.getUserId()),
+                    () -> ob.submitOrder(createOrder(Side.BUY, "1.24", "1.0"))}) {
+                try {
+                    call.run();
+                } catch (RuntimeException e) {
+                    errors.add(e);
+                }
+            }
+        });
+        other.start();
+        other.join();
+
+        assertEquals(4, errors.size());
+        assertEquals(Arrays.asList("order"), journal);
+        assertEquals(1, ob.getOrderCount());
+        assertTrue(ob.cancelOrder(sell.getOrderId()));
+    }
+
+    @Test
+    public void testBatchIsProcessedInSequence() {
+        List<String> trades = new ArrayList<>();
+        OrderBoard ob = new OrderBoard(C_CCY, recordingListener(trades));
+
+        CryptoOrder sell = createOrder(Side.SELL, "1.24", "2.0");
+        CryptoOrder buy = createOrder(Side.BUY, "1.25", "3.0");
+        CryptoOrder wrongCoin = OrderCreator.createCryptoMarketOrder(Cryptocurrency.XRP, "userId", Side.BUY, BigDecimal.ONE, BigDecimal.ONE);
+
+        SubmitResult[] results = ob.submitOrders(Arrays.asList(sell, wrongCoin, buy, createCancelOrder(sell), createCancelOrder(buy)));
+
+        assertArrayEquals(new SubmitResult[] {SubmitResult.ACCEPTED, SubmitResult.REJECTED, SubmitResult.ACCEPTED,
+                SubmitResult.NOT_FOUND, SubmitResult.CANCELLED}, results);
+        assertEquals(1, trades.size());
+        assertEquals(0, ob.getOrderCount());
+    }
+
+    @Test
+    public void testAmendKeepsPriorityOnlyWhenReducing() {
+        List<String> trades = new ArrayList<>();
+        OrderBoard ob = new OrderBoard(C_CCY, recordingListener(trades));
+
+        CryptoOrder first = createOrder(Side.SELL, "1.24", "2.0");
+        CryptoOrder second = createOrder(Side.SELL, "1.24", "1.0");
+        ob.submitOrder(first);
+        ob.submitOrder(second);
+
+        // Smaller at the same price, still first in the queue
+        assertTrue(ob.amendOrder(first.getOrderId(), 124, 150_000_000L));
+        ob.submitOrder(createOrder(Side.BUY, "1.24", "0.5"));
+        assertEquals(first.getOrderId() + " 50000000 @ 124", trades.get(0));
+
+        // Larger, now behind the second order
+        assertTrue(ob.amendOrder(first.getOrderId(), 124, 300_000_000L));
+        ob.submitOrder(createOrder(Side.BUY, "1.24", "0.5"));
+        assertEquals(second.getOrderId() + " 50000000 @ 124", trades.get(1));
+
+        // New price
+        assertEquals(SubmitResult.AMENDED, ob.submitOrder(OrderCreator.createCryptoMarketAmendOrder(second.getOrderId(), C_CCY, 50_000_000L, 126)));
+        BookSnapshot asks = ob.getSnapshot(Side.SELL, 10);
+        assertEquals(2, asks.getDepth());
+        assertEquals(124, asks.getPriceTicks(0));
+        assertEquals(300_000_000L, asks.getQuantityLots(0));
+        assertEquals(126, asks.getPriceTicks(1));
+        assertEquals(50_000_000L, asks.getQuantityLots(1));
+        assertEquals(124, ob.getTopOfBook().getAskPriceTicks());
+
+        assertFalse(ob.amendOrder(UUID.randomUUID(), 124, 1));
+        assertEquals(2, ob.getOrderCount());
+        assertTrue(ob.cancelOrder(second.getOrderId()));
+    }
+
+    @Test
+    public void testAmendAcrossSpreadTrades() {
+        for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+            List<String> trades = new ArrayList<>();
+            OrderBoard ob = new OrderBoard(C_CCY, recordingListener(trades), mode);
+
+            CryptoOrder sell = createOrder(Side.SELL, "1.25", "1.0");
+            CryptoOrder buy = createOrder(Side.BUY, "1.20", "3.0");
+            ob.submitOrder(sell);
+            ob.submitOrder(buy);
+
+            assertTrue(ob.amendOrder(buy.getOrderId(), 126, 250_000_000L));
+            assertEquals(Arrays.asList(sell.getOrderId() + " 100000000 @ 125"), trades);
+            assertTrue(ob.getSnapshot(Side.SELL, 10).isEmpty());
+            BookSnapshot bids = ob.getSnapshot(Side.BUY, 10);
+            assertEquals(126, bids.getBestPriceTicks());
+            assertEquals(150_000_000L, bids.getBestQuantityLots());
+            assertEquals(1, ob.getOrderCount());
+            assertTrue(ob.cancelOrder(buy.getOrderId()));
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testAmendToNoQuantityRejected() {
+        OrderBoard ob = new OrderBoard(C_CCY);
+        CryptoOrder buy = createOrder(Side.BUY, "1.20", "3.0");
+        ob.submitOrder(buy);
+        ob.amendOrder(buy.getOrderId(), 120, 0);
+    }
+
+    private TradeListener recordingListener(List<String> trades) {
+        return (coinType, aggressor, resting, priceTicks, quantityLots) -> {
+            assertEquals(C_CCY, coinType);
+            assertNotEquals(aggressor.getSide(), resting.getSide());
+            trades.add(resting.getOrderId() + " " + quantityLots + " @ " + priceTicks);
+        };
+    }
+
+    @Test
+    public void testCancelAllForUser() {
+        for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+            OrderBoard ob = new OrderBoard(C_CCY, TradeListener.NONE, mode);
+            CryptoMarketOrder other = OrderCreator.createCryptoMarketOrder(C_CCY, "other", Side.BUY, new BigDecimal("1.0"), new BigDecimal("1.20"));
+            ob.submitOrder(other);
+            for (int i = 0; i < 5; i++) {
+                ob.submitOrder(createOrder(Side.BUY, "1.2" + i, "1.0"));
+                ob.submitOrder(createOrder(Side.SELL, "1.3" + i, "1.0"));
+            }
+            // Fully fills the best bid, so it leaves the user's orders
+            ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "other", Side.SELL, new BigDecimal("1.0"), new BigDecimal("1.24")));
+
+            assertEquals(5, ob.cancelAllForUser("userId", Side.SELL));
+            assertEquals(0, ob.getOrderSummary(Side.SELL).length);
+            assertEquals(4, ob.getOrderSummary(Side.BUY).length);
+            assertEquals(0, ob.cancelAllForUser("userId", Side.SELL));
+
+            assertEquals(4, ob.cancelAllForUser("userId"));
+            assertArrayEquals(new String[] {"1.0" + OutputFormatter.PRICE_SEPARATOR + "1.2"}, ob.getOrderSummary(Side.BUY));
+            assertEquals(1, ob.getOrderCount());
+            assertEquals(0, ob.getTopOfBook().getAskPriceTicks());
+            assertEquals(0, ob.cancelAllForUser("userId"));
+            assertEquals(1, ob.cancelAllForUser("other"));
+            assertEquals(0, ob.getOrderCount());
+        }
+    }
+
+    @Test
+    public void testDelist() {
+        for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+            OrderBoard ob = new OrderBoard(C_CCY, TradeListener.NONE, mode);
+            CryptoOrder sell = createOrder(Side.SELL, "1.25", "3.0");
+            ob.submitOrder(sell);
+            ob.submitOrder(createOrder(Side.BUY, "1.23", "2.4"));
+
+            OrderBoardSnapshot cancelled = ob.delist();
+            assertEquals(2, cancelled.size());
+            assertEquals(0, ob.getOrderCount());
+            assertEquals(0, ob.getOrderSummary(Side.SELL).length);
+            assertEquals(0, ob.getTopOfBook().getBidPriceTicks());
+            // Cancels are still answered, orders and amends refused
+            assertEquals(SubmitResult.NOT_FOUND, ob.submitOrder(new CryptoMarketCancelOrder(UUID.randomUUID(), sell.getOrderId(), C_CCY)));
+            try {
+                ob.submitOrder(createOrder(Side.SELL, "1.25", "3.0"));
+                fail("Order accepted by a delisted board");
+            } catch (RuntimeException e) {
+                // Refused
+            }
+            assertEquals(SubmitResult.REJECTED, ob.submitOrders(Arrays.asList(createOrder(Side.BUY, "1.23", "1.0")))[0]);
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDuplicateOrderIdRejected() {
+        OrderBoard ob = new OrderBoard(C_CCY);
+        CryptoOrder buyOrder = createOrder(Side.BUY, "1.23", "2.4");
+        ob.submitOrder(buyOrder);
+        ob.submitOrder(buyOrder);
+    }
+
+    @Test
+    public void testTopOfBookFollowsBestLevels() {
+        OrderBoard ob = new OrderBoard(C_CCY);
+        TopOfBook top = ob.getTopOfBook();
+        assertFalse(top.hasBid());
+        assertFalse(top.hasAsk());
+
+        CryptoOrder bid = createOrder(Side.BUY, "1.20", "1.0");
+        ob.submitOrder(bid);
+        ob.submitOrder(createOrder(Side.SELL, "1.25", "2.0"));
+        ob.submitOrder(createOrder(Side.SELL, "1.25", "0.5"));
+        top = ob.getTopOfBook();
+        assertEquals(120, top.getBidPriceTicks());
+        assertEquals(100_000_000L, top.getBidQuantityLots());
+        assertEquals(125, top.getAskPriceTicks());
+        assertEquals(250_000_000L, top.getAskQuantityLots());
+
+        // Below the top, nothing is published
+        ob.submitOrder(createOrder(Side.BUY, "1.10", "3.0"));
+        assertSame(top, ob.getTopOfBook());
+
+        ob.submitOrder(createOrder(Side.BUY, "1.25", "1.0"));
+        TopOfBook traded = ob.getTopOfBook();
+        assertTrue(traded.getSequence() > top.getSequence());
+        assertEquals(150_000_000L, traded.getAskQuantityLots());
+
+        assertTrue(ob.cancelOrder(bid.getOrderId()));
+        assertEquals(110, ob.getTopOfBook().getBidPriceTicks());
+        assertEquals(300_000_000L, ob.getTopOfBook().getBidQuantityLots());
+    }
+
     @Test(expected = RuntimeException.class)
     public void submitOrderToWrongOrderBoard() {
         OrderBoard ob = new OrderBoard(Cryptocurrency.TETHER);
@@ -62,6 +437,170 @@ public class OrderBoardTest {
         ob.submitOrder(buyOrder);
     }
 
+    @Test
+    public void testStopLimitFiresWhenTradesReachTrigger() {
+        for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+            List<String> trades = new ArrayList<>();
+            OrderBoard ob = new OrderBoard(C_CCY, (coinType, aggressor, resting, priceTicks, quantityLots) ->
+                    trades.add(aggressor.getUserId() + " " + quantityLots + "@" + priceTicks), mode);
+            ob.submitOrder(OrderCreator.createStopLimitOrder(C_CCY, "stop", Side.BUY, 100L, 125L, 126L));
+            assertEquals(1, ob.getStopOrderCount());
+            assertEquals(0, ob.getOrderCount());
+            for (long priceTicks = 124L; priceTicks <= 126L; priceTicks++) {
+                ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, 150L, priceTicks));
+            }
+
+            ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.BUY, 100L, 124L));
+            assertEquals(1, ob.getStopOrderCount());
+            ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.BUY, 100L, 125L));
+            assertEquals(0, ob.getStopOrderCount());
+            assertEquals(Arrays.asList("taker 100@124", "taker 50@124", "taker 50@125", "stop 100@125"), trades);
+            assertEquals(126L, ob.getTopOfBook().getAskPriceTicks());
+            assertEquals(150L, ob.getTopOfBook().getAskQuantityLots());
+        }
+    }
+
+    @Test
+    public void testStopsCascadeInTriggerOrder() {
+        List<String> trades = new ArrayList<>();
+        OrderBoard ob = new OrderBoard(C_CCY, (coinType, aggressor, resting, priceTicks, quantityLots) ->
+                trades.add(aggressor.getUserId() + " " + quantityLots + "@" + priceTicks));
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, 10L, 99L));
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, 10L, 97L));
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, 10L, 95L));
+        ob.submitOrder(OrderCreator.createStopLimitOrder(C_CCY, "second", Side.SELL, 10L, 97L, 96L));
+        ob.submitOrder(OrderCreator.createStopLossOrder(C_CCY, "first", Side.SELL, 10L, 99L));
+
+        // The first stop's trades reach the second's trigger
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.SELL, 5L, 99L));
+        assertEquals(Arrays.asList("taker 5@99", "first 5@99", "first 5@97", "second 5@97"), trades);
+        assertEquals(96L, ob.getTopOfBook().getAskPriceTicks());
+        assertEquals(5L, ob.getTopOfBook().getAskQuantityLots());
+        assertEquals(95L, ob.getTopOfBook().getBidPriceTicks());
+
+        // Already through the trigger, so fires straight away
+        ob.submitOrder(OrderCreator.createStopLossOrder(C_CCY, "late", Side.SELL, 10L, 98L));
+        assertEquals("late 10@95", trades.get(trades.size() - 1));
+        assertEquals(0, ob.getStopOrderCount());
+    }
+
+    @Test
+    public void testStopLossRemainderCancelled() {
+        List<String> journal = new ArrayList<>();
+        OrderBoard ob = new OrderBoard(C_CCY, TradeListener.NONE, ConcurrencyMode.LOCKING, new OrderJournal() {
+            @Override
+            public void onOrder(CryptoOrder order, long priceTicks, long quantityLots) {
+                journal.add("order " + order.getUserId() + " " + quantityLots + "@" + priceTicks);
+            }
+
+            @Override
+            public void onCancel(Cryptocurrency coinType, UUID orderId) {
+                journal.add("cancel " + orderId);
+            }
+
+            @Override
+            public void onAmend(Cryptocurrency coinType, UUID orderId, long priceTicks, long quantityLots) {
+            }
+
+            @Override
+            public void onStopOrder(CryptoOrder stop) {
+                journal.add("stop " + stop.getUserId());
+            }
+
+            @Override
+            public void onTrigger(Cryptocurrency coinType, UUID orderId) {
+                journal.add("trigger " + orderId);
+            }
+        });
+        CryptoOrder stop = OrderCreator.createStopLossOrder(C_CCY, "stop", Side.BUY, 150L, 100L);
+        ob.submitOrder(stop);
+        assertEquals(Arrays.asList("stop stop"), journal);
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, 10L, 100L));
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, 50L, 101L));
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, 50L, 103L));
+        assertTrue(journal.stream().noneMatch(record -> record.startsWith("order stop")));
+
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.BUY, 10L, 100L));
+        // Journalled as triggered, then the rest cancelled
+        assertEquals(Arrays.asList("order taker 10@100", "trigger " + stop.getOrderId(), "cancel " + stop.getOrderId()),
+                journal.subList(journal.size() - 3, journal.size()));
+        assertEquals(0, ob.getOrderCount());
+        assertEquals(0, ob.getStopOrderCount());
+    }
+
+    @Test
+    public void testStopLossWithoutLiquidityReported() {
+        List<Long> unfilled = new ArrayList<>();
+        TradeListener listener = new TradeListener() {
+            @Override
+            public void onTrade(Cryptocurrency coinType, CryptoOrder aggressor, Order resting, long priceTicks, long quantityLots) {
+            }
+
+            @Override
+            public void onUnfilled(Cryptocurrency coinType, CryptoOrder order, long unfilledLots) {
+                unfilled.add(unfilledLots);
+            }
+        };
+        OrderBoard ob = new OrderBoard(C_CCY, listener);
+        ob.submitOrder(OrderCreator.createStopLossOrder(C_CCY, "stop", Side.SELL, 20L, 100L));
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, 10L, 100L));
+        // Takes the only bid, leaving the stop nothing to sell to
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.SELL, 10L, 100L));
+        assertEquals(Arrays.asList(20L), unfilled);
+        assertEquals(0, ob.getStopOrderCount());
+        assertEquals(0, ob.getOrderCount());
+    }
+
+    @Test
+    public void testFailedStopLeavesOthersWaiting() {
+        CryptoOrder failing = OrderCreator.createStopLimitOrder(C_CCY, "stop", Side.BUY, 10L, 100L, 110L);
+        CryptoOrder other = OrderCreator.createStopLimitOrder(C_CCY, "stop", Side.BUY, 5L, 100L, 110L);
+        OrderBoard ob = new OrderBoard(C_CCY, (coinType, aggressor, resting, priceTicks, quantityLots) -> {
+            if (aggressor == failing) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        ob.submitOrder(failing);
+        ob.submitOrder(other);
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, 30L, 100L));
+        try {
+            ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.BUY, 10L, 100L));
+            fail("Error from a triggered stop swallowed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, ob.getStopOrderCount());
+
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.BUY, 5L, 100L));
+        assertEquals(0, ob.getStopOrderCount());
+        assertEquals(0, ob.getOrderCount());
+    }
+
+    @Test
+    public void testStopOrdersCancelled() {
+        for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+            OrderBoard ob = new OrderBoard(C_CCY, TradeListener.NONE, mode);
+            CryptoOrder buyStop = OrderCreator.createStopLimitOrder(C_CCY, "userId", Side.BUY, 100L, 130L, 131L);
+            ob.submitOrder(buyStop);
+            ob.submitOrder(OrderCreator.createStopLossOrder(C_CCY, "userId", Side.SELL, 100L, 110L));
+            ob.submitOrder(OrderCreator.createStopLossOrder(C_CCY, "other", Side.SELL, 100L, 110L));
+            ob.submitOrder(createOrder(Side.SELL, "1.25", "1.0"));
+            assertEquals(3, ob.getStopOrderCount());
+
+            assertEquals(SubmitResult.CANCELLED, ob.submitOrder(createCancelOrder(buyStop)));
+            assertEquals(SubmitResult.NOT_FOUND, ob.submitOrder(createCancelOrder(buyStop)));
+            assertEquals(2, ob.cancelAllForUser("userId"));
+            assertEquals(1, ob.getStopOrderCount());
+            assertEquals(0, ob.getOrderCount());
+
+            // Cancelled stops no longer fire
+            ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, 100L, 110L));
+            ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.SELL, 50L, 110L));
+            assertEquals(0, ob.getStopOrderCount());
+            assertEquals(0, ob.getOrderCount());
+        }
+    }
+
     private CryptoMarketOrder createOrder(Side side, String price, String quantity) {
         return OrderCreator.createCryptoMarketOrder(C_CCY, "userId", side, new BigDecimal(quantity), new BigDecimal(price));
     }
@@ -1,15 +1,28 @@
 package com.dak.crypto;
 
+import com.dak.crypto.metrics.BookMetrics;
+import com.dak.crypto.metrics.Metrics;
 import com.dak.crypto.order.CryptoMarketCancelOrder;
 import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.GroupedOrder;
 import com.dak.crypto.order.Order;
+import com.dak.crypto.order.RestingOrder;
 import com.dak.crypto.util.OrderCreator;
+import com.dak.crypto.util.OutputFormatter;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 
 public class OrderBookTest {
 
@@ -351,6 +364,484 @@ public class OrderBookTest {
         assertEquals("£4.35", getPriceFromSummary(summary[9]));
     }
 
+    @Test
+    public void testFixedPointOrdersShareLevelsWithDecimalOrders() {
+        TickConfig tickConfig = C_CCY.getTickConfig();
+        OrderBook ob = new OrderBook(Side.SELL, tickConfig);
+
+        Order decimalOrder = createSellOrder("1.35", "3.45");
+        ob.submitOrder(decimalOrder);
+        ob.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, USER_ID, Side.SELL, 100_000_000L, 135_000L));
+        assertEquals(1, ob.getSize());
+        assertEquals(0, new BigDecimal("4.45").compareTo(new BigDecimal(getQuantityFromSummary(ob.getOrderSummary()[0]))));
+
+        Order fixedPointOrder = OrderCreator.createCryptoMarketOrder(C_CCY, USER_ID, Side.SELL, 100_000_000L, 135_001L);
+        assertEquals(135_001L, ((CryptoMarketOrder) fixedPointOrder).getPriceTicks());
+        ob.submitOrder(fixedPointOrder);
+        assertEquals(2, ob.getSize());
+
+        ob.removeOrder(createCancelOrder(fixedPointOrder));
+        ob.removeOrder(createCancelOrder(decimalOrder));
+        assertEquals(1, ob.getSize());
+    }
+
+    @Test
+    public void testRemovalOfRestingOrderKeepsTimePriority() {
+        OrderBook ob = new OrderBook(Side.BUY);
+        RestingOrder first = ob.submitOrder(createBuyOrder("2.5", "1.0"));
+        RestingOrder second = ob.submitOrder(createBuyOrder("2.5", "2.0"));
+        RestingOrder third = ob.submitOrder(createBuyOrder("2.5", "3.0"));
+
+        GroupedOrder level = first.getLevel();
+        assertSame(level, third.getLevel());
+        assertEquals(3, level.size());
+
+        assertTrue(ob.removeOrder(second));
+        assertFalse(ob.removeOrder(second));
+        assertNull(second.getLevel());
+        assertSame(first, level.getFirst());
+        assertSame(third, first.getNext());
+        assertEquals("4.0", getQuantityFromSummary(ob.getOrderSummary()[0]));
+
+        assertTrue(ob.removeOrder(first));
+        assertSame(third, level.getFirst());
+        assertTrue(ob.removeOrder(third));
+        assertEquals(0, ob.getSize());
+    }
+
+    @Test
+    public void testLevelQuantityFollowsAddsFillsAndRemovals() {
+        OrderBook ob = new OrderBook(Side.SELL);
+        RestingOrder first = ob.submitOrder(createSellOrder("3.1", "1.5"));
+        RestingOrder second = ob.submitOrder(createSellOrder("3.1", "2.25"));
+        GroupedOrder level = first.getLevel();
+        assertEquals(375_000_000L, level.getQuantityLots());
+
+        assertFalse(ob.fillOrder(first, 50_000_000L));
+        assertEquals(100_000_000L, first.getQuantityLots());
+        assertEquals(325_000_000L, level.getQuantityLots());
+        assertEquals("3.25", getQuantityFromSummary(ob.getOrderSummary()[0]));
+
+        assertTrue(ob.removeOrder(second));
+        assertEquals(100_000_000L, level.getQuantityLots());
+
+        assertTrue(ob.fillOrder(first, 100_000_000L));
+        assertEquals(0, level.getQuantityLots());
+        assertEquals(0, ob.getSize());
+        assertNull(ob.getBestOrder());
+    }
+
+    @Test
+    public void testRemovalAtWrongPriceIsReported() {
+        OrderBook ob = new OrderBook(Side.SELL);
+        Order order = createSellOrder("1.35", "3.45");
+        ob.submitOrder(order);
+
+        assertFalse(ob.removeOrder(OrderCreator.createCryptoMarketCancelOrder(order.getOrderId(), C_CCY, Side.SELL, new BigDecimal("1.36"))));
+        assertEquals(1, ob.getSize());
+        assertTrue(ob.removeOrder(createCancelOrder(order)));
+        assertEquals(0, ob.getSize());
+    }
+
+    @Test
+    public void testSingleWriterPublishesSnapshots() {
+        OrderBook ob = new OrderBook(Side.BUY, TickConfig.DEFAULT, ConcurrencyMode.SINGLE_WRITER, 2);
+        BookSnapshot snapshot = ob.getSnapshot(2);
+        assertTrue(snapshot.isEmpty());
+        assertEquals(0, ob.getOrderSummary().length);
+
+        RestingOrder order1 = ob.submitOrder(createBuyOrder("1.10", "1.0"));
+        ob.submitOrder(createBuyOrder("1.30", "2.0"));
+        ob.submitOrder(createBuyOrder("1.20", "3.0"));
+        ob.submitOrder(createBuyOrder("1.20", "0.5"));
+
+        snapshot = ob.getSnapshot(2);
+        assertEquals(2, snapshot.getDepth());
+        assertEquals(3, snapshot.getSize());
+        assertEquals(130_000_000L, snapshot.getBestPriceTicks());
+        assertEquals(200_000_000L, snapshot.getBestQuantityLots());
+        assertEquals(120_000_000L, snapshot.getPriceTicks(1));
+        assertEquals(350_000_000L, snapshot.getQuantityLots(1));
+        assertArrayEquals(new String[] {"2.0 for £1.3", "3.5 for £1.2"}, ob.getOrderSummary());
+
+        // Below the published depth, only the size changes
+        assertTrue(ob.removeOrder(order1));
+        assertSame(snapshot, ob.getSnapshot(2));
+        assertEquals(2, ob.getSize());
+
+        ob.fillOrder(ob.getBestOrder(), 50_000_000L);
+        BookSnapshot next = ob.getSnapshot(2);
+        assertTrue(next.getSequence() > snapshot.getSequence());
+        assertEquals(150_000_000L, next.getBestQuantityLots());
+        // Earlier snapshots are unchanged
+        assertEquals(200_000_000L, snapshot.getBestQuantityLots());
+    }
+
+    @Test
+    public void testSingleWriterRejectsOtherWriters() throws InterruptedException {
+        OrderBook ob = new OrderBook(Side.SELL, TickConfig.DEFAULT, ConcurrencyMode.SINGLE_WRITER, 10);
+        ob.submitOrder(createSellOrder("1.35", "3.45"));
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicReference<String[]> summary = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            summary.set(ob.getOrderSummary());
+            try {
+                ob.submitOrder(createSellOrder("1.36", "1.0"));
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+        });
+        other.start();
+        other.join();
+
+        assertNotNull(failure.get());
+        assertEquals(1, summary.get().length);
+        assertEquals(1, ob.getSize());
+    }
+
+    @Test
+    public void testSummaryIntoBuffers() {
+        for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+            OrderBook ob = new OrderBook(Side.SELL, C_CCY.getTickConfig(), mode, 10);
+            ob.submitOrder(createSellOrder("1.36", "4.5"));
+            ob.submitOrder(createSellOrder("1.35", "3.45"));
+            ob.submitOrder(createSellOrder("12", "0.00000005"));
+            ob.submitOrder(createSellOrder("1.35", "0.55"));
+
+            StringBuilder out = new StringBuilder();
+            assertEquals(2, ob.getOrderSummary(2, out));
+            assertEquals("4.0 for £1.35\n4.5 for £1.36\n", out.toString());
+
+            out.setLength(0);
+            assertEquals(3, ob.getOrderSummary(10, out));
+            assertEquals(String.join("\n", ob.getOrderSummary()) + "\n", out.toString());
+            assertTrue(out.toString().endsWith("0.00000005 for £12.0\n"));
+
+            long[] priceTicks = new long[2];
+            long[] quantityLots = new long[2];
+            assertEquals(2, ob.getDepth(priceTicks, quantityLots));
+            assertArrayEquals(new long[] {135_000, 136_000}, priceTicks);
+            assertArrayEquals(new long[] {400_000_000L, 450_000_000L}, quantityLots);
+        }
+    }
+
+    @Test
+    public void testDepthWalkAfterLevelsRemoved() {
+        OrderBook ob = new OrderBook(Side.BUY, C_CCY.getTickConfig());
+        RestingOrder best = ob.submitOrder(createBuyOrder("1.40", "1.0"));
+        RestingOrder middle = ob.submitOrder(createBuyOrder("1.30", "1.0"));
+        ob.submitOrder(createBuyOrder("1.20", "1.0"));
+        ob.submitOrder(createBuyOrder("1.35", "1.0"));
+
+        assertTrue(ob.removeOrder(best));
+        assertTrue(ob.removeOrder(middle));
+        ob.submitOrder(createBuyOrder("1.25", "1.0"));
+
+        long[] priceTicks = new long[5];
+        long[] quantityLots = new long[5];
+        assertEquals(3, ob.getDepth(priceTicks, quantityLots));
+        assertArrayEquals(new long[] {135_000, 125_000, 120_000, 0, 0}, priceTicks);
+    }
+
+    @Test
+    public void testLevelChangesPublished() {
+        OrderBook ob = new OrderBook(Side.SELL, C_CCY.getTickConfig());
+        ob.submitOrder(createSellOrder("1.35", "1.0"));
+
+        List<String> changes = new ArrayList<>();
+        List<BookSnapshot> snapshots = new ArrayList<>();
+        LevelListener listener = new LevelListener() {
+            @Override
+            public void onSnapshot(BookSnapshot snapshot) {
+                snapshots.add(snapshot);
+            }
+
+            @Override
+            public void onLevelChange(Side side, long priceTicks, long quantityLots, long sequence) {
+                changes.add(side + " " + priceTicks + " " + quantityLots + " #" + sequence);
+            }
+        };
+        ob.subscribe(listener, Integer.MAX_VALUE);
+        assertEquals(1, snapshots.size());
+        long sequence = snapshots.get(0).getSequence();
+        assertEquals(135_000, snapshots.get(0).getBestPriceTicks());
+
+        RestingOrder order = ob.submitOrder(createSellOrder("1.35", "2.0"));
+        RestingOrder other = ob.submitOrder(createSellOrder("1.36", "1.5"));
+        ob.fillOrder(order, 50_000_000L);
+        ob.fillOrder(other, 150_000_000L);
+        ob.removeOrder(order);
+
+        assertEquals(Arrays.asList(
+                "SELL 135000 300000000 #" + (sequence + 1),
+                "SELL 136000 150000000 #" + (sequence + 2),
+                "SELL 135000 250000000 #" + (sequence + 3),
+                "SELL 136000 0 #" + (sequence + 4),
+                "SELL 135000 100000000 #" + (sequence + 5)), changes);
+
+        assertTrue(ob.unsubscribe(listener));
+        assertFalse(ob.unsubscribe(listener));
+        ob.submitOrder(createSellOrder("1.37", "1.0"));
+        assertEquals(5, changes.size());
+    }
+
+    @Test
+    public void testDepthViewResyncAfterGap() {
+        OrderBook ob = new OrderBook(Side.BUY, C_CCY.getTickConfig());
+        DepthView view = new DepthView(Side.BUY);
+        assertTrue(view.isStale());
+        ob.subscribe(view, Integer.MAX_VALUE);
+        assertFalse(view.isStale());
+
+        ob.submitOrder(createBuyOrder("1.35", "1.0"));
+        ob.submitOrder(createBuyOrder("1.36", "2.0"));
+        assertEquals(2, view.getLevelCount());
+        assertEquals(200_000_000L, view.getQuantityLots(136_000));
+
+        // A change relayed out of order
+        view.onLevelChange(Side.BUY, 137_000, 1, view.getSequence() + 2);
+        assertTrue(view.isStale());
+        ob.submitOrder(createBuyOrder("1.30", "1.0"));
+        assertEquals(2, view.getLevelCount());
+
+        ob.resync(view, Integer.MAX_VALUE);
+        assertFalse(view.isStale());
+        long[] priceTicks = new long[4];
+        long[] quantityLots = new long[4];
+        assertEquals(3, view.getDepth(priceTicks, quantityLots));
+        assertArrayEquals(new long[] {136_000, 135_000, 130_000, 0}, priceTicks);
+    }
+
+    @Test
+    public void testPartialDepthViewRefilledOnResync() {
+        OrderBook ob = new OrderBook(Side.BUY, C_CCY.getTickConfig());
+        RestingOrder best = ob.submitOrder(createBuyOrder("1.36", "1.0"));
+        ob.submitOrder(createBuyOrder("1.35", "1.0"));
+        ob.submitOrder(createBuyOrder("1.34", "1.0"));
+        DepthView view = new DepthView(Side.BUY);
+        ob.subscribe(view, 2);
+        assertEquals(2, view.getLevelCount());
+
+        // Beyond the view's worst level, where it cannot tell what rests
+        ob.submitOrder(createBuyOrder("1.33", "1.0"));
+        assertEquals(0, view.getQuantityLots(133_000));
+        // Inside it
+        RestingOrder better = ob.submitOrder(createBuyOrder("1.37", "1.0"));
+        assertEquals(3, view.getLevelCount());
+        assertTrue(ob.removeOrder(better));
+        assertFalse(view.isStale());
+
+        // Now 1.34 would move into the top two
+        assertTrue(ob.removeOrder(best));
+        assertTrue(view.isStale());
+        ob.resync(view, 2);
+        assertFalse(view.isStale());
+        long[] priceTicks = new long[3];
+        long[] quantityLots = new long[3];
+        assertEquals(2, view.getDepth(priceTicks, quantityLots));
+        assertArrayEquals(new long[] {135_000, 134_000, 0}, priceTicks);
+    }
+
+    @Test
+    public void testArrayLadderMatchesTreeMap() {
+        for (Side side : Side.values()) {
+            OrderBook tree = new OrderBook(side, C_CCY.getTickConfig(), ConcurrencyMode.LOCKING, 10, BookType.TREE_MAP);
+            OrderBook ladder = new OrderBook(side, C_CCY.getTickConfig(), ConcurrencyMode.LOCKING, 10, BookType.ARRAY_LADDER);
+            Random random = new Random(7);
+            List<RestingOrder[]> resting = new ArrayList<>();
+            long mid = 1_000_000;
+            for (int i = 0; i < 20_000; i++) {
+                if (i % 2_000 == 0) {
+                    // Drift far enough to move the window
+                    mid += random.nextInt(20_001) - 10_000;
+                }
+                if (!resting.isEmpty() && random.nextInt(3) == 0) {
+                    RestingOrder[] pair = resting.remove(random.nextInt(resting.size()));
+                    assertEquals(tree.removeOrder(pair[0]), ladder.removeOrder(pair[1]));
+                } else {
+                    // Mostly near the mid, sometimes far out
+                    long priceTicks = mid + (random.nextInt(10) == 0 ? random.nextInt(100_000) - 50_000 : random.nextInt(400) - 200);
+                    CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(C_CCY, USER_ID, side, 1 + random.nextInt(100), priceTicks);
+                    resting.add(new RestingOrder[] {tree.submitOrder(order), ladder.submitOrder(order)});
+                }
+                if (i % 500 == 0) {
+                    assertSameLevels(tree, ladder);
+                }
+            }
+            assertSameLevels(tree, ladder);
+            assertEquals(side, ladder.getBestOrder().getOrder().getSide());
+        }
+    }
+
+    @Test
+    public void testPooledBookRecyclesNodes() {
+        OrderBook ob = new OrderBook(Side.SELL, C_CCY.getTickConfig(), ConcurrencyMode.LOCKING, 10, BookType.TREE_MAP, true);
+        CryptoMarketOrder first = createSellOrder("1.35", "1.0");
+        RestingOrder resting = ob.submitOrder(first);
+        GroupedOrder level = resting.getLevel();
+        assertTrue(ob.removeOrder(resting));
+        assertNull(resting.getOrder());
+
+        CryptoMarketOrder second = createSellOrder("1.40", "2.0");
+        RestingOrder reused = ob.submitOrder(second);
+        assertSame(resting, reused);
+        assertSame(level, reused.getLevel());
+        assertSame(second, reused.getOrder());
+        assertEquals(140_000, reused.getLevel().getPriceTicks());
+        assertEquals(1, ob.getSize());
+        assertEquals("2.0" + OutputFormatter.PRICE_SEPARATOR + "1.4", ob.getOrderSummary()[0]);
+    }
+
+    @Test
+    public void testPooledBookSteadyStateAllocatesNothing() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        OrderBook ob = new OrderBook(Side.BUY, C_CCY.getTickConfig(), ConcurrencyMode.LOCKING, 10, BookType.ARRAY_LADDER, true);
+        CryptoMarketOrder[] orders = new CryptoMarketOrder[64];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = OrderCreator.createCryptoMarketOrder(C_CCY, USER_ID, Side.BUY, 100, 100_000L + i % 16);
+        }
+        RestingOrder[] resting = new RestingOrder[orders.length];
+        // Warm up, filling the pool to its steady state size
+        cycle(ob, orders, resting, 1_000);
+
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        cycle(ob, orders, resting, 1_000);
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+        // Slack for the measurement itself
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void cycle(OrderBook ob, CryptoMarketOrder[] orders, RestingOrder[] resting, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < orders.length; i++) {
+                resting[i] = ob.submitOrder(orders[i]);
+            }
+            for (int i = 0; i < orders.length; i++) {
+                if (i % 2 == 0) {
+                    ob.fillOrder(resting[i], resting[i].getQuantityLots());
+                } else {
+                    ob.removeOrder(resting[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReduceAndMoveOrder() {
+        for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+            OrderBook ob = new OrderBook(Side.BUY, C_CCY.getTickConfig(), mode, 10);
+            RestingOrder first = ob.submitOrder(createBuyOrder("1.30", "2.0"));
+            RestingOrder second = ob.submitOrder(createBuyOrder("1.30", "1.0"));
+
+            assertTrue(ob.reduceOrder(first, 50_000_000L));
+            assertSame(first, ob.getBestOrder());
+            BookSnapshot snapshot = ob.getSnapshot(10);
+            assertEquals(150_000_000L, snapshot.getBestQuantityLots());
+
+            RestingOrder moved = ob.moveOrder(first, 135_000, 70_000_000L);
+            assertSame(first.getOrder(), moved.getOrder());
+            assertEquals(135_000, moved.getPriceTicks());
+            assertSame(moved, ob.getBestOrder());
+            snapshot = ob.getSnapshot(10);
+            assertEquals(2, snapshot.getDepth());
+            assertEquals(70_000_000L, snapshot.getBestQuantityLots());
+            assertEquals(100_000_000L, snapshot.getQuantityLots(1));
+
+            assertNull(ob.moveOrder(first, 120_000, 1));
+            assertFalse(ob.reduceOrder(first, 1));
+            assertTrue(ob.removeOrder(second));
+            assertTrue(ob.removeOrder(moved));
+            assertEquals(0, ob.getSize());
+        }
+    }
+
+    @Test
+    public void testMetricsCountOperations() {
+        assumeTrue(Metrics.ENABLED);
+        for (ConcurrencyMode mode : ConcurrencyMode.values()) {
+            OrderBook ob = new OrderBook(Side.SELL, C_CCY.getTickConfig(), mode, 10);
+            RestingOrder first = ob.submitOrder(createSellOrder("1.35", "2.0"));
+            RestingOrder second = ob.submitOrder(createSellOrder("1.36", "1.0"));
+            ob.fillOrder(first, 100_000_000L);
+            assertTrue(ob.removeOrder(second));
+            assertFalse(ob.removeOrder(second));
+            ob.getOrderSummary();
+
+            BookMetrics metrics = ob.getMetrics();
+            assertEquals(2, metrics.getSubmits());
+            assertEquals(1, metrics.getFills());
+            assertEquals(1, metrics.getCancels());
+            assertEquals(1, metrics.getMisses());
+            assertEquals(1, metrics.getLevels());
+            assertEquals(2, metrics.getSubmitLatency().getCount());
+            assertEquals(2, metrics.getRemoveLatency().getCount());
+            assertEquals(1, metrics.getSummaryLatency().getCount());
+            assertEquals(mode == ConcurrencyMode.LOCKING, metrics.getLockWait().getCount() > 0);
+
+            metrics.reset();
+            assertEquals(0, metrics.getSubmits());
+            assertEquals(0, metrics.getSubmitLatency().getCount());
+        }
+    }
+
+    @Test
+    public void testMetricsSharedWhenDisabled() {
+        assumeFalse(Metrics.ENABLED);
+        OrderBook buys = new OrderBook(Side.BUY, C_CCY.getTickConfig());
+        OrderBook sells = new OrderBook(Side.SELL, C_CCY.getTickConfig());
+        assertSame(BookMetrics.DISABLED, buys.getMetrics());
+        assertSame(BookMetrics.DISABLED, sells.getMetrics());
+    }
+
+    private static void assertSameLevels(OrderBook expected, OrderBook actual) {
+        long[] expectedPrices = new long[expected.getSize()];
+        long[] expectedQuantities = new long[expected.getSize()];
+        long[] actualPrices = new long[expected.getSize()];
+        long[] actualQuantities = new long[expected.getSize()];
+        assertEquals(expected.getSize(), actual.getSize());
+        expected.getDepth(expectedPrices, expectedQuantities);
+        actual.getDepth(actualPrices, actualQuantities);
+        assertArrayEquals(expectedPrices, actualPrices);
+        assertArrayEquals(expectedQuantities, actualQuantities);
+        RestingOrder expectedBest = expected.getBestOrder();
+        RestingOrder actualBest = actual.getBestOrder();
+        assertEquals(expectedBest == null, actualBest == null);
+        if (expectedBest != null) {
+            assertSame(expectedBest.getOrder(), actualBest.getOrder());
+        }
+    }
+
+    @Test
+    public void testSummaryDropsTrailingZeros() {
+        OrderBook ob = new OrderBook(Side.SELL);
+        CryptoMarketOrder order = createSellOrder("2.40", "10");
+        ob.submitOrder(order);
+
+        // The order as given, and the level as summarised from its ticks and lots
+        assertEquals("10" + OutputFormatter.PRICE_SEPARATOR + "2.40", OutputFormatter.formatOutput(order));
+        assertEquals("10.0" + OutputFormatter.PRICE_SEPARATOR + "2.4", ob.getOrderSummary()[0]);
+        StringBuilder out = new StringBuilder();
+        assertEquals(1, ob.getOrderSummary(10, out));
+        assertEquals("10.0" + OutputFormatter.PRICE_SEPARATOR + "2.4\n", out.toString());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNoPublishedDepthRejected() {
+        new OrderBook(Side.BUY, TickConfig.DEFAULT, ConcurrencyMode.SINGLE_WRITER, 0);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSubmissionOfPriceOffTick() {
+        OrderBook ob = new OrderBook(Side.SELL, C_CCY.getTickConfig());
+        ob.submitOrder(createSellOrder("1.350001", "3.45"));
+    }
+
 
     private CryptoMarketOrder createBuyOrder(String price, String quantity) {
         return OrderCreator.createCryptoMarketOrder(C_CCY, USER_ID, Side.BUY, new BigDecimal(quantity), new BigDecimal(price));
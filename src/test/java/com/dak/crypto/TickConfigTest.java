@@ -0,0 +1,60 @@
+package com.dak.crypto;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+public class TickConfigTest {
+
+    private final TickConfig config = new TickConfig("0.05", "0.001");
+
+    @Test
+    public void testConversionToTicksAndLots() {
+        assertEquals(0, config.toTicks(BigDecimal.ZERO));
+        assertEquals(20, config.toTicks(new BigDecimal("1")));
+        assertEquals(247, config.toTicks(new BigDecimal("12.35")));
+        assertEquals(1234, config.toLots(new BigDecimal("1.234")));
+        assertEquals(1000, config.toLots(new BigDecimal("1.0000")));
+    }
+
+    @Test
+    public void testConversionFromTicksAndLots() {
+        assertEquals(0, new BigDecimal("12.35").compareTo(config.toPrice(247)));
+        assertEquals(0, new BigDecimal("1.234").compareTo(config.toQuantity(1234)));
+    }
+
+    @Test
+    public void testAppendMatchesDisplayedValue() {
+        StringBuilder out = new StringBuilder();
+        config.appendPrice(out, 247).append(' ');
+        config.appendPrice(out, 20).append(' ');
+        config.appendQuantity(out, 1234).append(' ');
+        config.appendQuantity(out, 7).append(' ');
+        config.appendQuantity(out, 0);
+        assertEquals("12.35 1.0 1.234 0.007 0.0", out.toString());
+
+        TickConfig whole = new TickConfig("1E+1", "0.25");
+        out.setLength(0);
+        whole.appendPrice(out, 3).append(' ');
+        whole.appendQuantity(out, 6).append(' ');
+        whole.appendQuantity(out, Long.MAX_VALUE);
+        assertEquals("30.0 1.5 " + new BigDecimal("0.25").multiply(BigDecimal.valueOf(Long.MAX_VALUE)).toPlainString(), out.toString());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testPriceOffTick() {
+        config.toTicks(new BigDecimal("12.36"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testQuantityOffLot() {
+        config.toLots(new BigDecimal("0.0005"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNonPositiveTickSize() {
+        new TickConfig("0", "0.001");
+    }
+}
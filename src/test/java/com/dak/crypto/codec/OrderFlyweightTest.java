@@ -0,0 +1,93 @@
+package com.dak.crypto.codec;
+
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.OrderBoard;
+import com.dak.crypto.Side;
+import com.dak.crypto.SubmitResult;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.order.Order;
+import com.dak.crypto.util.OrderCreator;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OrderFlyweightTest {
+
+    private static final Cryptocurrency COIN = Cryptocurrency.XRP;
+
+    @Test
+    public void testNewOrderReadInPlace() {
+        CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(COIN, "user", Side.SELL, 25L, 1_234L);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+        buffer.position(10);
+        OrderCodec.encodeNewOrder(buffer, order, order.getPriceTicks(), order.getQuantityLots());
+
+        NewOrderFlyweight flyweight = new NewOrderFlyweight().wrap(buffer, 10);
+        assertEquals(OrderCodec.newOrderLength(order), flyweight.getEncodedLength());
+        assertEquals(order.getOrderId(), flyweight.getOrderId());
+        assertEquals(order.getOrderId().getLeastSignificantBits(), flyweight.getOrderIdLeastSignificantBits());
+        assertEquals(COIN, flyweight.getCoinType());
+        assertEquals(Side.SELL, flyweight.getSide());
+        assertEquals(25L, flyweight.getQuantityLots());
+        assertEquals(1_234L, flyweight.getPriceTicks());
+        assertEquals(order.getPrice(), flyweight.getPrice());
+        assertTrue(flyweight.isUserId("user"));
+        assertFalse(flyweight.isUserId("users"));
+        String userId = flyweight.getUserId();
+        assertEquals("user", userId);
+        assertSame(userId, flyweight.getUserId());
+
+        CryptoMarketOrder copy = flyweight.detach();
+        assertEquals(order.getOrderId(), copy.getOrderId());
+        assertEquals(order.getPriceTicks(), copy.getPriceTicks());
+        assertEquals(order.getQuantityLots(), copy.getQuantityLots());
+        assertEquals("user", copy.getUserId());
+    }
+
+    @Test
+    public void testBoardRestsACopyOfTheFlyweight() {
+        List<Order> restingOrders = new ArrayList<>();
+        OrderBoard board = new OrderBoard(COIN, (coinType, aggressor, resting, priceTicks, quantityLots) -> restingOrders.add(resting));
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        NewOrderFlyweight flyweight = new NewOrderFlyweight();
+
+        CryptoMarketOrder sell = OrderCreator.createCryptoMarketOrder(COIN, "seller", Side.SELL, 300L, 1_000L);
+        OrderCodec.encodeNewOrder(buffer, sell, sell.getPriceTicks(), sell.getQuantityLots());
+        assertEquals(SubmitResult.ACCEPTED, board.submitOrder(flyweight.wrap(buffer, 0)));
+
+        // Reusing the buffer leaves the resting order as it was
+        buffer.clear();
+        CryptoMarketOrder buy = OrderCreator.createCryptoMarketOrder(COIN, "buyer", Side.BUY, 100L, 1_000L);
+        OrderCodec.encodeNewOrder(buffer, buy, buy.getPriceTicks(), buy.getQuantityLots());
+        assertEquals(SubmitResult.ACCEPTED, board.submitOrder(flyweight.wrap(buffer, 0)));
+        assertEquals(1, restingOrders.size());
+        assertNotSame(flyweight, restingOrders.get(0));
+        assertEquals(sell.getOrderId(), restingOrders.get(0).getOrderId());
+        assertEquals(Side.SELL, restingOrders.get(0).getSide());
+        assertEquals("seller", ((CryptoOrder) restingOrders.get(0)).getUserId());
+        assertEquals(1, board.getOrderCount());
+
+        buffer.clear();
+        OrderCodec.encodeCancel(buffer, COIN, sell.getOrderId());
+        CancelOrderFlyweight cancel = new CancelOrderFlyweight().wrap(buffer, 0);
+        assertEquals(sell.getOrderId(), cancel.getOriginalOrderId());
+        assertEquals(COIN.getId(), cancel.getCoinId());
+        assertEquals(0L, cancel.getPriceTicks());
+        assertEquals(0L, cancel.detach().getPriceTicks());
+        assertEquals(SubmitResult.CANCELLED, board.submitOrder(cancel));
+        assertEquals(SubmitResult.NOT_FOUND, board.submitOrder(cancel));
+        assertEquals(0, board.getOrderCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testWrongTypeRefused() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        OrderCodec.encodeCancel(buffer, COIN, OrderCodec.NO_ORDER_ID);
+        new NewOrderFlyweight().wrap(buffer, 0);
+    }
+}
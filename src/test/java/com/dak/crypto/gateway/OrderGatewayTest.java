@@ -0,0 +1,286 @@
+package com.dak.crypto.gateway;
+
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.ExecutionMode;
+import com.dak.crypto.Side;
+import com.dak.crypto.SubmitResult;
+import com.dak.crypto.codec.GatewayCodec;
+import com.dak.crypto.codec.OrderCodec;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class OrderGatewayTest {
+
+    private static final Cryptocurrency COIN = Cryptocurrency.BITCOIN;
+
+    private OrderGateway gateway;
+    private CryptoMarket market;
+
+    @Before
+    public void setUp() {
+        gateway = new OrderGateway(new InetSocketAddress("127.0.0.1", 0));
+        market = new CryptoMarket(gateway);
+        gateway.start(market);
+    }
+
+    @After
+    public void tearDown() {
+        gateway.close();
+        market.close();
+    }
+
+    @Test
+    public void testOrdersAckedAndFillsReported() throws IOException {
+        try (Client seller = new Client(); Client buyer = new Client()) {
+            CryptoMarketOrder sell = OrderCreator.createCryptoMarketOrder(COIN, "seller", Side.SELL, 300L, 10_000L);
+            seller.send(sell);
+            seller.expectAck(SubmitResult.ACCEPTED, sell.getOrderId());
+
+            CryptoMarketOrder buy = OrderCreator.createCryptoMarketOrder(COIN, "buyer", Side.BUY, 100L, 10_005L);
+            buyer.send(buy);
+            // Fills are sent before the aggressor's ack, and to the resting order's user too
+            buyer.expectFill(Side.BUY, buy.getOrderId(), 10_000L, 100L);
+            buyer.expectAck(SubmitResult.ACCEPTED, buy.getOrderId());
+            seller.expectFill(Side.SELL, sell.getOrderId(), 10_000L, 100L);
+
+            ByteBuffer request = ByteBuffer.allocate(GatewayCodec.DEPTH_REQUEST_LENGTH);
+            GatewayCodec.encodeDepthRequest(request, COIN, Side.SELL, 5);
+            buyer.write(request);
+            ByteBuffer depth = buyer.receive();
+            assertEquals(GatewayCodec.DEPTH, depth.get());
+            assertEquals(COIN.getId(), depth.get());
+            assertEquals(Side.SELL.ordinal(), depth.get());
+            assertTrue(depth.getLong() > 0);
+            assertEquals(1, depth.getShort());
+            assertEquals(10_000L, depth.getLong());
+            assertEquals(200L, depth.getLong());
+
+            ByteBuffer cancel = ByteBuffer.allocate(OrderCodec.CANCEL_LENGTH * 2);
+            OrderCodec.encodeCancel(cancel, COIN, sell.getOrderId());
+            OrderCodec.encodeCancel(cancel, COIN, sell.getOrderId());
+            seller.write(cancel);
+            seller.expectAck(SubmitResult.CANCELLED, sell.getOrderId());
+            seller.expectAck(SubmitResult.NOT_FOUND, sell.getOrderId());
+            assertEquals(0, market.getOrderSummary(COIN, Side.SELL).length);
+        }
+    }
+
+    @Test
+    public void testInvalidOrderRejected() throws IOException {
+        try (Client client = new Client()) {
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(COIN, "user", Side.BUY, 100L, 10_000L);
+            client.send(order);
+            client.expectAck(SubmitResult.ACCEPTED, order.getOrderId());
+            client.send(order);
+            client.expectAck(SubmitResult.REJECTED, order.getOrderId());
+        }
+    }
+
+    @Test
+    public void testBadDepthRequestsRejected() throws IOException {
+        try (Client client = new Client()) {
+            ByteBuffer requests = ByteBuffer.allocate(GatewayCodec.DEPTH_REQUEST_LENGTH * 3);
+            // An invalid side, a coin not listed and an id no coin has
+            requests.put(GatewayCodec.DEPTH_REQUEST).put((byte) COIN.getId()).put((byte) 7).putShort((short) 5);
+            GatewayCodec.encodeDepthRequest(requests, Cryptocurrency.ETHERIUM, Side.BUY, 5);
+            requests.put(GatewayCodec.DEPTH_REQUEST).put((byte) 255).put((byte) 0).putShort((short) 5);
+            client.write(requests);
+            client.expectAck(SubmitResult.REJECTED, new UUID(0, 0));
+            client.expectAck(SubmitResult.REJECTED, new UUID(0, 0));
+            ByteBuffer ack = client.receive();
+            assertEquals(SubmitResult.REJECTED, GatewayCodec.getAckResult(ack));
+            assertEquals((byte) 255, ack.get(1));
+            assertNull(market.find(Cryptocurrency.ETHERIUM));
+
+            // The session carries on
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(COIN, "user", Side.BUY, 100L, 10_000L);
+            client.send(order);
+            client.expectAck(SubmitResult.ACCEPTED, order.getOrderId());
+        }
+    }
+
+    @Test
+    public void testUnknownCoinCancelRejected() throws IOException {
+        try (Client client = new Client()) {
+            UUID orderId = UUID.randomUUID();
+            ByteBuffer requests = ByteBuffer.allocate(OrderCodec.CANCEL_LENGTH + OrderCodec.AMEND_LENGTH);
+            requests.put(OrderCodec.CANCEL).put((byte) 255).putLong(orderId.getMostSignificantBits()).putLong(orderId.getLeastSignificantBits());
+            requests.put(OrderCodec.AMEND).put((byte) 255).putLong(orderId.getMostSignificantBits()).putLong(orderId.getLeastSignificantBits())
+                    .putLong(100L).putLong(10_000L);
+            client.write(requests);
+            client.expectAck(SubmitResult.REJECTED, orderId);
+            client.expectAck(SubmitResult.REJECTED, orderId);
+
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(COIN, "user", Side.BUY, 100L, 10_000L);
+            client.send(order);
+            client.expectAck(SubmitResult.ACCEPTED, order.getOrderId());
+        }
+    }
+
+    @Test
+    public void testOversizedUserIdClosesConnection() throws IOException {
+        try (Client client = new Client()) {
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(COIN, "user", Side.BUY, 100L, 10_000L);
+            ByteBuffer encoded = ByteBuffer.allocate(OrderCodec.newOrderLength(order));
+            OrderCodec.encodeNewOrder(encoded, order, order.getPriceTicks(), order.getQuantityLots());
+            // Negative read as signed, read as unsigned longer than the gateway's read buffer
+            encoded.putShort(35, (short) -1);
+            client.write(encoded);
+            client.expectClosed();
+        }
+    }
+
+    @Test
+    public void testSlowConsumerDropped() throws IOException {
+        try (OrderGateway limited = new OrderGateway(new InetSocketAddress("127.0.0.1", 0), 64 * 1024);
+             CryptoMarket limitedMarket = new CryptoMarket(limited)) {
+            limited.start(limitedMarket);
+            for (int i = 0; i < 100; i++) {
+                limitedMarket.submitOrder(OrderCreator.createCryptoMarketOrder(COIN, "maker", Side.BUY, 100L, 9_000L + i));
+            }
+            int requests = 5_000;
+            long replyLength = GatewayCodec.depthLength(100);
+            try (Client client = new Client(limited.getLocalAddress())) {
+                ByteBuffer request = ByteBuffer.allocate(GatewayCodec.DEPTH_REQUEST_LENGTH * requests);
+                for (int i = 0; i < requests; i++) {
+                    GatewayCodec.encodeDepthRequest(request, COIN, Side.BUY, 100);
+                }
+                try {
+                    client.write(request);
+                } catch (IOException e) {
+                    // Dropped before it finished sending
+                }
+                assertTrue(client.expectClosed() < requests * replyLength);
+            }
+        }
+    }
+
+    @Test
+    public void testSplitMessagesReassembled() throws IOException {
+        try (Client client = new Client()) {
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(COIN, "user", Side.BUY, 100L, 10_000L);
+            ByteBuffer encoded = ByteBuffer.allocate(OrderCodec.newOrderLength(order));
+            OrderCodec.encodeNewOrder(encoded, order, order.getPriceTicks(), order.getQuantityLots());
+            encoded.flip();
+            for (int i = 0; i < encoded.limit(); i += 7) {
+                ByteBuffer part = encoded.duplicate();
+                part.position(i).limit(Math.min(i + 7, encoded.limit()));
+                client.channel.write(part);
+            }
+            client.expectAck(SubmitResult.ACCEPTED, order.getOrderId());
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testBoardThreadMarketRefused() {
+        try (OrderGateway other = new OrderGateway(new InetSocketAddress("127.0.0.1", 0));
+             CryptoMarket boardThreaded = new CryptoMarket(other, ExecutionMode.BOARD_THREAD)) {
+            other.start(boardThreaded);
+        }
+    }
+
+    private class Client implements AutoCloseable {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(4096);
+
+        Client() throws IOException {
+            this(gateway.getLocalAddress());
+        }
+
+        Client(InetSocketAddress address) throws IOException {
+            channel = SocketChannel.open();
+            // Small, so what it does not read backs up in the gateway
+            channel.socket().setReceiveBufferSize(4096);
+            channel.connect(address);
+            in.flip();
+        }
+
+        void send(CryptoMarketOrder order) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(OrderCodec.newOrderLength(order));
+            OrderCodec.encodeNewOrder(buffer, order, order.getPriceTicks(), order.getQuantityLots());
+            write(buffer);
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * @return the next message, positioned at its start
+         */
+        ByteBuffer receive() throws IOException {
+            while (true) {
+                int length = GatewayCodec.encodedLength(in);
+                if (length >= 0 && in.remaining() >= length) {
+                    ByteBuffer message = in.slice();
+                    message.limit(length);
+                    in.position(in.position() + length);
+                    return message;
+                }
+                in.compact();
+                if (channel.read(in) < 0) {
+                    fail("Gateway closed the connection");
+                }
+                in.flip();
+            }
+        }
+
+        /**
+         * Reads until the gateway closes the connection
+         *
+         * @return the bytes read meanwhile
+         */
+        long expectClosed() {
+            long received = in.remaining();
+            ByteBuffer discard = ByteBuffer.allocate(4096);
+            try {
+                int read;
+                while ((read = channel.read(discard)) >= 0) {
+                    received += read;
+                    discard.clear();
+                }
+            } catch (IOException e) {
+                // Reset rather than closed
+            }
+            return received;
+        }
+
+        void expectAck(SubmitResult result, UUID orderId) throws IOException {
+            ByteBuffer ack = receive();
+            assertEquals(GatewayCodec.ACK, ack.get(0));
+            assertEquals(result, GatewayCodec.getAckResult(ack));
+            assertEquals(orderId, new UUID(ack.getLong(3), ack.getLong(11)));
+        }
+
+        void expectFill(Side side, UUID orderId, long priceTicks, long quantityLots) throws IOException {
+            ByteBuffer fill = receive();
+            assertEquals(GatewayCodec.FILL, fill.get());
+            assertEquals(COIN.getId(), fill.get());
+            assertEquals(side.ordinal(), fill.get());
+            assertEquals(orderId, new UUID(fill.getLong(), fill.getLong()));
+            assertEquals(priceTicks, fill.getLong());
+            assertEquals(quantityLots, fill.getLong());
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.dak.crypto.journal;
+
+import com.dak.crypto.BookType;
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.ExecutionMode;
+import com.dak.crypto.Side;
+import com.dak.crypto.TradeListener;
+import com.dak.crypto.codec.OrderCodec;
+import com.dak.crypto.order.CryptoMarketCancelOrder;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.CryptoOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class MappedOrderJournalTest {
+
+    private static final int SMALL_REGION = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordsReadBackInOrder() throws IOException {
+        Path file = folder.newFile().toPath();
+        CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(Cryptocurrency.XRP, "user\u00e9", Side.SELL, 25L, 1_234L);
+        try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.EVERY_RECORD)) {
+            journal.onOrder(order, order.getPriceTicks(), order.getQuantityLots());
+            journal.onCancel(Cryptocurrency.XRP, order.getOrderId());
+        }
+
+        List<CryptoOrder> records = new ArrayList<>();
+        try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.NONE)) {
+            journal.forEach(0, records::add);
+        }
+        assertEquals(2, records.size());
+        CryptoOrder read = records.get(0);
+        assertEquals(order.getOrderId(), read.getOrderId());
+        assertEquals("user\u00e9", read.getUserId());
+        assertEquals(Cryptocurrency.XRP, read.getCoinType());
+        assertEquals(Side.SELL, read.getSide());
+        assertEquals(25L, read.getQuantityLots());
+        assertEquals(1_234L, read.getPriceTicks());
+
+        CryptoMarketCancelOrder cancel = (CryptoMarketCancelOrder) records.get(1);
+        assertEquals(OrderCodec.NO_ORDER_ID, cancel.getOrderId());
+        assertEquals(order.getOrderId(), cancel.getOriginalOrderId());
+    }
+
+    @Test
+    public void testBatchSyncedAfterMaxDelay() throws IOException, InterruptedException {
+        try (MappedOrderJournal journal = new MappedOrderJournal(folder.newFile().toPath(), SyncPolicy.BATCH, 1_000, 500, SMALL_REGION)) {
+            journal.onCancel(Cryptocurrency.BITCOIN, UUID.randomUUID());
+            journal.onCancel(Cryptocurrency.BITCOIN, UUID.randomUUID());
+            assertTrue(journal.getUnsyncedCount() > 0);
+            // Synced short of a batch with nothing more written
+            Thread.sleep(1_200);
+            assertEquals(0, journal.getUnsyncedCount());
+        }
+    }
+
+    @Test
+    public void testReplayRebuildsMarket() throws IOException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Path file = folder.newFile().toPath();
+            String[] bids;
+            String[] asks;
+            try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.BATCH, 8, SMALL_REGION);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal)) {
+                fill(market);
+                bids = market.getOrderSummary(Cryptocurrency.BITCOIN, Side.BUY);
+                asks = market.getOrderSummary(Cryptocurrency.BITCOIN, Side.SELL);
+            }
+
+            try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.BATCH, 8, SMALL_REGION);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal)) {
+                long records = journal.replay(market);
+                assertTrue(records > 200);
+                assertArrayEquals(bids, market.getOrderSummary(Cryptocurrency.BITCOIN, Side.BUY));
+                assertArrayEquals(asks, market.getOrderSummary(Cryptocurrency.BITCOIN, Side.SELL));
+
+                // Not journalled twice, and new orders follow the replayed ones
+                long position = journal.getPosition();
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(Cryptocurrency.BITCOIN, "late", Side.BUY, new BigDecimal("1"), new BigDecimal("50")));
+                assertTrue(journal.getPosition() > position);
+                assertEquals(records + 1, countRecords(journal));
+            }
+        }
+    }
+
+    @Test
+    public void testStopsReplayed() throws IOException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Path file = folder.newFile().toPath();
+            CryptoOrder fired = OrderCreator.createStopLimitOrder(Cryptocurrency.BITCOIN, "stop", Side.BUY, 100L, 10_005L, 10_006L);
+            CryptoOrder waiting = OrderCreator.createStopLossOrder(Cryptocurrency.BITCOIN, "stop", Side.SELL, 100L, 9_000L);
+            CryptoOrder cancelled = OrderCreator.createStopLossOrder(Cryptocurrency.BITCOIN, "stop", Side.SELL, 100L, 9_500L);
+            String[] asks;
+            try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.NONE);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal)) {
+                market.submitOrder(fired);
+                market.submitOrder(waiting);
+                market.submitOrder(cancelled);
+                market.cancelOrder(Cryptocurrency.BITCOIN, cancelled.getOrderId());
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(Cryptocurrency.BITCOIN, "maker", Side.SELL, 300L, 10_005L));
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(Cryptocurrency.BITCOIN, "taker", Side.BUY, 100L, 10_005L));
+                assertEquals(1, market.get(Cryptocurrency.BITCOIN).getStopOrderCount());
+                asks = market.getOrderSummary(Cryptocurrency.BITCOIN, Side.SELL);
+            }
+
+            try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.NONE);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal)) {
+                // Three stops, a cancel, two orders and a trigger
+                assertEquals(7, journal.replay(market));
+                assertArrayEquals(asks, market.getOrderSummary(Cryptocurrency.BITCOIN, Side.SELL));
+                assertEquals(1, market.get(Cryptocurrency.BITCOIN).getStopOrderCount());
+                assertTrue(market.cancelOrder(Cryptocurrency.BITCOIN, waiting.getOrderId()));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectedOrdersNotJournalled() throws IOException {
+        Path file = folder.newFile().toPath();
+        try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.NONE);
+             CryptoMarket market = new CryptoMarket(TradeListener.NONE, ExecutionMode.CALLER_THREAD, journal)) {
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(Cryptocurrency.BITCOIN, "user", Side.BUY, new BigDecimal("1"), new BigDecimal("50"));
+            market.submitOrder(order);
+            try {
+                market.submitOrder(order);
+                fail("Duplicate order accepted");
+            } catch (RuntimeException e) {
+                // expected
+            }
+            assertFalse(market.cancelOrder(Cryptocurrency.BITCOIN, OrderCodec.NO_ORDER_ID));
+            assertEquals(1, countRecords(journal));
+        }
+    }
+
+    // Defined once for the JVM, as other tests see every defined coin
+    private static final Cryptocurrency JOURNALCOIN = Cryptocurrency.define("JOURNALCOIN", "0.5", "0.1", BookType.TREE_MAP);
+
+    @Test
+    public void testCoinsReadByNameNotId() throws IOException {
+        Cryptocurrency coin = JOURNALCOIN;
+        Path file = folder.newFile().toPath();
+        CryptoMarketOrder first = OrderCreator.createCryptoMarketOrder(coin, "user", Side.BUY, 10L, 20L);
+        try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.NONE)) {
+            journal.onOrder(first, first.getPriceTicks(), first.getQuantityLots());
+        }
+        // As if written by a process that gave the coin id 200
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            assertEquals(OrderCodec.COIN, bytes.get(4));
+            bytes.put(5, (byte) 200);
+            int order = 4 + bytes.getInt(0);
+            assertEquals(OrderCodec.NEW_ORDER, bytes.get(order + 4));
+            bytes.put(order + 5, (byte) 200);
+        }
+
+        CryptoMarketOrder second = OrderCreator.createCryptoMarketOrder(coin, "user", Side.SELL, 10L, 30L);
+        List<CryptoOrder> records = new ArrayList<>();
+        try (MappedOrderJournal journal = new MappedOrderJournal(file, SyncPolicy.NONE)) {
+            journal.onOrder(second, second.getPriceTicks(), second.getQuantityLots());
+            journal.forEach(0, records::add);
+        }
+        assertEquals(2, records.size());
+        assertEquals(first.getOrderId(), records.get(0).getOrderId());
+        assertSame(coin, records.get(0).getCoinType());
+        assertEquals(second.getOrderId(), records.get(1).getOrderId());
+        assertSame(coin, records.get(1).getCoinType());
+    }
+
+    private static void fill(CryptoMarket market) {
+        List<CryptoMarketOrder> resting = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Side side = i % 2 == 0 ? Side.BUY : Side.SELL;
+            // Overlapping prices, so some orders trade
+            long priceTicks = side == Side.BUY ? 10_000 + i % 13 : 10_010 + i % 11;
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(Cryptocurrency.BITCOIN, "user" + i, side, 1_000L * (1 + i % 5), priceTicks);
+            market.submitOrder(order);
+            resting.add(order);
+            if (i % 7 == 0) {
+                market.cancelOrder(Cryptocurrency.BITCOIN, resting.get(i / 2).getOrderId());
+            }
+            if (i % 9 == 0) {
+                market.submitOrder(OrderCreator.createCryptoMarketCancelOrder(resting.get(i / 3).getOrderId(), Cryptocurrency.BITCOIN));
+            }
+            if (i % 5 == 0) {
+                // Alternately a reduction in place and a move that may cross
+                long amendTicks = i % 10 == 0 ? resting.get(i / 4).getPriceTicks() : 10_005 + i % 9;
+                market.amendOrder(Cryptocurrency.BITCOIN, resting.get(i / 4).getOrderId(), amendTicks, 500L);
+            }
+        }
+    }
+
+    private static long countRecords(MappedOrderJournal journal) {
+        long[] count = new long[1];
+        journal.forEach(0, order -> count[0]++);
+        return count[0];
+    }
+}
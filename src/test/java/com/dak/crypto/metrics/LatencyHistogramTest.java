@@ -0,0 +1,46 @@
+package com.dak.crypto.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.bucketOf(Long.MAX_VALUE) + 1; bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest > previousHighest);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousHighest + 1));
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            previousHighest = highest;
+        }
+        assertEquals(Long.MAX_VALUE, previousHighest);
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+        LatencySnapshot snapshot = histogram.getSnapshot();
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(50_000, snapshot.getMean());
+        assertEquals(100_000, snapshot.getMax());
+        assertWithin(50_000, snapshot.getP50());
+        assertWithin(90_000, snapshot.getP90());
+        assertWithin(99_000, snapshot.getP99());
+        assertWithin(99_900, snapshot.getP999());
+
+        histogram.reset();
+        snapshot = histogram.getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getP99());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected " + expected + " but was " + actual, actual >= expected && actual <= expected + expected / 32);
+    }
+}
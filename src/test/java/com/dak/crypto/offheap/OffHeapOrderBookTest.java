@@ -0,0 +1,175 @@
+package com.dak.crypto.offheap;
+
+import com.dak.crypto.ConcurrencyMode;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.OrderBook;
+import com.dak.crypto.Side;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.order.RestingOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class OffHeapOrderBookTest {
+
+    private static final Cryptocurrency C_CCY = Cryptocurrency.LITECOIN;
+
+    @Test
+    public void testOrderRecordsReadBack() {
+        OffHeapOrderBook ob = new OffHeapOrderBook(Side.BUY, C_CCY.getTickConfig());
+        CryptoMarketOrder first = OrderCreator.createCryptoMarketOrder(C_CCY, "alice", Side.BUY, new BigDecimal("2.0"), new BigDecimal("1.35"));
+        CryptoMarketOrder second = OrderCreator.createCryptoMarketOrder(C_CCY, "bob", Side.BUY, new BigDecimal("1.0"), new BigDecimal("1.36"));
+        ob.submitOrder(first);
+        int slot = ob.submitOrder(second.getOrderId(), "bob", 136_000, 100_000_000L, 42);
+
+        assertEquals(slot, ob.getBestOrder());
+        assertEquals(second.getOrderId(), ob.getOrderId(slot));
+        assertEquals("bob", ob.getUserId(slot));
+        assertEquals(136_000, ob.getPriceTicks(slot));
+        assertEquals(42, ob.getTimestamp(slot));
+        assertEquals("alice", ob.getUserId(ob.findOrder(first.getOrderId())));
+        assertEquals(2, ob.getOrderCount());
+        assertEquals(2, ob.getSize());
+
+        assertFalse(ob.fillOrder(slot, 40_000_000L));
+        assertEquals(60_000_000L, ob.getQuantityLots(slot));
+        assertTrue(ob.fillOrder(slot, 60_000_000L));
+        assertEquals(OrderSlots.NO_SLOT, ob.findOrder(second.getOrderId()));
+        assertEquals(1, ob.getSize());
+        assertTrue(ob.removeOrder(first.getOrderId()));
+        assertFalse(ob.removeOrder(first.getOrderId()));
+        assertEquals(OrderSlots.NO_SLOT, ob.getBestOrder());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDuplicateOrderIdRejected() {
+        OffHeapOrderBook ob = new OffHeapOrderBook(Side.SELL, C_CCY.getTickConfig());
+        UUID orderId = UUID.randomUUID();
+        ob.submitOrder(orderId, "user", 100, 1, 0);
+        ob.submitOrder(orderId, "user", 101, 1, 0);
+    }
+
+    @Test
+    public void testUsersReleasedWithTheirLastOrder() {
+        OffHeapOrderBook ob = new OffHeapOrderBook(Side.SELL, C_CCY.getTickConfig());
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        ob.submitOrder(first, "alice", 100, 1, 0);
+        ob.submitOrder(second, "alice", 101, 1, 0);
+        int bob = ob.submitOrder(UUID.randomUUID(), "bob", 102, 1, 0);
+        assertEquals(2, ob.getUserCount());
+
+        ob.removeOrder(first);
+        assertEquals(2, ob.getUserCount());
+        ob.removeOrder(second);
+        assertEquals(1, ob.getUserCount());
+        assertEquals("bob", ob.getUserId(bob));
+
+        // New users take the freed entry rather than growing the table
+        for (int i = 0; i < 1_000; i++) {
+            UUID orderId = UUID.randomUUID();
+            int slot = ob.submitOrder(orderId, "user" + i, 100, 1, 0);
+            assertEquals("user" + i, ob.getUserId(slot));
+            ob.removeOrder(orderId);
+        }
+        assertEquals(1, ob.getUserCount());
+        ob.fillOrder(bob, 1);
+        assertEquals(0, ob.getUserCount());
+    }
+
+    @Test
+    public void testMatchesOrderBook() {
+        for (Side side : Side.values()) {
+            OrderBook expected = new OrderBook(side, C_CCY.getTickConfig(), ConcurrencyMode.LOCKING, 10);
+            // Small, so the slots and the index grow during the test
+            OffHeapOrderBook actual = new OffHeapOrderBook(side, C_CCY.getTickConfig(), 16);
+            Random random = new Random(11);
+            List<RestingOrder> resting = new ArrayList<>();
+            for (int i = 0; i < 50_000; i++) {
+                int action = random.nextInt(4);
+                if (!resting.isEmpty() && action == 0) {
+                    RestingOrder order = resting.remove(random.nextInt(resting.size()));
+                    assertTrue(expected.removeOrder(order));
+                    assertTrue(actual.removeOrder(order.getOrder().getOrderId()));
+                } else if (!resting.isEmpty() && action == 1) {
+                    RestingOrder best = expected.getBestOrder();
+                    int bestSlot = actual.getBestOrder();
+                    assertEquals(best.getOrder().getOrderId(), actual.getOrderId(bestSlot));
+                    long fillLots = 1 + random.nextInt((int) best.getQuantityLots());
+                    if (expected.fillOrder(best, fillLots)) {
+                        resting.remove(best);
+                    }
+                    assertEquals(best.getLevel() == null, actual.fillOrder(bestSlot, fillLots));
+                } else {
+                    CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(C_CCY, "user" + random.nextInt(50), side,
+                            1 + random.nextInt(1_000), 100_000 + random.nextInt(500));
+                    resting.add(expected.submitOrder(order));
+                    actual.submitOrder(order);
+                }
+                if (i % 1_000 == 0) {
+                    assertSameLevels(expected, actual);
+                }
+            }
+            assertSameLevels(expected, actual);
+            assertEquals(resting.size(), actual.getOrderCount());
+            for (RestingOrder order : resting) {
+                assertEquals(order.getQuantityLots(), actual.getQuantityLots(actual.findOrder(order.getOrder().getOrderId())));
+            }
+            assertArrayEquals(expected.getOrderSummary(), actual.getOrderSummary(10));
+        }
+    }
+
+    private static void assertSameLevels(OrderBook expected, OffHeapOrderBook actual) {
+        int size = expected.getSize();
+        assertEquals(size, actual.getSize());
+        long[] expectedPrices = new long[size];
+        long[] expectedQuantities = new long[size];
+        long[] actualPrices = new long[size];
+        long[] actualQuantities = new long[size];
+        expected.getDepth(expectedPrices, expectedQuantities);
+        actual.getDepth(actualPrices, actualQuantities);
+        assertArrayEquals(expectedPrices, actualPrices);
+        assertArrayEquals(expectedQuantities, actualQuantities);
+    }
+
+    @Test
+    public void testHeapStaysFlatAsBookDeepens() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        int orders = 200_000;
+        UUID[] orderIds = new UUID[orders];
+        for (int i = 0; i < orders; i++) {
+            orderIds[i] = UUID.randomUUID();
+        }
+        OffHeapOrderBook ob = new OffHeapOrderBook(Side.SELL, C_CCY.getTickConfig(), 1_024);
+        // Create the levels and the user entry
+        for (int i = 0; i < 10; i++) {
+            ob.submitOrder(UUID.randomUUID(), "user", 100_000 + i, 1, 0);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < orders; i++) {
+            ob.submitOrder(orderIds[i], "user", 100_000 + i % 10, 1, i);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(orders + 10, ob.getOrderCount());
+        assertTrue(ob.getOffHeapMemoryUsed() > orders * (long) OrderSlots.SLOT_SIZE);
+        // Only the handful of buffers the direct memory grew by, not per order
+        assertTrue("Allocated " + allocated + " bytes", allocated < 64 * 1024);
+    }
+}
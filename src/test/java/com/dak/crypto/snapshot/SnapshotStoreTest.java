@@ -0,0 +1,211 @@
+package com.dak.crypto.snapshot;
+
+import com.dak.crypto.CryptoMarket;
+import com.dak.crypto.Cryptocurrency;
+import com.dak.crypto.ExecutionMode;
+import com.dak.crypto.OrderBoardSnapshot;
+import com.dak.crypto.Side;
+import com.dak.crypto.TradeListener;
+import com.dak.crypto.journal.MappedOrderJournal;
+import com.dak.crypto.journal.SyncPolicy;
+import com.dak.crypto.order.CryptoMarketOrder;
+import com.dak.crypto.util.OrderCreator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SnapshotStoreTest {
+
+    private static final Cryptocurrency C_CCY = Cryptocurrency.ETHERIUM;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecoverFromSnapshotAndJournalTail() throws IOException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Path journalFile = folder.newFile().toPath();
+            Path directory = folder.newFolder().toPath();
+            String[] bids;
+            String[] asks;
+            long tailRecords;
+            try (MappedOrderJournal journal = new MappedOrderJournal(journalFile, SyncPolicy.NONE);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal);
+                 SnapshotStore store = new SnapshotStore(directory)) {
+                List<CryptoMarketOrder> orders = fill(market, 0, 100);
+                // Partly filled orders keep their remaining quantity
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.SELL, 1_500L, 10_000L));
+                store.takeSnapshot(market).join();
+
+                long position = journal.getPosition();
+                orders.addAll(fill(market, 100, 150));
+                market.cancelOrder(C_CCY, orders.get(3).getOrderId());
+                market.cancelOrder(C_CCY, orders.get(120).getOrderId());
+                tailRecords = countRecords(journal, position);
+
+                bids = market.getOrderSummary(C_CCY, Side.BUY);
+                asks = market.getOrderSummary(C_CCY, Side.SELL);
+            }
+
+            try (MappedOrderJournal journal = new MappedOrderJournal(journalFile, SyncPolicy.NONE);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal);
+                 SnapshotStore store = new SnapshotStore(directory)) {
+                assertEquals(tailRecords, store.recover(market, journal));
+                assertArrayEquals(bids, market.getOrderSummary(C_CCY, Side.BUY));
+                assertArrayEquals(asks, market.getOrderSummary(C_CCY, Side.SELL));
+            }
+        }
+    }
+
+    @Test
+    public void testListingsRecovered() throws IOException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Path journalFile = folder.newFile().toPath();
+            Path directory = folder.newFolder().toPath();
+            long tailRecords;
+            try (MappedOrderJournal journal = new MappedOrderJournal(journalFile, SyncPolicy.NONE);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal);
+                 SnapshotStore store = new SnapshotStore(directory)) {
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(Cryptocurrency.BITCOIN, "maker", Side.BUY, 100L, 10_000L));
+                market.delist(Cryptocurrency.BITCOIN);
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(Cryptocurrency.LITECOIN, "maker", Side.BUY, 100L, 10_000L));
+                store.takeSnapshot(market).join();
+
+                long position = journal.getPosition();
+                market.delist(Cryptocurrency.LITECOIN);
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(Cryptocurrency.XRP, "maker", Side.BUY, 100L, 10_000L));
+                // The cancel and the new order, plus the delist record
+                tailRecords = countRecords(journal, position) + 1;
+            }
+
+            try (MappedOrderJournal journal = new MappedOrderJournal(journalFile, SyncPolicy.NONE);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal);
+                 SnapshotStore store = new SnapshotStore(directory)) {
+                assertEquals(tailRecords, store.recover(market, journal));
+                assertEquals(Arrays.asList(Cryptocurrency.LITECOIN, Cryptocurrency.BITCOIN), market.getDelistedCoins());
+                assertEquals(Collections.singletonList(Cryptocurrency.XRP), market.getListedCoins());
+                assertEquals(1, market.getOrderSummary(Cryptocurrency.XRP, Side.BUY).length);
+            }
+        }
+    }
+
+    @Test
+    public void testStopsRestored() throws IOException {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            Path journalFile = folder.newFile().toPath();
+            Path directory = folder.newFolder().toPath();
+            String[] bids;
+            try (MappedOrderJournal journal = new MappedOrderJournal(journalFile, SyncPolicy.NONE);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal);
+                 SnapshotStore store = new SnapshotStore(directory)) {
+                market.submitOrder(OrderCreator.createStopLimitOrder(C_CCY, "stop", Side.BUY, 100L, 10_100L, 10_000L));
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, 100L, 10_050L));
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.BUY, 50L, 10_050L));
+                store.takeSnapshot(market).join();
+
+                // Fires at once on the last trade, which the snapshot holds
+                market.submitOrder(OrderCreator.createStopLimitOrder(C_CCY, "stop", Side.BUY, 100L, 10_040L, 9_000L));
+                bids = market.getOrderSummary(C_CCY, Side.BUY);
+                assertEquals(1, bids.length);
+            }
+
+            try (MappedOrderJournal journal = new MappedOrderJournal(journalFile, SyncPolicy.NONE);
+                 CryptoMarket market = new CryptoMarket(TradeListener.NONE, mode, journal);
+                 SnapshotStore store = new SnapshotStore(directory)) {
+                // The stop and its trigger
+                assertEquals(2, store.recover(market, journal));
+                assertArrayEquals(bids, market.getOrderSummary(C_CCY, Side.BUY));
+                assertEquals(1, market.get(C_CCY).getStopOrderCount());
+
+                // The restored stop fires as before
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.SELL, 50L, 10_100L));
+                market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.BUY, 100L, 10_100L));
+                assertEquals(0, market.get(C_CCY).getStopOrderCount());
+                assertEquals(2, market.getOrderSummary(C_CCY, Side.BUY).length);
+            }
+        }
+    }
+
+    @Test
+    public void testTimePriorityRestored() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        List<CryptoMarketOrder> orders = new ArrayList<>();
+        try (CryptoMarket market = new CryptoMarket();
+             SnapshotStore store = new SnapshotStore(directory)) {
+            for (int i = 0; i < 3; i++) {
+                CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(C_CCY, "maker" + i, Side.BUY, 100L, 10_000L);
+                market.submitOrder(order);
+                orders.add(order);
+            }
+            store.takeSnapshot(market).join();
+        }
+
+        List<UUID> filled = new ArrayList<>();
+        TradeListener listener = (coinType, aggressor, resting, priceTicks, quantityLots) -> filled.add(resting.getOrderId());
+        try (CryptoMarket market = new CryptoMarket(listener);
+             SnapshotStore store = new SnapshotStore(directory)) {
+            for (OrderBoardSnapshot snapshot : store.readLatest()) {
+                market.restoreSnapshot(snapshot);
+            }
+            market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "taker", Side.SELL, 300L, 10_000L));
+        }
+        assertEquals(3, filled.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(orders.get(i).getOrderId(), filled.get(i));
+        }
+    }
+
+    @Test
+    public void testOldSnapshotsDeleted() throws IOException {
+        Path directory = folder.newFolder().toPath();
+        try (CryptoMarket market = new CryptoMarket();
+             SnapshotStore store = new SnapshotStore(directory, 2)) {
+            Path first = store.takeSnapshot(market).join();
+            store.takeSnapshot(market).join();
+            Path last = store.takeSnapshot(market).join();
+            assertFalse(Files.exists(first));
+            assertTrue(Files.exists(last));
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2, files.count());
+            }
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testRestoreIntoBusyBoard() throws IOException {
+        try (CryptoMarket market = new CryptoMarket()) {
+            market.submitOrder(OrderCreator.createCryptoMarketOrder(C_CCY, "maker", Side.BUY, 100L, 10_000L));
+            market.restoreSnapshot(market.takeSnapshotAsync(C_CCY).join());
+        }
+    }
+
+    private static List<CryptoMarketOrder> fill(CryptoMarket market, int from, int to) {
+        List<CryptoMarketOrder> orders = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Side side = i % 2 == 0 ? Side.BUY : Side.SELL;
+            long priceTicks = side == Side.BUY ? 10_000 - i % 7 : 10_001 + i % 5;
+            CryptoMarketOrder order = OrderCreator.createCryptoMarketOrder(C_CCY, "user" + i, side, 1_000L * (1 + i % 3), priceTicks);
+            market.submitOrder(order);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    private static long countRecords(MappedOrderJournal journal, long fromPosition) {
+        long[] count = new long[1];
+        journal.forEach(fromPosition, order -> count[0]++);
+        return count[0];
+    }
+}
@@ -0,0 +1,75 @@
+package com.dak.crypto.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MpscRingBufferTest {
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(8, new MpscRingBuffer<String>(5).capacity());
+        assertEquals(8, new MpscRingBuffer<String>(8).capacity());
+        assertEquals(1, new MpscRingBuffer<String>(1).capacity());
+    }
+
+    @Test
+    public void testFifoAndFull() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(i));
+            }
+            assertFalse(buffer.offer(99));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(i), buffer.poll());
+            }
+            assertTrue(buffer.isEmpty());
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20_000;
+        MpscRingBuffer<int[]> buffer = new MpscRingBuffer<>(64);
+        AtomicInteger started = new AtomicInteger();
+
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(() -> {
+                started.incrementAndGet();
+                for (int i = 0; i < perProducer; i++) {
+                    int[] element = {producer, i};
+                    while (!buffer.offer(element)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        // Each producer's elements must arrive in the order it sent them
+        int[] nextExpected = new int[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            int[] element = buffer.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(nextExpected[element[0]]++, element[1]);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(buffer.isEmpty());
+    }
+}
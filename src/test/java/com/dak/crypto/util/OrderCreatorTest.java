@@ -101,6 +101,20 @@ public class OrderCreatorTest {
         assertTrue(cancelOrder.equals(order));
     }
 
+    @Test
+    public void testPluggableOrderIdGenerator() {
+        OrderIdGenerator original = OrderCreator.getOrderIdGenerator();
+        // Sequence ids are opt-in
+        assertSame(OrderIdGenerator.RANDOM, original);
+        try {
+            OrderCreator.setOrderIdGenerator(() -> givenOrderId);
+            assertEquals(givenOrderId, OrderCreator.createCryptoMarketOrder(crypto, userId, side, quantity, price).getOrderId());
+            assertEquals(givenOrderId, OrderCreator.createCryptoMarketCancelOrder(UUID.randomUUID(), crypto).getOrderId());
+        } finally {
+            OrderCreator.setOrderIdGenerator(original);
+        }
+    }
+
   class TestOrderClass implements CryptoOrder {
 
         private final UUID uuid;
@@ -0,0 +1,36 @@
+package com.dak.crypto.util;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+public class OutputFormatterTest {
+
+    @Test
+    public void testFormatOutputKeepsScale() {
+        assertEquals("10 for £2.40", OutputFormatter.formatOutput(new BigDecimal("10"), new BigDecimal("2.40")));
+        assertEquals("1.0 for £1.23", OutputFormatter.formatOutput(new BigDecimal("1.0"), new BigDecimal("1.23")));
+    }
+
+    @Test
+    public void testDisplayStringDropsTrailingZeros() {
+        assertEquals("10.0", OutputFormatter.toDisplayString(new BigDecimal("10")));
+        assertEquals("2.4", OutputFormatter.toDisplayString(new BigDecimal("2.40")));
+        assertEquals("1.23", OutputFormatter.toDisplayString(new BigDecimal("1.23000000")));
+        assertEquals("1.0", OutputFormatter.toDisplayString(new BigDecimal("1.00000000")));
+        assertEquals("100.0", OutputFormatter.toDisplayString(new BigDecimal("1E+2")));
+    }
+
+    @Test
+    public void testAppendDecimalMatchesDisplayString() {
+        long[] values = {0, 1, -1, 10, 240, 1_000_000_00L, 123_000_000L, -5_000_001L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            for (int scale = 0; scale <= 8; scale++) {
+                String expected = OutputFormatter.toDisplayString(BigDecimal.valueOf(value, scale));
+                assertEquals(expected, OutputFormatter.appendDecimal(new StringBuilder(), value, scale).toString());
+            }
+        }
+    }
+}
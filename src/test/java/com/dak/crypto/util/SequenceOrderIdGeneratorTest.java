@@ -0,0 +1,51 @@
+package com.dak.crypto.util;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class SequenceOrderIdGeneratorTest {
+
+    @Test
+    public void testIdsIncrease() {
+        SequenceOrderIdGenerator generator = new SequenceOrderIdGenerator(42L);
+        UUID first = generator.nextOrderId();
+        UUID second = generator.nextOrderId();
+
+        assertEquals(42L, first.getMostSignificantBits());
+        assertEquals(1L, SequenceOrderIdGenerator.sequenceOf(first));
+        assertEquals(2L, SequenceOrderIdGenerator.sequenceOf(second));
+        assertEquals(3L, generator.nextSequence());
+        assertTrue(generator.isGenerated(second));
+        assertFalse(generator.isGenerated(new UUID(42L, 4L)));
+        assertFalse(generator.isGenerated(UUID.randomUUID()));
+    }
+
+    @Test
+    public void testUniqueAcrossThreads() throws InterruptedException {
+        SequenceOrderIdGenerator generator = new SequenceOrderIdGenerator();
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.nextOrderId());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, ids.size());
+    }
+
+    @Test
+    public void testSeparateGeneratorsDoNotCollide() {
+        assertNotEquals(new SequenceOrderIdGenerator().nextOrderId(), new SequenceOrderIdGenerator().nextOrderId());
+    }
+}